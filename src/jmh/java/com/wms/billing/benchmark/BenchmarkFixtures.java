@@ -0,0 +1,201 @@
+package com.wms.billing.benchmark;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.domain.InvoiceLine;
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.domain.Warehouse;
+import com.wms.billing.domain.WarehouseCharges;
+import com.wms.billing.dto.BillingActivityDTO;
+import com.wms.billing.dto.ChargeCategory;
+import com.wms.billing.dto.CreateInvoiceRequest;
+import com.wms.billing.dto.RateSheetDTO;
+import com.wms.billing.dto.WarehouseChargeDTO;
+import com.wms.billing.dto.WarehouseDTO;
+import com.wms.billing.repository.RateSheetRepository;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic data for the benchmarks.
+ *
+ * <p>Every warehouse carries the three billable charges ({@code STORAGE/PER_PALLET_PER_DAY},
+ * {@code INBOUND/PER_PALLET_PER_DAY}, {@code INBOUND/PER_SHIPMENT}) followed by filler charges of other types, so
+ * rules still have to scan the full charge list. Activities cycle through the billable combinations and spread
+ * over all warehouses.</p>
+ */
+final class BenchmarkFixtures {
+
+    static final Long RATE_SHEET_ID = 1L;
+    static final String CUSTOMER_ID = "BENCH-CUST";
+    static final LocalDate PERIOD_START = LocalDate.of(2024, 7, 1);
+    static final LocalDate PERIOD_END = LocalDate.of(2024, 7, 31);
+
+    private static final String[][] BILLABLE = {
+            {"STORAGE", "PER_PALLET_PER_DAY"},
+            {"INBOUND", "PER_PALLET_PER_DAY"},
+            {"INBOUND", "PER_SHIPMENT"},
+    };
+
+    private BenchmarkFixtures() {}
+
+    static String warehouseId(int index) {
+        return "WH" + String.format("%03d", index + 1);
+    }
+
+    static RateSheetDTO rateSheetDto(int warehouses, int chargesPerWarehouse) {
+        Random random = new Random(42);
+        RateSheetDTO dto = new RateSheetDTO();
+        dto.setCustomerId(CUSTOMER_ID);
+        dto.setName("Benchmark " + warehouses + "x" + chargesPerWarehouse);
+        List<WarehouseDTO> whs = new ArrayList<>(warehouses);
+        for (int w = 0; w < warehouses; w++) {
+            WarehouseDTO wh = new WarehouseDTO();
+            wh.setWarehouseId(warehouseId(w));
+            List<WarehouseChargeDTO> charges = new ArrayList<>(chargesPerWarehouse);
+            for (int c = 0; c < chargesPerWarehouse; c++) {
+                WarehouseChargeDTO charge = new WarehouseChargeDTO();
+                if (c < BILLABLE.length) {
+                    charge.setCategory(BILLABLE[c][0]);
+                    charge.setType(BILLABLE[c][1]);
+                } else {
+                    charge.setCategory(ChargeCategory.OUTBOUND.name());
+                    charge.setType("FILLER_" + c);
+                }
+                charge.setRate(BigDecimal.valueOf(50 + random.nextInt(1000), 2));
+                charge.setUnit("EA");
+                charges.add(charge);
+            }
+            wh.setCharges(charges);
+            whs.add(wh);
+        }
+        dto.setWarehouses(whs);
+        return dto;
+    }
+
+    static RateSheet rateSheet(int warehouses, int chargesPerWarehouse) {
+        Random random = new Random(42);
+        RateSheet rateSheet = new RateSheet();
+        rateSheet.setRateSheetId(RATE_SHEET_ID);
+        rateSheet.setCustomerId(CUSTOMER_ID);
+        rateSheet.setName("Benchmark " + warehouses + "x" + chargesPerWarehouse);
+        List<Warehouse> whs = new ArrayList<>(warehouses);
+        for (int w = 0; w < warehouses; w++) {
+            Warehouse wh = new Warehouse();
+            wh.setWarehouseId(warehouseId(w));
+            wh.setRateSheet(rateSheet);
+            List<WarehouseCharges> charges = new ArrayList<>(chargesPerWarehouse);
+            for (int c = 0; c < chargesPerWarehouse; c++) {
+                WarehouseCharges charge = new WarehouseCharges();
+                if (c < BILLABLE.length) {
+                    charge.setCategory(ChargeCategory.valueOf(BILLABLE[c][0]));
+                    charge.setType(BILLABLE[c][1]);
+                } else {
+                    charge.setCategory(ChargeCategory.OUTBOUND);
+                    charge.setType("FILLER_" + c);
+                }
+                charge.setRate(BigDecimal.valueOf(50 + random.nextInt(1000), 2));
+                charge.setUnit("EA");
+                charge.setWarehouse(wh);
+                charges.add(charge);
+            }
+            wh.setCharges(charges);
+            whs.add(wh);
+        }
+        rateSheet.setWarehouses(whs);
+        return rateSheet;
+    }
+
+    /** Activities for one warehouse, as the API receives them. */
+    static CreateInvoiceRequest request(String warehouseId, int activities) {
+        Random random = new Random(7);
+        CreateInvoiceRequest req = new CreateInvoiceRequest();
+        req.setWarehouseId(warehouseId);
+        req.setPeriodStart(PERIOD_START);
+        req.setPeriodEnd(PERIOD_END);
+        List<BillingActivityDTO> dtos = new ArrayList<>(activities);
+        for (int i = 0; i < activities; i++) {
+            String[] billable = BILLABLE[i % BILLABLE.length];
+            BillingActivityDTO dto = new BillingActivityDTO();
+            dto.setCategory(billable[0]);
+            dto.setType(billable[1]);
+            dto.setQuantity(BigDecimal.valueOf(1 + random.nextInt(500)));
+            dtos.add(dto);
+        }
+        req.setActivities(dtos);
+        return req;
+    }
+
+    /** Activities spread round-robin over all warehouses of the rate sheet. */
+    static List<Activity> activities(int warehouses, int activities) {
+        Random random = new Random(7);
+        List<Activity> result = new ArrayList<>(activities);
+        for (int i = 0; i < activities; i++) {
+            String[] billable = BILLABLE[i % BILLABLE.length];
+            Activity a = new Activity();
+            a.setWarehouseId(warehouseId(i % warehouses));
+            a.setCategory(ChargeCategory.valueOf(billable[0]));
+            a.setType(billable[1]);
+            a.setQuantity(BigDecimal.valueOf(1 + random.nextInt(500)));
+            result.add(a);
+        }
+        return result;
+    }
+
+    static Invoice invoice(int lines) {
+        Random random = new Random(11);
+        Invoice invoice = new Invoice();
+        invoice.setCustomerId(CUSTOMER_ID);
+        invoice.setRateSheetId(RATE_SHEET_ID);
+        invoice.setWarehouseId(warehouseId(0));
+        invoice.setPeriodStart(PERIOD_START);
+        invoice.setPeriodEnd(PERIOD_END);
+        invoice.setStatus("PREVIEW");
+        List<InvoiceLine> invoiceLines = new ArrayList<>(lines);
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < lines; i++) {
+            InvoiceLine line = new InvoiceLine();
+            BigDecimal qty = BigDecimal.valueOf(1 + random.nextInt(500));
+            BigDecimal rate = BigDecimal.valueOf(50 + random.nextInt(1000), 2);
+            line.setDescription((i % 2 == 0 ? "Storage - " : "Inbound - ") + BILLABLE[i % BILLABLE.length][1]);
+            line.setQuantity(qty);
+            line.setRate(rate);
+            line.setAmount(qty.multiply(rate));
+            total = total.add(line.getAmount());
+            invoiceLines.add(line);
+        }
+        invoice.setInvoiceLines(invoiceLines);
+        invoice.setTotalAmount(total);
+        return invoice;
+    }
+
+    /** A repository that only answers {@code getRateSheetByRateSheetId}, from memory. */
+    static RateSheetRepository inMemoryRateSheets(RateSheet rateSheet) {
+        return (RateSheetRepository) Proxy.newProxyInstance(
+                RateSheetRepository.class.getClassLoader(),
+                new Class<?>[]{RateSheetRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getRateSheetByRateSheetId")) {
+                        return rateSheet.getRateSheetId().equals(args[0]) ? rateSheet : null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * The debug rules in billing_rules.drl print every fact; silence stdout so the benchmark measures rule
+     * evaluation rather than console I/O.
+     */
+    static PrintStream silenceStdout() {
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return original;
+    }
+}
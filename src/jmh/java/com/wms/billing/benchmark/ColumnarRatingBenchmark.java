@@ -0,0 +1,68 @@
+package com.wms.billing.benchmark;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.rating.ActivityBatch;
+import com.wms.billing.rating.RateTable;
+import com.wms.billing.rating.RatingKernel;
+import com.wms.billing.rating.RatingResult;
+import com.wms.billing.rating.StringDictionary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RatingKernel} over the same rate sheets and activities as {@link RatingBenchmark}, with the batch and
+ * result reused between invocations; {@code gc.alloc.rate.norm} should stay at zero.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColumnarRatingBenchmark {
+
+    @Param({"1", "20"})
+    int warehouses;
+
+    @Param({"3", "30"})
+    int chargesPerWarehouse;
+
+    @Param({"100", "5000"})
+    int activityCount;
+
+    private List<Activity> activities;
+    private ActivityBatch batch;
+    private RateTable table;
+    private RatingResult result;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringDictionary warehouseCodes = new StringDictionary();
+        StringDictionary typeCodes = new StringDictionary();
+        table = RateTable.compile(BenchmarkFixtures.rateSheet(warehouses, chargesPerWarehouse),
+                warehouseCodes, typeCodes);
+        activities = BenchmarkFixtures.activities(warehouses, activityCount);
+        batch = new ActivityBatch(warehouseCodes, typeCodes, activityCount);
+        batch.addAll(activities);
+        result = new RatingResult();
+    }
+
+    @Benchmark
+    public long rate() {
+        result.reset();
+        RatingKernel.rate(batch, table, result);
+        return result.total();
+    }
+
+    /** Includes filling the batch from activity objects, as the batch path does per request. */
+    @Benchmark
+    public long fillAndRate() {
+        batch.clear();
+        batch.addAll(activities);
+        result.reset();
+        RatingKernel.rate(batch, table, result);
+        return result.total();
+    }
+}
@@ -0,0 +1,83 @@
+package com.wms.billing.benchmark;
+
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.domain.InvoiceTemplate;
+import com.wms.billing.service.InvoiceLineGrouper;
+import com.wms.billing.service.InvoiceStageTimer;
+import com.wms.billing.service.JasperInvoiceGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.util.JRSaver;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jasper fill and PDF export of in-memory invoices through {@link JasperInvoiceGenerator}, using the bundled
+ * sample template precompiled to {@code .jasper} once per trial (compilation is not measured).
+ *
+ * <p>The {@code 6000}-line case is above the default large-invoice threshold and exercises the swap-file
+ * virtualizer.</p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JasperRenderBenchmark {
+
+    private static final String TEMPLATE = "/templates/invoices/sample_invoice.jrxml";
+
+    @Param({"50", "1000", "6000"})
+    int lines;
+
+    private JasperInvoiceGenerator generator;
+    private JasperReport report;
+    private Invoice invoice;
+    private Path workDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("jasper-bench");
+        Path compiled = workDir.resolve("sample_invoice.jasper");
+        try (InputStream jrxml = JasperRenderBenchmark.class.getResourceAsStream(TEMPLATE)) {
+            JRSaver.saveObject(JasperCompileManager.compileReport(jrxml), compiled.toFile());
+        }
+
+        generator = new JasperInvoiceGenerator(
+                null,
+                null,
+                new InvoiceStageTimer(new SimpleMeterRegistry(), Map.of(), "standard"),
+                new InvoiceLineGrouper(false, InvoiceLineGrouper.Bucket.NONE),
+                5000,
+                1000,
+                50,
+                workDir.toString(),
+                4096,
+                100);
+
+        InvoiceTemplate template = new InvoiceTemplate();
+        template.setFilePath(compiled.toString());
+        report = generator.loadReport(template);
+        invoice = BenchmarkFixtures.invoice(lines);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try (var files = Files.walk(workDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public byte[] fillAndExport() throws Exception {
+        return generator.generateInvoicePdf(invoice, report);
+    }
+}
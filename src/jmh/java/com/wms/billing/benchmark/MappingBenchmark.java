@@ -0,0 +1,60 @@
+package com.wms.billing.benchmark;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.dto.CreateInvoiceRequest;
+import com.wms.billing.dto.RateSheetDTO;
+import com.wms.billing.dto.RateSheetResponseDTO;
+import com.wms.billing.helper.EntityMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EntityMapper} on large rate sheets and activity lists: DTO to entity, entity to response DTO, and request
+ * activities to domain activities (formerly the controller's {@code mapActivities}).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+    @Param({"10", "200"})
+    int warehouses;
+
+    @Param({"50"})
+    int chargesPerWarehouse;
+
+    @Param({"1000", "50000"})
+    int activityCount;
+
+    private RateSheetDTO rateSheetDto;
+    private RateSheet rateSheet;
+    private CreateInvoiceRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rateSheetDto = BenchmarkFixtures.rateSheetDto(warehouses, chargesPerWarehouse);
+        rateSheet = BenchmarkFixtures.rateSheet(warehouses, chargesPerWarehouse);
+        request = BenchmarkFixtures.request(BenchmarkFixtures.warehouseId(0), activityCount);
+    }
+
+    @Benchmark
+    public RateSheet toEntity() {
+        return EntityMapper.toEntity(rateSheetDto);
+    }
+
+    @Benchmark
+    public RateSheetResponseDTO toResponseDTO() {
+        return EntityMapper.toResponseDTO(rateSheet);
+    }
+
+    @Benchmark
+    public List<Activity> toActivities() {
+        return EntityMapper.toActivities(request);
+    }
+}
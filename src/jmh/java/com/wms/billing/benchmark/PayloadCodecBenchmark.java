@@ -0,0 +1,80 @@
+package com.wms.billing.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.dto.BillingActivityDTO;
+import com.wms.billing.dto.CreateInvoiceRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request parsing and response writing in JSON, Smile and CBOR, the formats the invoice endpoints negotiate.
+ * Payload sizes are printed once per trial ("payload bytes"), next to the timing results.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PayloadCodecBenchmark {
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    String format;
+
+    @Param({"100000"})
+    int activityCount;
+
+    @Param({"5000"})
+    int invoiceLines;
+
+    private ObjectMapper mapper;
+    private CreateInvoiceRequest request;
+    private byte[] requestBytes;
+    private Invoice invoice;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mapper = switch (format) {
+            case "JSON" -> JsonMapper.builder().findAndAddModules().build();
+            case "SMILE" -> SmileMapper.builder().findAndAddModules().build();
+            case "CBOR" -> CBORMapper.builder().findAndAddModules().build();
+            default -> throw new IllegalArgumentException(format);
+        };
+        request = BenchmarkFixtures.request(BenchmarkFixtures.warehouseId(0), activityCount);
+        // Realistic bodies carry ids, dates and fractional quantities
+        List<BillingActivityDTO> activities = request.getActivities();
+        for (int i = 0; i < activities.size(); i++) {
+            BillingActivityDTO dto = activities.get(i);
+            dto.setActivityId("ACT-" + i);
+            dto.setActivityDate(BenchmarkFixtures.PERIOD_START.plusDays(i % 31));
+            dto.setQuantity(dto.getQuantity().add(BigDecimal.valueOf(i % 100, 2)));
+        }
+        requestBytes = mapper.writeValueAsBytes(request);
+        invoice = BenchmarkFixtures.invoice(invoiceLines);
+        System.out.printf("%n%s payload bytes: request %,d, invoice %,d%n",
+                format, requestBytes.length, mapper.writeValueAsBytes(invoice).length);
+    }
+
+    @Benchmark
+    public CreateInvoiceRequest parseRequest() throws IOException {
+        return mapper.readValue(requestBytes, CreateInvoiceRequest.class);
+    }
+
+    @Benchmark
+    public byte[] writeRequest() throws IOException {
+        return mapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public byte[] writeInvoice() throws IOException {
+        return mapper.writeValueAsBytes(invoice);
+    }
+}
@@ -0,0 +1,90 @@
+package com.wms.billing.benchmark;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.service.DroolsRatingEngine;
+import com.wms.billing.service.DroolsRuleProfiler;
+import com.wms.billing.service.InvoiceLineGrouper;
+import com.wms.billing.service.InvoiceServiceDrools;
+import com.wms.billing.service.InvoiceStageTimer;
+import com.wms.billing.service.ParallelRatingExecutor;
+import com.wms.billing.service.RateSheetSnapshot;
+import com.wms.billing.service.RatingEngineRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.kie.api.KieServices;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end Drools rating through {@link InvoiceServiceDrools#generateInvoice} (preview, so nothing is saved),
+ * over synthetic rate sheets of varying warehouse and charge counts and varying activity volumes.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RatingBenchmark {
+
+    @Param({"1", "20"})
+    int warehouses;
+
+    @Param({"3", "30"})
+    int chargesPerWarehouse;
+
+    @Param({"100", "5000"})
+    int activityCount;
+
+    private InvoiceServiceDrools service;
+    private List<Activity> activities;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stdout = BenchmarkFixtures.silenceStdout();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        InvoiceStageTimer stageTimer = new InvoiceStageTimer(registry, Map.of(), "standard");
+        DroolsRatingEngine drools = new DroolsRatingEngine(
+                KieServices.Factory.get().getKieClasspathContainer(),
+                stageTimer,
+                new DroolsRuleProfiler(registry, false, 0.0),
+                new ParallelRatingExecutor(false, 0, 0, 0));
+        service = new InvoiceServiceDrools(
+                BenchmarkFixtures.inMemoryRateSheets(BenchmarkFixtures.rateSheet(warehouses, chargesPerWarehouse)),
+                null,   // uncached loader: only FINAL rating uses it
+                null,
+                stageTimer,
+                new RatingEngineRouter(List.of(drools), registry, DroolsRatingEngine.NAME, Map.of(), "", 0.0, 1, 1, 0),
+                new InvoiceLineGrouper(false, InvoiceLineGrouper.Bucket.NONE),
+                new StaticListableBeanFactory().getBeanProvider(RateSheetSnapshot.class));
+        activities = BenchmarkFixtures.activities(warehouses, activityCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    /** Rules set {@code amount} on activities; clear it so every invocation starts from the same facts. */
+    @Setup(Level.Invocation)
+    public void resetActivities() {
+        activities.forEach(a -> a.setAmount(null));
+    }
+
+    @Benchmark
+    public Invoice rate() {
+        return service.generateInvoice(
+                BenchmarkFixtures.RATE_SHEET_ID,
+                BenchmarkFixtures.warehouseId(0),
+                BenchmarkFixtures.PERIOD_START,
+                BenchmarkFixtures.PERIOD_END,
+                activities,
+                true);
+    }
+}
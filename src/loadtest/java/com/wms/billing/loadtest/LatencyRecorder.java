@@ -0,0 +1,58 @@
+package com.wms.billing.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects response times and outcomes for one operation of the load test.
+ *
+ * <p>Latencies are measured from the request's <em>scheduled</em> arrival time, not from when it was actually
+ * sent, so a stalled generator or server shows up as latency instead of silently lowering the offered load
+ * (coordinated omission). Samples are kept raw in a growable array and sorted once for the report.</p>
+ */
+final class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int size;
+    private long errors;
+    private final Map<String, Long> outcomes = new TreeMap<>();
+
+    synchronized void record(long latencyNanos, String outcome, boolean error) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = latencyNanos;
+        if (error) {
+            errors++;
+        }
+        outcomes.merge(outcome, 1L, Long::sum);
+    }
+
+    synchronized Map<String, Object> summary(double measuredSeconds) {
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", size);
+        summary.put("errors", errors);
+        summary.put("errorRate", size == 0 ? 0d : (double) errors / size);
+        summary.put("throughputPerSecond", measuredSeconds <= 0 ? 0d : size / measuredSeconds);
+        summary.put("p50Ms", percentileMs(sorted, 0.50));
+        summary.put("p90Ms", percentileMs(sorted, 0.90));
+        summary.put("p99Ms", percentileMs(sorted, 0.99));
+        summary.put("p999Ms", percentileMs(sorted, 0.999));
+        summary.put("maxMs", sorted.length == 0 ? 0d : sorted[sorted.length - 1] / 1_000_000d);
+        summary.put("outcomes", new TreeMap<>(outcomes));
+        return summary;
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0d;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000d;
+    }
+}
@@ -0,0 +1,318 @@
+package com.wms.billing.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load generator for the {@code loadtest} profile.
+ *
+ * <p>Once the application is ready it seeds the database ({@link LoadTestSeeder}) and then fires requests at the
+ * running server with Poisson arrivals at {@code billing.loadtest.arrival-rate} per second for
+ * {@code billing.loadtest.duration}, after a {@code billing.loadtest.warmup} whose samples are discarded. Arrivals
+ * are scheduled independently of responses (open model): a slow server builds up in-flight requests instead of
+ * slowing the generator. Above {@code billing.loadtest.max-in-flight} outstanding requests, new arrivals are
+ * counted as {@code dropped} errors.</p>
+ *
+ * <p>The operation mix ({@code billing.loadtest.mix}) draws from preview, finalize, PDF download of a previously
+ * finalized invoice, and rate sheet search. Throughput, p50/p90/p99/p99.9 and error rates per operation are written
+ * as JSON to {@code billing.loadtest.report-file}.</p>
+ */
+@Slf4j
+@Component
+@Profile("loadtest")
+public class LoadTestRunner {
+
+    enum Operation { PREVIEW, FINALIZE, PDF, SEARCH }
+
+    private final LoadTestSeeder seeder;
+    private final ObjectMapper objectMapper;
+    private final Environment environment;
+    private final ApplicationContext context;
+
+    private final double arrivalRate;
+    private final Duration warmup;
+    private final Duration duration;
+    private final int maxInFlight;
+    private final int activitiesPerRequest;
+    private final Map<Operation, Integer> mix;
+    private final Path reportFile;
+    private final boolean exitOnFinish;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final List<Long> finalizedInvoiceIds = new CopyOnWriteArrayList<>();
+
+    public LoadTestRunner(LoadTestSeeder seeder,
+                          ObjectMapper objectMapper,
+                          Environment environment,
+                          ApplicationContext context,
+                          @Value("${billing.loadtest.arrival-rate:20}") double arrivalRate,
+                          @Value("${billing.loadtest.warmup:15s}") Duration warmup,
+                          @Value("${billing.loadtest.duration:60s}") Duration duration,
+                          @Value("${billing.loadtest.max-in-flight:1000}") int maxInFlight,
+                          @Value("${billing.loadtest.activities-per-request:50}") int activitiesPerRequest,
+                          @Value("${billing.loadtest.mix:preview:60,finalize:15,pdf:10,search:15}") String mix,
+                          @Value("${billing.loadtest.report-file:target/loadtest-report.json}") String reportFile,
+                          @Value("${billing.loadtest.exit-on-finish:true}") boolean exitOnFinish) {
+        this.seeder = seeder;
+        this.objectMapper = objectMapper;
+        this.environment = environment;
+        this.context = context;
+        this.arrivalRate = arrivalRate;
+        this.warmup = warmup;
+        this.duration = duration;
+        this.maxInFlight = maxInFlight;
+        this.activitiesPerRequest = activitiesPerRequest;
+        this.mix = parseMix(mix);
+        this.reportFile = Paths.get(reportFile);
+        this.exitOnFinish = exitOnFinish;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread driver = new Thread(this::run, "loadtest-driver");
+        driver.setDaemon(false);
+        driver.start();
+    }
+
+    private void run() {
+        int exitCode = 0;
+        try {
+            List<LoadTestSeeder.SeededCustomer> customers = seeder.seed();
+            String baseUrl = "http://localhost:" + environment.getProperty("local.server.port", "8080");
+            log.info("Load test: {} req/s for {} (warm-up {}) against {}, mix {}", arrivalRate, duration, warmup, baseUrl, mix);
+            Map<String, Object> report = drive(baseUrl, customers);
+            write(report);
+        } catch (Exception e) {
+            log.error("Load test failed", e);
+            exitCode = 1;
+        } finally {
+            if (exitOnFinish) {
+                int code = exitCode;
+                System.exit(SpringApplication.exit(context, () -> code));
+            }
+        }
+    }
+
+    private Map<String, Object> drive(String baseUrl, List<LoadTestSeeder.SeededCustomer> customers) throws InterruptedException {
+        Map<Operation, LatencyRecorder> recorders = new EnumMap<>(Operation.class);
+        for (Operation op : Operation.values()) {
+            recorders.put(op, new LatencyRecorder());
+        }
+        LatencyRecorder warmupRecorder = new LatencyRecorder();
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        double meanGapNanos = 1_000_000_000d / arrivalRate;
+
+        long next = start;
+        while (next < end) {
+            long now = System.nanoTime();
+            if (next > now) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            long scheduled = next;
+            // Poisson arrivals: exponentially distributed gaps
+            next += (long) (-Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * meanGapNanos);
+
+            Operation op = pick();
+            LatencyRecorder recorder = scheduled >= measureFrom ? recorders.get(op) : warmupRecorder;
+            if (inFlight.get() >= maxInFlight) {
+                recorder.record(System.nanoTime() - scheduled, "dropped", true);
+                continue;
+            }
+            send(baseUrl, op, customers, scheduled, recorder);
+        }
+
+        // Let outstanding requests finish (bounded) before summarizing
+        long drainDeadline = System.nanoTime() + Duration.ofSeconds(60).toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(50);
+        }
+
+        double measuredSeconds = duration.toNanos() / 1_000_000_000d;
+        Map<String, Object> operations = new LinkedHashMap<>();
+        List<LatencyRecorder> all = new ArrayList<>();
+        recorders.forEach((op, recorder) -> {
+            operations.put(op.name().toLowerCase(), recorder.summary(measuredSeconds));
+            all.add(recorder);
+        });
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("finishedAt", Instant.now().toString());
+        report.put("arrivalRatePerSecond", arrivalRate);
+        report.put("warmupSeconds", warmup.toSeconds());
+        report.put("durationSeconds", duration.toSeconds());
+        report.put("seededCustomers", customers.size());
+        report.put("activitiesPerRequest", activitiesPerRequest);
+        report.put("mix", mix);
+        report.put("inFlightAtEnd", inFlight.get());
+        report.put("operations", operations);
+        report.put("warmup", warmupRecorder.summary(warmup.toNanos() / 1_000_000_000d));
+        return report;
+    }
+
+    private void send(String baseUrl, Operation op, List<LoadTestSeeder.SeededCustomer> customers,
+                      long scheduled, LatencyRecorder recorder) {
+        LoadTestSeeder.SeededCustomer customer = customers.get(ThreadLocalRandom.current().nextInt(customers.size()));
+        HttpRequest request;
+        try {
+            request = request(baseUrl, op, customer);
+        } catch (IOException e) {
+            recorder.record(System.nanoTime() - scheduled, "client_error", true);
+            return;
+        }
+
+        inFlight.incrementAndGet();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, failure) -> {
+                    inFlight.decrementAndGet();
+                    long latency = System.nanoTime() - scheduled;
+                    if (failure != null) {
+                        recorder.record(latency, failure.getClass().getSimpleName(), true);
+                        return;
+                    }
+                    int status = response.statusCode();
+                    recorder.record(latency, String.valueOf(status), status >= 400);
+                    if (op == Operation.FINALIZE && status == 200) {
+                        rememberInvoice(response.body());
+                    }
+                });
+    }
+
+    private HttpRequest request(String baseUrl, Operation op, LoadTestSeeder.SeededCustomer customer) throws IOException {
+        String warehouseId = customer.warehouseIds().get(ThreadLocalRandom.current().nextInt(customer.warehouseIds().size()));
+        Long invoiceId = op == Operation.PDF ? randomFinalizedInvoice() : null;
+
+        return switch (op) {
+            case PREVIEW, FINALIZE -> post(baseUrl + "/api/invoices/" + op.name().toLowerCase() + "/" + customer.rateSheetId(),
+                    invoiceRequest(warehouseId));
+            case PDF -> invoiceId != null
+                    ? HttpRequest.newBuilder(URI.create(baseUrl + "/api/invoices/" + invoiceId + "/pdf")).GET().build()
+                    // Nothing finalized yet: render a preview PDF instead
+                    : post(baseUrl + "/api/invoices/generate-pdf/" + customer.rateSheetId(), invoiceRequest(warehouseId));
+            case SEARCH -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/ratesheet/search?customerId="
+                            + URLEncoder.encode(customer.customerId(), StandardCharsets.UTF_8)
+                            + "&warehouseId=" + URLEncoder.encode(warehouseId, StandardCharsets.UTF_8)))
+                    .GET().build();
+        };
+    }
+
+    private HttpRequest post(String url, Map<String, Object> body) throws IOException {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+    }
+
+    private Map<String, Object> invoiceRequest(String warehouseId) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Map<String, Object>> activities = new ArrayList<>(activitiesPerRequest);
+        for (int i = 0; i < activitiesPerRequest; i++) {
+            String[] billable = LoadTestSeeder.BILLABLE[random.nextInt(LoadTestSeeder.BILLABLE.length)];
+            Map<String, Object> activity = new LinkedHashMap<>();
+            activity.put("category", billable[0]);
+            activity.put("type", billable[1]);
+            activity.put("quantity", 1 + random.nextInt(500));
+            activities.add(activity);
+        }
+        LocalDate periodStart = LocalDate.now().withDayOfMonth(1).minusMonths(1);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("warehouseId", warehouseId);
+        body.put("periodStart", periodStart.toString());
+        body.put("periodEnd", periodStart.plusMonths(1).minusDays(1).toString());
+        body.put("activities", activities);
+        return body;
+    }
+
+    private void rememberInvoice(byte[] body) {
+        try {
+            JsonNode id = objectMapper.readTree(body).get("id");
+            if (id != null && id.canConvertToLong()) {
+                finalizedInvoiceIds.add(id.asLong());
+            }
+        } catch (IOException e) {
+            log.debug("Could not read finalized invoice id", e);
+        }
+    }
+
+    private Long randomFinalizedInvoice() {
+        int size = finalizedInvoiceIds.size();
+        return size == 0 ? null : finalizedInvoiceIds.get(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    private Operation pick() {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int roll = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Operation, Integer> e : mix.entrySet()) {
+            roll -= e.getValue();
+            if (roll < 0) {
+                return e.getKey();
+            }
+        }
+        return Operation.PREVIEW;
+    }
+
+    private void write(Map<String, Object> report) throws IOException {
+        if (reportFile.getParent() != null) {
+            Files.createDirectories(reportFile.getParent());
+        }
+        objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile.toFile(), report);
+        log.info("Load test report written to {}", reportFile.toAbsolutePath());
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split(":");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Invalid billing.loadtest.mix entry: " + part);
+            }
+            int weight = Integer.parseInt(kv[1].trim());
+            if (weight > 0) {
+                weights.put(Operation.valueOf(kv[0].trim().toUpperCase()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("billing.loadtest.mix has no positive weights");
+        }
+        return weights;
+    }
+}
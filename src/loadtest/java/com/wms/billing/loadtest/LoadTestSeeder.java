@@ -0,0 +1,139 @@
+package com.wms.billing.loadtest;
+
+import com.wms.billing.domain.InvoiceTemplate;
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.domain.Warehouse;
+import com.wms.billing.domain.WarehouseCharges;
+import com.wms.billing.dto.ChargeCategory;
+import com.wms.billing.repository.RateSheetRepository;
+import com.wms.billing.service.InvoiceTemplateService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeds the load-test database with {@code customers} rate sheets, each covering {@code warehouses-per-customer}
+ * warehouses with {@code charges-per-warehouse} charges, plus the bundled sample invoice template as the single
+ * active template (so every customer resolves it).
+ *
+ * <p>The first three charges of every warehouse are the billable ones the rules price
+ * ({@code STORAGE/PER_PALLET_PER_DAY}, {@code INBOUND/PER_PALLET_PER_DAY}, {@code INBOUND/PER_SHIPMENT}); the rest
+ * are filler that the rules still have to scan.</p>
+ */
+@Slf4j
+@Component
+@Profile("loadtest")
+public class LoadTestSeeder {
+
+    /** A seeded customer and the ids the generator needs to address it. */
+    public record SeededCustomer(String customerId, Long rateSheetId, List<String> warehouseIds) {}
+
+    static final String[][] BILLABLE = {
+            {"STORAGE", "PER_PALLET_PER_DAY"},
+            {"INBOUND", "PER_PALLET_PER_DAY"},
+            {"INBOUND", "PER_SHIPMENT"},
+    };
+
+    private static final String TEMPLATE_RESOURCE = "/templates/invoices/sample_invoice.jrxml";
+
+    private final RateSheetRepository rateSheetRepository;
+    private final InvoiceTemplateService templateService;
+    private final int customers;
+    private final int warehousesPerCustomer;
+    private final int chargesPerWarehouse;
+
+    public LoadTestSeeder(RateSheetRepository rateSheetRepository,
+                          InvoiceTemplateService templateService,
+                          @Value("${billing.loadtest.seed.customers:50}") int customers,
+                          @Value("${billing.loadtest.seed.warehouses-per-customer:5}") int warehousesPerCustomer,
+                          @Value("${billing.loadtest.seed.charges-per-warehouse:10}") int chargesPerWarehouse) {
+        this.rateSheetRepository = rateSheetRepository;
+        this.templateService = templateService;
+        this.customers = customers;
+        this.warehousesPerCustomer = warehousesPerCustomer;
+        this.chargesPerWarehouse = Math.max(chargesPerWarehouse, BILLABLE.length);
+    }
+
+    public List<SeededCustomer> seed() {
+        long started = System.nanoTime();
+        seedTemplate();
+
+        Random random = new Random(42);
+        List<SeededCustomer> seeded = new ArrayList<>(customers);
+        for (int c = 0; c < customers; c++) {
+            String customerId = String.format("LT-CUST-%04d", c + 1);
+            RateSheet rateSheet = new RateSheet();
+            rateSheet.setCustomerId(customerId);
+            rateSheet.setName("Load test " + customerId);
+
+            List<Warehouse> warehouses = new ArrayList<>(warehousesPerCustomer);
+            List<String> warehouseIds = new ArrayList<>(warehousesPerCustomer);
+            for (int w = 0; w < warehousesPerCustomer; w++) {
+                Warehouse warehouse = new Warehouse();
+                warehouse.setWarehouseId(String.format("LT-WH-%04d-%02d", c + 1, w + 1));
+                warehouse.setRateSheet(rateSheet);
+                warehouse.setCharges(charges(warehouse, random));
+                warehouses.add(warehouse);
+                warehouseIds.add(warehouse.getWarehouseId());
+            }
+            rateSheet.setWarehouses(warehouses);
+
+            RateSheet saved = rateSheetRepository.save(rateSheet);
+            seeded.add(new SeededCustomer(customerId, saved.getRateSheetId(), warehouseIds));
+        }
+        log.info("Seeded {} customers x {} warehouses x {} charges in {} ms",
+                customers, warehousesPerCustomer, chargesPerWarehouse, (System.nanoTime() - started) / 1_000_000);
+        return seeded;
+    }
+
+    private List<WarehouseCharges> charges(Warehouse warehouse, Random random) {
+        List<WarehouseCharges> charges = new ArrayList<>(chargesPerWarehouse);
+        for (int i = 0; i < chargesPerWarehouse; i++) {
+            WarehouseCharges charge = new WarehouseCharges();
+            if (i < BILLABLE.length) {
+                charge.setCategory(ChargeCategory.valueOf(BILLABLE[i][0]));
+                charge.setType(BILLABLE[i][1]);
+            } else {
+                charge.setCategory(ChargeCategory.OUTBOUND);
+                charge.setType("FILLER_" + i);
+            }
+            charge.setRate(BigDecimal.valueOf(50 + random.nextInt(1000), 2));
+            charge.setUnit("EA");
+            charge.setWarehouse(warehouse);
+            charges.add(charge);
+        }
+        return charges;
+    }
+
+    /** Jasper needs a file path; copy the bundled template out of the jar. */
+    private void seedTemplate() {
+        try (InputStream in = LoadTestSeeder.class.getResourceAsStream(TEMPLATE_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing classpath template " + TEMPLATE_RESOURCE);
+            }
+            Path file = Files.createTempFile("loadtest-invoice-", ".jrxml");
+            file.toFile().deleteOnExit();
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+
+            InvoiceTemplate template = new InvoiceTemplate();
+            template.setName("Load test sample");
+            template.setFilePath(file.toString());
+            template.setIsActive(true);
+            templateService.createTemplate(template);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not stage the load-test invoice template", e);
+        }
+    }
+}
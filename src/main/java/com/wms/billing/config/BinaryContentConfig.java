@@ -0,0 +1,36 @@
+package com.wms.billing.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Binary request and response bodies for bulk payloads: Jackson Smile ({@code application/x-jackson-smile}) and
+ * CBOR ({@code application/cbor}), chosen per request by {@code Content-Type} and {@code Accept}. JSON stays the
+ * default. On by default; {@code billing.http.binary-formats.enabled=false} turns it off.
+ *
+ * <p>Both formats carry numbers, {@code BigDecimal} included, in binary form, so a large
+ * {@code CreateInvoiceRequest} skips most of the text scanning and decimal-string parsing that dominate JSON
+ * decoding. The converters use Spring Boot's {@link Jackson2ObjectMapperBuilder}, so {@code spring.jackson.*}
+ * settings and registered modules apply exactly as for JSON. Spring Boot puts these beans in place of the MVC
+ * defaults of the same type.</p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "billing.http.binary-formats.enabled", havingValue = "true", matchIfMissing = true)
+public class BinaryContentConfig {
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+}
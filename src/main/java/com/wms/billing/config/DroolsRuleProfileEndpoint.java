@@ -0,0 +1,49 @@
+package com.wms.billing.config;
+
+import com.wms.billing.service.DroolsRuleProfiler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /actuator/droolsrules}: per-rule activation, firing and consequence-time statistics collected by
+ * {@link DroolsRuleProfiler}, most expensive rule first. Read-only: profiling is switched and sampled only
+ * through {@code billing.drools.profiler.*}, since the endpoint is exposed over unauthenticated HTTP and neither the
+ * rating overhead nor the collected counters may be changed by a caller.
+ */
+@Component
+@Endpoint(id = "droolsrules")
+@RequiredArgsConstructor
+public class DroolsRuleProfileEndpoint {
+
+    private final DroolsRuleProfiler profiler;
+
+    @ReadOperation
+    public Map<String, Object> profile() {
+        List<Map<String, Object>> rules = new ArrayList<>();
+        profiler.snapshot().forEach((name, stats) -> {
+            Map<String, Object> rule = new LinkedHashMap<>();
+            rule.put("rule", name);
+            rule.put("matchesCreated", stats.matchesCreated());
+            rule.put("matchesCancelled", stats.matchesCancelled());
+            rule.put("fired", stats.fired());
+            rule.put("rhsTotalMs", stats.rhsNanos() / 1_000_000d);
+            rule.put("rhsMeanUs", stats.fired() == 0 ? 0d : stats.rhsNanos() / 1_000d / stats.fired());
+            rule.put("rhsMaxUs", stats.maxRhsNanos() / 1_000d);
+            rules.add(rule);
+        });
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("enabled", profiler.isEnabled());
+        body.put("sampleRate", profiler.getSampleRate());
+        body.put("sampledSessions", profiler.sampledSessions());
+        body.put("rules", rules);
+        return body;
+    }
+}
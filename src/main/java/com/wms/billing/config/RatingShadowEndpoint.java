@@ -0,0 +1,35 @@
+package com.wms.billing.config;
+
+import com.wms.billing.service.RatingEngineRouter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/ratingshadow}: shadow rating configuration and the most recent discrepancies recorded by
+ * {@link RatingEngineRouter}, newest first. Read-only: the shadow engine and sample rate are set only through
+ * {@code billing.rating.shadow.*}, and the discrepancies are only dropped when newer ones push them out. The
+ * endpoint is exposed over unauthenticated HTTP, so a caller must be able neither to multiply rating work nor to
+ * erase the evidence the shadow run collects.
+ */
+@Component
+@Endpoint(id = "ratingshadow")
+@RequiredArgsConstructor
+public class RatingShadowEndpoint {
+
+    private final RatingEngineRouter router;
+
+    @ReadOperation
+    public Map<String, Object> shadow() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("engines", router.engineNames());
+        body.put("shadowEngine", router.getShadowEngine());
+        body.put("sampleRate", router.getSampleRate());
+        body.put("discrepancies", router.discrepancies());
+        return body;
+    }
+}
@@ -0,0 +1,57 @@
+package com.wms.billing.config;
+
+import com.wms.billing.service.StageTimings;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Wires {@link StageTimings} into Spring MVC: tags it with the matched endpoint once the handler is known, and
+ * re-binds it on the async thread that writes {@code StreamingResponseBody} responses so streamed PDF/export
+ * stages are attributed to the request.
+ */
+@Configuration
+public class StageTimingConfig implements WebMvcConfigurer {
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                if (request.getAttribute(StageTimings.REQUEST_ATTRIBUTE) instanceof StageTimings timings) {
+                    Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                    timings.setEndpoint(request.getMethod() + " " + (pattern != null ? pattern : "unmapped"));
+                }
+                return true;
+            }
+        }).addPathPatterns("/api/**");
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            @Override
+            public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+                Object timings = request.getAttribute(StageTimings.REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+                if (timings instanceof StageTimings t) {
+                    StageTimings.bind(t);
+                }
+            }
+
+            @Override
+            public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+                StageTimings.unbind();
+            }
+        });
+    }
+}
@@ -0,0 +1,94 @@
+package com.wms.billing.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wms.billing.web.JdbcConcurrencyLimitFilter;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in virtual-thread execution ({@code billing.virtual-threads.enabled=true}, JDK 21+).
+ *
+ * <p>When enabled:</p>
+ * <ul>
+ *   <li>Tomcat dispatches every request on a new virtual thread, so controller and service work (JDBC, lazy
+ *       loads, Drools, Jasper) no longer occupies a platform thread while blocked.</li>
+ *   <li>MVC async work (streamed PDF/export bodies) runs on virtual threads via {@code applicationTaskExecutor}.</li>
+ *   <li>{@link JdbcConcurrencyLimitFilter} bounds concurrent {@code /api/*} requests to the Hikari pool size
+ *       times {@code billing.virtual-threads.permits-per-connection}.</li>
+ *   <li>{@link VirtualThreadPinningMonitor} reports pinning events (e.g. inside Drools or Hibernate
+ *       {@code synchronized} blocks) as metrics and warnings.</li>
+ * </ul>
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "billing.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        log.info("Serving requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean
+    public FilterRegistrationBean<JdbcConcurrencyLimitFilter> jdbcConcurrencyLimitFilter(
+            DataSource dataSource,
+            ObjectMapper objectMapper,
+            MeterRegistry registry,
+            @Value("${billing.virtual-threads.permits-per-connection:2}") int permitsPerConnection,
+            @Value("${billing.virtual-threads.max-concurrent-requests:0}") int explicitLimit,
+            @Value("${billing.virtual-threads.permit-wait:5s}") Duration permitWait) {
+
+        int limit = explicitLimit > 0 ? explicitLimit : poolSize(dataSource) * permitsPerConnection;
+        JdbcConcurrencyLimitFilter filter = new JdbcConcurrencyLimitFilter(limit, permitWait, objectMapper);
+        log.info("API concurrency limited to {} in-flight requests (wait up to {})", limit, permitWait);
+
+        Gauge.builder("billing.virtualthreads.permits.available", filter, JdbcConcurrencyLimitFilter::availablePermits)
+                .register(registry);
+        Gauge.builder("billing.virtualthreads.permits.queued", filter, JdbcConcurrencyLimitFilter::queueLength)
+                .register(registry);
+
+        FilterRegistrationBean<JdbcConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/api/*");
+        // After CorrelationIdFilter so rejections still carry a correlation id
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "billing.virtual-threads.pinning-monitor.enabled", havingValue = "true", matchIfMissing = true)
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(
+            MeterRegistry registry,
+            @Value("${billing.virtual-threads.pinning-monitor.threshold:20ms}") Duration threshold) {
+        return new VirtualThreadPinningMonitor(registry, threshold);
+    }
+
+    private static int poolSize(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource hikari) {
+            return hikari.getMaximumPoolSize();
+        }
+        log.warn("DataSource is not Hikari ({}); assuming a pool of 10 connections", dataSource.getClass().getName());
+        return 10;
+    }
+}
@@ -0,0 +1,108 @@
+package com.wms.billing.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Detects virtual threads pinned to their carrier (blocking inside {@code synchronized} or native frames)
+ * using the in-process JFR event {@code jdk.VirtualThreadPinned}.
+ *
+ * <p>Each event is attributed to the first library frame on its stack (Drools/KIE, Hibernate, Hikari,
+ * JasperReports, otherwise {@code other}) and counted in {@code billing.virtualthreads.pinned}; the pinned
+ * duration is recorded in {@code billing.virtualthreads.pinned.duration}. The top frames are logged at WARN so
+ * the offending synchronized section can be found.</p>
+ */
+@Slf4j
+public class VirtualThreadPinningMonitor {
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 6;
+
+    private static final Map<String, String> COMPONENTS = Map.of(
+            "org.drools.", "drools",
+            "org.kie.", "drools",
+            "org.hibernate.", "hibernate",
+            "com.zaxxer.hikari.", "hikari",
+            "org.postgresql.", "jdbc-driver",
+            "net.sf.jasperreports.", "jasper"
+    );
+
+    private final MeterRegistry registry;
+    private final Duration threshold;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry registry, Duration threshold) {
+        this.registry = registry;
+        this.threshold = threshold;
+    }
+
+    @PostConstruct
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(EVENT, this::onPinned);
+        stream.startAsync();
+        log.info("Virtual thread pinning monitor started (threshold {})", threshold);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        List<RecordedFrame> frames = stackTrace != null ? stackTrace.getFrames() : List.of();
+        String component = classify(frames);
+
+        counters.computeIfAbsent(component, c -> Counter.builder("billing.virtualthreads.pinned")
+                        .description("Virtual thread pinning events by library")
+                        .tag("component", c)
+                        .register(registry))
+                .increment();
+        Timer.builder("billing.virtualthreads.pinned.duration")
+                .tag("component", component)
+                .register(registry)
+                .record(event.getDuration());
+
+        if (log.isWarnEnabled()) {
+            String top = frames.stream()
+                    .limit(LOGGED_FRAMES)
+                    .map(f -> f.getMethod().getType().getName() + "." + f.getMethod().getName() + ":" + f.getLineNumber())
+                    .collect(Collectors.joining(" <- "));
+            log.warn("Virtual thread pinned for {} ms in {}: {}", event.getDuration().toMillis(), component, top);
+        }
+    }
+
+    private static String classify(List<RecordedFrame> frames) {
+        for (RecordedFrame frame : frames) {
+            if (frame.getMethod() == null || frame.getMethod().getType() == null) {
+                continue;
+            }
+            String className = frame.getMethod().getType().getName();
+            for (Map.Entry<String, String> e : COMPONENTS.entrySet()) {
+                if (className.startsWith(e.getKey())) {
+                    return e.getValue();
+                }
+            }
+        }
+        return "other";
+    }
+}
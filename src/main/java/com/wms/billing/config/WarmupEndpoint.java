@@ -0,0 +1,26 @@
+package com.wms.billing.config;
+
+import com.wms.billing.service.StartupWarmup;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/warmup}: status of the {@link StartupWarmup} and, per step, its outcome, how many items
+ * (invoices, templates, rate sheets) it warmed, how long it took and the first errors.
+ */
+@Component
+@Endpoint(id = "warmup")
+@RequiredArgsConstructor
+public class WarmupEndpoint {
+
+    private final StartupWarmup warmup;
+
+    @ReadOperation
+    public Map<String, Object> warmup() {
+        return warmup.report();
+    }
+}
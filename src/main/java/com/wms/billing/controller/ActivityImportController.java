@@ -0,0 +1,47 @@
+package com.wms.billing.controller;
+
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.service.ActivityFileImporter;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+
+/**
+ * Rating of activity CSV files already on the server (see {@link ActivityFileImporter}).
+ *
+ * Endpoints:
+ * <ul>
+ *   <li>POST {@code /api/activity-imports/{ratesheetId}/preview?file=&warehouseId=&periodStart=&periodEnd=} – preview an invoice from a file</li>
+ *   <li>POST {@code /api/activity-imports/{ratesheetId}/finalize?file=&warehouseId=&periodStart=&periodEnd=} – persist a FINAL invoice from a file</li>
+ * </ul>
+ */
+@RestController
+@RequestMapping("/api/activity-imports")
+public class ActivityImportController {
+
+    private final ActivityFileImporter importer;
+
+    public ActivityImportController(ActivityFileImporter importer) {
+        this.importer = importer;
+    }
+
+    @PostMapping("/{ratesheetId}/preview")
+    public ResponseEntity<Invoice> preview(@PathVariable Long ratesheetId,
+                                           @RequestParam String file,
+                                           @RequestParam String warehouseId,
+                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate periodStart,
+                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate periodEnd) {
+        return ResponseEntity.ok(importer.rate(ratesheetId, file, warehouseId, periodStart, periodEnd, true));
+    }
+
+    @PostMapping("/{ratesheetId}/finalize")
+    public ResponseEntity<Invoice> finalizeInvoice(@PathVariable Long ratesheetId,
+                                                   @RequestParam String file,
+                                                   @RequestParam String warehouseId,
+                                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate periodStart,
+                                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate periodEnd) {
+        return ResponseEntity.ok(importer.rate(ratesheetId, file, warehouseId, periodStart, periodEnd, false));
+    }
+}
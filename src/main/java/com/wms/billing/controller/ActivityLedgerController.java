@@ -0,0 +1,57 @@
+package com.wms.billing.controller;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.dto.LedgerAppendRequest;
+import com.wms.billing.helper.EntityMapper;
+import com.wms.billing.service.ActivityLedger;
+import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Activity ledger (only when {@code billing.ledger.enabled=true}).
+ *
+ * Endpoints:
+ * <ul>
+ *   <li>POST {@code /api/ledger/activities} – append a customer's activities at one warehouse; ids already appended are skipped</li>
+ *   <li>GET {@code /api/ledger/activities?customerId=&warehouseId=&start=&end=} – stored activities in a date range</li>
+ * </ul>
+ */
+@RestController
+@RequestMapping("/api/ledger/activities")
+@ConditionalOnProperty(name = "billing.ledger.enabled", havingValue = "true")
+public class ActivityLedgerController {
+
+    private final ActivityLedger ledger;
+
+    public ActivityLedgerController(ActivityLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    @PostMapping
+    public ResponseEntity<Map<String, Integer>> append(@RequestBody @Valid LedgerAppendRequest request) {
+        List<Activity> activities = EntityMapper.toActivities(request.getWarehouseId(), request.getActivities());
+        int appended = ledger.append(request.getCustomerId(), activities);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(Map.of("appended", appended, "duplicates", activities.size() - appended));
+    }
+
+    @GetMapping
+    public ResponseEntity<List<Activity>> find(@RequestParam String customerId,
+                                               @RequestParam String warehouseId,
+                                               @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+                                               @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end) {
+        if (end.isBefore(start)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "end must not be before start");
+        }
+        return ResponseEntity.ok(ledger.findActivities(customerId, warehouseId, start, end));
+    }
+}
@@ -0,0 +1,60 @@
+package com.wms.billing.controller;
+
+import com.wms.billing.domain.BillingRun;
+import com.wms.billing.dto.BillingRunRequest;
+import com.wms.billing.dto.BillingRunResponseDTO;
+import com.wms.billing.service.BillingRunService;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URI;
+
+/**
+ * Month-end billing runs executed server-side.
+ *
+ * Endpoints:
+ * <ul>
+ *   <li>POST {@code /api/billing-runs} – start a run for a period; 202 with its progress</li>
+ *   <li>GET {@code /api/billing-runs/{runId}} – progress, throughput and failed partitions</li>
+ *   <li>POST {@code /api/billing-runs/{runId}/resume} – retry failed partitions from their checkpoints</li>
+ * </ul>
+ */
+@RestController
+@RequestMapping("/api/billing-runs")
+public class BillingRunController {
+
+    private final BillingRunService runService;
+
+    public BillingRunController(BillingRunService runService) {
+        this.runService = runService;
+    }
+
+    @PostMapping
+    public ResponseEntity<BillingRunResponseDTO> start(@RequestBody @Valid BillingRunRequest request) {
+        BillingRun run = runService.start(request);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/billing-runs/" + run.getId()))
+                .body(requireProgress(run.getId()));
+    }
+
+    @GetMapping("/{runId}")
+    public ResponseEntity<BillingRunResponseDTO> progress(@PathVariable Long runId) {
+        return ResponseEntity.ok(requireProgress(runId));
+    }
+
+    @PostMapping("/{runId}/resume")
+    public ResponseEntity<BillingRunResponseDTO> resume(@PathVariable Long runId) {
+        BillingRun run = runService.resume(runId);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/billing-runs/" + run.getId()))
+                .body(requireProgress(run.getId()));
+    }
+
+    private BillingRunResponseDTO requireProgress(Long runId) {
+        return runService.progress(runId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Billing run not found: " + runId));
+    }
+}
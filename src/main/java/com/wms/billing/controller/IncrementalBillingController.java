@@ -0,0 +1,62 @@
+package com.wms.billing.controller;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.dto.CreateInvoiceRequest;
+import com.wms.billing.helper.EntityMapper;
+import com.wms.billing.service.IncrementalBillingService;
+import jakarta.validation.Valid;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental billing: post activities during the month, rate the month from running accumulators.
+ *
+ * Endpoints:
+ * <ul>
+ *   <li>POST {@code /api/incremental-billing/{ratesheetId}/activities} – add activities (each with an
+ *       {@code activityDate}) to the accumulators, skipping activity ids already posted; {@code periodStart}/{@code periodEnd}
+ *       are ignored</li>
+ *   <li>GET {@code /api/incremental-billing/{ratesheetId}/preview?warehouseId=&periodStart=&periodEnd=} – preview from the accumulators</li>
+ *   <li>POST {@code /api/incremental-billing/{ratesheetId}/finalize?warehouseId=&periodStart=&periodEnd=} – persist a FINAL invoice from the accumulators</li>
+ * </ul>
+ */
+@RestController
+@RequestMapping("/api/incremental-billing/{ratesheetId}")
+public class IncrementalBillingController {
+
+    private final IncrementalBillingService incrementalBillingService;
+
+    public IncrementalBillingController(IncrementalBillingService incrementalBillingService) {
+        this.incrementalBillingService = incrementalBillingService;
+    }
+
+    @PostMapping("/activities")
+    public ResponseEntity<Map<String, Integer>> post(@PathVariable Long ratesheetId,
+                                                     @RequestBody @Valid CreateInvoiceRequest request) {
+        List<Activity> activities = EntityMapper.toActivities(request);
+        int posted = incrementalBillingService.post(ratesheetId, request.getWarehouseId(), activities);
+        return ResponseEntity.ok(Map.of("posted", posted, "duplicates", activities.size() - posted));
+    }
+
+    @GetMapping("/preview")
+    public ResponseEntity<Invoice> preview(@PathVariable Long ratesheetId,
+                                           @RequestParam String warehouseId,
+                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate periodStart,
+                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate periodEnd) {
+        return ResponseEntity.ok(incrementalBillingService.invoice(ratesheetId, warehouseId, periodStart, periodEnd, true));
+    }
+
+    @PostMapping("/finalize")
+    public ResponseEntity<Invoice> finalizeInvoice(@PathVariable Long ratesheetId,
+                                                   @RequestParam String warehouseId,
+                                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate periodStart,
+                                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate periodEnd) {
+        return ResponseEntity.ok(incrementalBillingService.invoice(ratesheetId, warehouseId, periodStart, periodEnd, false));
+    }
+}
@@ -1,21 +1,46 @@
 package com.wms.billing.controller;
 
 import com.wms.billing.domain.RateSheet;
-import com.wms.billing.dto.ChargeCategory;
 import com.wms.billing.dto.CreateInvoiceRequest;
+import com.wms.billing.dto.RerateResultDTO;
 import com.wms.billing.domain.Activity;
 import com.wms.billing.domain.Invoice;
+import com.wms.billing.domain.InvoiceLine;
+import com.wms.billing.domain.InvoiceTemplate;
+import com.wms.billing.helper.EntityMapper;
+import com.wms.billing.helper.InvoiceContentHasher;
+import com.wms.billing.repository.InvoiceLineJdbcRepository;
+import com.wms.billing.repository.InvoiceRepository;
+import com.wms.billing.service.InvoiceExportFormat;
+import com.wms.billing.service.InvoiceExportService;
+import com.wms.billing.service.InvoicePdfRenderCache;
+import com.wms.billing.service.InvoicePreviewCoalescer;
+import com.wms.billing.service.InvoiceReratingService;
 import com.wms.billing.service.InvoiceServiceDrools;
+import com.wms.billing.service.InvoiceStageTimer;
+import com.wms.billing.service.InvoiceTemplateService;
 import com.wms.billing.service.JasperInvoiceGenerator;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReport;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.time.LocalDate;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 /**
  * REST controller exposing operations to preview, finalize, and generate PDF invoices.
@@ -34,8 +59,15 @@ import java.util.stream.Collectors;
  *   <li>POST {@code /api/invoices/preview/{contractId}}</li>
  *   <li>POST {@code /api/invoices/finalize/{contractId}}</li>
  *   <li>POST {@code /api/invoices/generate-pdf/{contractId}}</li>
+ *   <li>GET {@code /api/invoices/{invoiceId}}</li>
+ *   <li>GET {@code /api/invoices/{invoiceId}/pdf}</li>
+ *   <li>POST {@code /api/invoices/{invoiceId}/rerate}</li>
+ *   <li>POST {@code /api/invoices/rerate/{contractId}}</li>
  * </ul>
  *
+ * Preview, finalize and GET by id also answer {@code text/csv}, {@code application/x-ndjson} and XLSX when the
+ * {@code Accept} header asks for them (see {@link InvoiceExportFormat}); these bodies are streamed.
+ *
  * Error handling:
  * <ul>
  *   <li>Returns HTTP 400 (Bad Request) if the contract is not found.</li>
@@ -50,32 +82,68 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/invoices")
 public class InvoiceController {
 
+    // What GET /{invoiceId} produces when no export format is preferred
+    private static final List<MediaType> INVOICE_REPRESENTATIONS = List.of(MediaType.APPLICATION_JSON,
+            MediaType.APPLICATION_CBOR, MediaType.valueOf("application/x-jackson-smile"));
+
+    // Tomcat sendfile request attributes (org.apache.catalina.Globals)
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     @Autowired
     private InvoiceServiceDrools invoiceService;
 
     @Autowired
     private JasperInvoiceGenerator jasperGenerator;
 
+    @Autowired
+    private InvoiceLineJdbcRepository invoiceLineRepository;
+
+    @Autowired
+    private InvoiceTemplateService templateService;
+
+    @Autowired
+    private InvoicePdfRenderCache renderCache;
+
+    @Autowired
+    private InvoiceExportService exportService;
+
+    @Autowired
+    private InvoiceRepository invoiceRepo;
+
+    @Autowired
+    private InvoicePreviewCoalescer previewCoalescer;
+
+    @Autowired
+    private InvoiceStageTimer stageTimer;
+
+    @Autowired
+    private InvoiceReratingService reratingService;
+
+    @Value("${billing.pdf.large-invoice.page-size:1000}")
+    private int linePageSize;
+
     /**
      * Preview an invoice without persisting it. Useful for validating charges before finalization.
+     * Identical concurrent previews share one computation (see {@link InvoicePreviewCoalescer}).
      *
      * @param ratesheetId the target contract identifier
      * @param req request containing warehouse, period, and activities to bill
+     * @param detail keep one line per rated activity even when line grouping is enabled
      * @return 200 OK with the calculated {@link Invoice}; 400 if contract is not found
      */
     @PostMapping("/preview/{ratesheetId}")
     public ResponseEntity<Invoice> previewInvoice(@PathVariable @Valid  Long ratesheetId,
-                                                  @RequestBody @Valid CreateInvoiceRequest req) {
-        List<Activity> acts = mapActivities(req);
-
-        Invoice invoice = invoiceService.generateInvoice(
-                ratesheetId,
-                req.getWarehouseId(),
-                req.getPeriodStart(),
-                req.getPeriodEnd(),
-                acts,
-                true
-        );
+                                                  @RequestBody @Valid CreateInvoiceRequest req,
+                                                  @RequestParam(defaultValue = "false") boolean detail) {
+        if (detail) {
+            // Rare and large: not worth a separate coalescer key
+            return ResponseEntity.ok(invoiceService.generateInvoice(ratesheetId, req.getWarehouseId(),
+                    req.getPeriodStart(), req.getPeriodEnd(), EntityMapper.toActivities(req), true, true));
+        }
+        Invoice invoice = previewCoalescer.preview(ratesheetId, req);
         return ResponseEntity.ok(invoice);
     }
 
@@ -84,12 +152,14 @@ public class InvoiceController {
      *
      * @param ratesheetId the target contract identifier
      * @param req request containing warehouse, period, and activities to bill
+     * @param detail persist one line per rated activity even when line grouping is enabled
      * @return 200 OK with the persisted {@link Invoice}; 400 if contract is not found
      */
     @PostMapping("/finalize/{ratesheetId}")
     public ResponseEntity<Invoice> finalizeInvoice(@PathVariable @Valid Long ratesheetId,
-                                                   @RequestBody @Valid CreateInvoiceRequest req) {
-        List<Activity> acts = mapActivities(req);
+                                                   @RequestBody @Valid CreateInvoiceRequest req,
+                                                   @RequestParam(defaultValue = "false") boolean detail) {
+        List<Activity> acts = EntityMapper.toActivities(req);
 
         Invoice invoice = invoiceService.generateInvoice(
                 ratesheetId,
@@ -97,11 +167,42 @@ public class InvoiceController {
                 req.getPeriodStart(),
                 req.getPeriodEnd(),
                 acts,
-                false
+                false,
+                detail
         );
         return ResponseEntity.ok(invoice);
     }
 
+    /**
+     * Preview variant for machine consumers: same computation as {@link #previewInvoice}, written as
+     * CSV, JSON lines or XLSX according to the {@code Accept} header.
+     */
+    @PostMapping(value = "/preview/{ratesheetId}",
+            produces = {InvoiceExportFormat.CSV_VALUE, InvoiceExportFormat.JSON_LINES_VALUE, InvoiceExportFormat.XLSX_VALUE})
+    public ResponseEntity<StreamingResponseBody> previewInvoiceExport(@PathVariable @Valid Long ratesheetId,
+                                                                      @RequestBody @Valid CreateInvoiceRequest req,
+                                                                      @RequestParam(defaultValue = "false") boolean detail,
+                                                                      @RequestHeader(HttpHeaders.ACCEPT) String accept) {
+        ResponseEntity<Invoice> computed = previewInvoice(ratesheetId, req, detail);
+        Invoice invoice = computed.getBody();
+        return export(invoice, () -> invoice.getInvoiceLines().iterator(), accept);
+    }
+
+    /**
+     * Finalize variant for machine consumers: persists like {@link #finalizeInvoice} and returns the stored
+     * invoice as CSV, JSON lines or XLSX according to the {@code Accept} header.
+     */
+    @PostMapping(value = "/finalize/{ratesheetId}",
+            produces = {InvoiceExportFormat.CSV_VALUE, InvoiceExportFormat.JSON_LINES_VALUE, InvoiceExportFormat.XLSX_VALUE})
+    public ResponseEntity<StreamingResponseBody> finalizeInvoiceExport(@PathVariable @Valid Long ratesheetId,
+                                                                       @RequestBody @Valid CreateInvoiceRequest req,
+                                                                       @RequestParam(defaultValue = "false") boolean detail,
+                                                                       @RequestHeader(HttpHeaders.ACCEPT) String accept) {
+        ResponseEntity<Invoice> computed = finalizeInvoice(ratesheetId, req, detail);
+        Invoice invoice = computed.getBody();
+        return export(invoice, () -> invoice.getInvoiceLines().iterator(), accept);
+    }
+
     /**
      * Generate an invoice PDF for preview. The invoice is not persisted.
      *
@@ -114,16 +215,7 @@ public class InvoiceController {
     public ResponseEntity<byte[]> generatePdf(@PathVariable @Valid Long ratesheetId,
                                               @RequestBody @Valid CreateInvoiceRequest req) throws Exception {
 
-        List<Activity> acts = mapActivities(req);
-
-        Invoice invoice = invoiceService.generateInvoice(
-                ratesheetId,
-                req.getWarehouseId(),
-                req.getPeriodStart(),
-                req.getPeriodEnd(),
-                acts,
-                true
-        );
+        Invoice invoice = previewCoalescer.preview(ratesheetId, req);
 
         byte[] pdf = jasperGenerator.generateInvoicePdf(invoice);
 
@@ -132,6 +224,135 @@ public class InvoiceController {
                 .contentType(MediaType.APPLICATION_PDF)
                 .body(pdf);
     }
+
+    /**
+     * Fetch a persisted invoice. Returns JSON by default; when the {@code Accept} header ranks CSV, JSON lines or
+     * XLSX above JSON (quality factors included) the invoice is exported instead, reading lines from the database
+     * page by page while the response is written so the eager line collection is never loaded.
+     *
+     * @param invoiceId persisted invoice identifier
+     * @param accept the request's {@code Accept} header, if any
+     * @return 200 OK with the {@link Invoice} or a streamed export; 404 if it does not exist
+     */
+    @GetMapping("/{invoiceId}")
+    public ResponseEntity<?> getInvoice(@PathVariable Long invoiceId,
+                                        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        if (InvoiceExportFormat.preferredOver(accept, INVOICE_REPRESENTATIONS).isPresent()) {
+            Invoice header = invoiceLineRepository.findHeader(invoiceId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Invoice not found: " + invoiceId));
+            return export(header, () -> invoiceLineRepository.iterateLines(invoiceId, linePageSize), accept);
+        }
+        return invoiceRepo.findById(invoiceId)
+                .map(ResponseEntity::ok)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Invoice not found: " + invoiceId));
+    }
+
+    /**
+     * Re-rate a FINAL invoice against the current version of its rate sheet, using the stored line quantities.
+     * Rate differences are issued as an ADJUSTMENT invoice (a credit note when negative).
+     *
+     * @param invoiceId FINAL invoice identifier
+     * @param preview compute the adjustment without saving it
+     * @return 200 OK with the adjustment invoice; 204 if no rate changed; 404/409 if the invoice is missing or not FINAL
+     */
+    @PostMapping("/{invoiceId}/rerate")
+    public ResponseEntity<Invoice> rerateInvoice(@PathVariable Long invoiceId,
+                                                 @RequestParam(defaultValue = "false") boolean preview) {
+        return reratingService.rerate(invoiceId, preview)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
+    /**
+     * Re-rate every FINAL invoice of a rate sheet whose period lies within the given dates.
+     *
+     * @param ratesheetId the revised contract identifier
+     * @param preview compute the adjustments without saving them
+     * @return 200 OK with counts, the net delta and one entry per adjusted invoice
+     */
+    @PostMapping("/rerate/{ratesheetId}")
+    public ResponseEntity<RerateResultDTO> reratePeriod(@PathVariable Long ratesheetId,
+                                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate periodStart,
+                                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate periodEnd,
+                                                        @RequestParam(defaultValue = "false") boolean preview) {
+        return ResponseEntity.ok(reratingService.reratePeriod(ratesheetId, periodStart, periodEnd, preview));
+    }
+
+    /**
+     * Render a persisted invoice as PDF. Lines are streamed from the database page by page and the
+     * PDF is written directly to the response, so memory stays bounded for very large invoices.
+     * <p>
+     * FINAL invoices are served from {@link InvoicePdfRenderCache} when possible and do not touch Jasper.
+     * When the connector supports sendfile (Tomcat NIO/NIO2), the cached file is handed to Tomcat, which
+     * writes it to the socket with {@link FileChannel#transferTo} after the handler returns; otherwise it is
+     * copied through the response stream.
+     * </p>
+     *
+     * @param invoiceId persisted invoice identifier
+     * @param request   current request, used to hand cached files to the connector
+     * @return 200 OK with a streamed PDF; 404 if the invoice does not exist
+     * @throws Exception if the template cannot be loaded or rendering into the cache fails
+     */
+    @GetMapping("/{invoiceId}/pdf")
+    public ResponseEntity<StreamingResponseBody> downloadPdf(@PathVariable Long invoiceId,
+                                                             HttpServletRequest request) throws Exception {
+        Invoice header = stageTimer.time("invoice_load", () -> invoiceLineRepository.findHeader(invoiceId))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Invoice not found: " + invoiceId));
+        stageTimer.customer(header.getCustomerId());
+
+        // Resolve the template before streaming so template errors still map to a 400 response
+        InvoiceTemplate template = stageTimer.time("template_resolve",
+                () -> templateService.getCustomerTemplate(header.getCustomerId()));
+
+        if ("FINAL".equals(header.getStatus()) && header.getContentHash() == null) {
+            // Finalized before content hashes were recorded and not backfilled yet (InvoiceContentHashBackfill):
+            // derive the hash for the cache key only; a GET does not write it
+            header.setContentHash(InvoiceContentHasher.hash(header,
+                    invoiceLineRepository.iterateLines(invoiceId, linePageSize)));
+        }
+
+        if (renderCache.isCacheable(header)) {
+            String key = renderCache.cacheKey(header, template);
+            FileChannel pdf = renderCache.openOrRender(key,
+                    out -> jasperGenerator.writeInvoicePdf(header, jasperGenerator.loadReport(template), out));
+            long length = pdf.size();
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=invoice-" + invoiceId + ".pdf")
+                    .contentType(MediaType.APPLICATION_PDF)
+                    .contentLength(length);
+
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+                // Tomcat opens the file again once the response is committed; eviction defers deletes for that
+                pdf.close();
+                request.setAttribute(SENDFILE_FILENAME, renderCache.pathFor(key).toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, length);
+                return response.build();
+            }
+
+            StreamingResponseBody body = out -> {
+                try (pdf) {
+                    InvoicePdfRenderCache.transfer(pdf, Channels.newChannel(out));
+                }
+            };
+            return response.body(body);
+        }
+
+        JasperReport report = jasperGenerator.loadReport(template);
+
+        StreamingResponseBody body = out -> {
+            try {
+                jasperGenerator.writeInvoicePdf(header, report, out);
+            } catch (JRException e) {
+                throw new IllegalStateException("PDF rendering failed for invoice " + invoiceId, e);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=invoice-" + invoiceId + ".pdf")
+                .contentType(MediaType.APPLICATION_PDF)
+                .body(body);
+    }
 //
 //    /**
 //     * Ensure the contract exists; otherwise respond with HTTP 400 (Bad Request).
@@ -148,21 +369,17 @@ public class InvoiceController {
 //        return contract;
 //    }
 
-    /**
-     * Map incoming request activities to domain {@link Activity} objects, enriching with
-     * request-scope fields such as warehouse id.
-     *
-     * @param req invoice creation request containing activity DTOs
-     * @return list of mapped {@link Activity} instances
-     */
-    private List<Activity> mapActivities(CreateInvoiceRequest req) {
-        return req.getActivities().stream().map(dto -> {
-            Activity a = new Activity();
-            a.setType(dto.getType());
-            a.setQuantity(dto.getQuantity());
-            a.setCategory(ChargeCategory.valueOf(dto.getCategory()));
-            a.setWarehouseId(req.getWarehouseId());
-            return a;
-        }).collect(Collectors.toList());
+    private ResponseEntity<StreamingResponseBody> export(Invoice header,
+                                                         Supplier<Iterator<InvoiceLine>> lines,
+                                                         String accept) {
+        InvoiceExportFormat format = InvoiceExportFormat.fromAccept(accept)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Unsupported export type: " + accept));
+        String name = "invoice-" + (header.getId() != null ? header.getId() : "preview") + "." + format.getExtension();
+
+        StreamingResponseBody body = out -> exportService.write(format, header, lines.get(), out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + name)
+                .contentType(format.getMediaType())
+                .body(body);
     }
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.wms.billing.controller;
+
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.dto.InvoiceJobRequest;
+import com.wms.billing.dto.InvoiceJobResponseDTO;
+import com.wms.billing.dto.InvoiceJobStatus;
+import com.wms.billing.service.InvoiceJob;
+import com.wms.billing.service.InvoiceJobService;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URI;
+
+/**
+ * Asynchronous invoice jobs for rating and PDF generation on large activity sets.
+ *
+ * Endpoints:
+ * <ul>
+ *   <li>POST {@code /api/invoice-jobs} – queue a job; 202 with the job status, 429 + {@code Retry-After} if the queue is full</li>
+ *   <li>GET {@code /api/invoice-jobs/{jobId}} – job status</li>
+ *   <li>GET {@code /api/invoice-jobs/{jobId}/result} – the {@link Invoice} (RATING) or PDF bytes (PDF) once the job has succeeded</li>
+ * </ul>
+ */
+@RestController
+@RequestMapping("/api/invoice-jobs")
+public class InvoiceJobController {
+
+    private final InvoiceJobService jobService;
+
+    public InvoiceJobController(InvoiceJobService jobService) {
+        this.jobService = jobService;
+    }
+
+    @PostMapping
+    public ResponseEntity<InvoiceJobResponseDTO> submit(@RequestBody @Valid InvoiceJobRequest request) {
+        InvoiceJob job = jobService.submit(request);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/invoice-jobs/" + job.getId()))
+                .body(toResponse(job));
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<InvoiceJobResponseDTO> status(@PathVariable String jobId) {
+        return ResponseEntity.ok(toResponse(requireJob(jobId)));
+    }
+
+    @GetMapping("/{jobId}/result")
+    public ResponseEntity<?> result(@PathVariable String jobId) {
+        InvoiceJob job = requireJob(jobId);
+        if (job.getStatus() == InvoiceJobStatus.FAILED) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Job " + jobId + " failed: " + job.getError());
+        }
+        if (job.getStatus() != InvoiceJobStatus.SUCCEEDED) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Job " + jobId + " is " + job.getStatus());
+        }
+
+        if (job.getResult() instanceof byte[] pdf) {
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=invoice-job-" + jobId + ".pdf")
+                    .contentType(MediaType.APPLICATION_PDF)
+                    .body(pdf);
+        }
+        return ResponseEntity.ok(job.getResult());
+    }
+
+    private InvoiceJob requireJob(String jobId) {
+        return jobService.find(jobId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Job not found or expired: " + jobId));
+    }
+
+    private static InvoiceJobResponseDTO toResponse(InvoiceJob job) {
+        return InvoiceJobResponseDTO.builder()
+                .jobId(job.getId())
+                .type(job.getType())
+                .status(job.getStatus())
+                .submittedAt(job.getSubmittedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .expiresAt(job.getExpiresAt())
+                .error(job.getError())
+                .resultUrl(job.getStatus() == InvoiceJobStatus.SUCCEEDED ? "/api/invoice-jobs/" + job.getId() + "/result" : null)
+                .build();
+    }
+}
@@ -0,0 +1,33 @@
+package com.wms.billing.controller;
+
+import com.wms.billing.dto.SimulationRequest;
+import com.wms.billing.dto.SimulationResultDTO;
+import com.wms.billing.service.PricingSimulationService;
+import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * What-if pricing across candidate rate sheets. Nothing is persisted.
+ *
+ * Endpoints:
+ * <ul>
+ *   <li>POST {@code /api/simulations} – rate one activity set (inline or a ledger range) against saved and/or draft
+ *       rate sheets; per-candidate totals, per-category breakdowns and lines</li>
+ * </ul>
+ */
+@RestController
+@RequestMapping("/api/simulations")
+public class PricingSimulationController {
+
+    private final PricingSimulationService simulationService;
+
+    public PricingSimulationController(PricingSimulationService simulationService) {
+        this.simulationService = simulationService;
+    }
+
+    @PostMapping
+    public ResponseEntity<SimulationResultDTO> simulate(@RequestBody @Valid SimulationRequest request) {
+        return ResponseEntity.ok(simulationService.simulate(request));
+    }
+}
@@ -6,12 +6,15 @@ import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import lombok.Data;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 
 @Data
 public class Activity {
+    private String activityId;    // optional; lets resent activities be dropped as duplicates
     private String type;
     private BigDecimal quantity;
     private String warehouseId;   // WH001, WH002 etc.
+    private LocalDate activityDate;   // day the activity happened; required by the activity ledger
 
     @Enumerated(EnumType.STRING)
     private ChargeCategory category;     // STORAGE, INBOUND, OUTBOUND, LABOR, ACCESSORIAL
@@ -0,0 +1,34 @@
+package com.wms.billing.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * An activity id already ingested into a scope (the activity ledger of a customer, or a rate sheet's incremental
+ * accumulators) for one month. The unique key is what makes deduplication exact.
+ */
+@Entity
+@Table(name = "activity_key",
+        uniqueConstraints = @UniqueConstraint(name = "uk_activity_key",
+                columnNames = {"scope", "period_month", "activity_id"}),
+        indexes = @Index(name = "idx_activity_key_period", columnList = "period_month"))
+@Data
+public class ActivityKey {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String scope;
+
+    @Column(name = "period_month", nullable = false)
+    private LocalDate periodMonth;   // first day of the activity's month
+
+    @Column(name = "activity_id", nullable = false, length = 200)
+    private String activityId;
+
+    private Instant createdAt;
+}
@@ -0,0 +1,46 @@
+package com.wms.billing.domain;
+
+import com.wms.billing.dto.ChargeCategory;
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Running quantity of one (rate sheet, warehouse, category, type) for one billing month, kept up to date as
+ * activities are posted during the month.
+ */
+@Entity
+@Table(name = "billing_accumulator",
+        uniqueConstraints = @UniqueConstraint(name = "uk_billing_accumulator_key",
+                columnNames = {"rate_sheet_id", "warehouse_id", "category", "type", "period_month"}))
+@Data
+public class BillingAccumulator {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "rate_sheet_id", nullable = false)
+    private Long rateSheetId;
+
+    @Column(name = "warehouse_id", nullable = false)
+    private String warehouseId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ChargeCategory category;
+
+    @Column(nullable = false)
+    private String type;
+
+    @Column(name = "period_month", nullable = false)
+    private LocalDate periodMonth;   // first day of the month
+
+    @Column(precision = 24, scale = 6, nullable = false)
+    private BigDecimal quantity;
+
+    private long activityCount;
+    private Instant updatedAt;
+}
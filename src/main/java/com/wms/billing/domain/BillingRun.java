@@ -0,0 +1,30 @@
+package com.wms.billing.domain;
+
+import com.wms.billing.dto.BillingRunStatus;
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * A server-side billing run for one period, split into {@link BillingRunPartition}s (one per rate sheet).
+ */
+@Entity
+@Table(name = "billing_run")
+@Data
+public class BillingRun {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private LocalDate periodStart;
+    private LocalDate periodEnd;
+
+    @Enumerated(EnumType.STRING)
+    private BillingRunStatus status;
+
+    private Instant createdAt;
+    private Instant startedAt;   // latest start or resume; throughput is measured from here
+    private Instant finishedAt;
+}
@@ -0,0 +1,42 @@
+package com.wms.billing.domain;
+
+import com.wms.billing.dto.BillingRunPartitionStatus;
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * One rate sheet's share of a {@link BillingRun}. Warehouses are billed in {@code warehouseId} order and
+ * {@link #lastWarehouseId} records the last one whose invoices were committed, so a resumed partition continues
+ * after it.
+ */
+@Entity
+@Table(name = "billing_run_partition",
+        indexes = @Index(name = "idx_billing_run_partition_run_status", columnList = "run_id, status"))
+@Data
+public class BillingRunPartition {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "run_id", nullable = false)
+    private Long runId;
+
+    private Long rateSheetId;
+    private String customerId;
+
+    @Enumerated(EnumType.STRING)
+    private BillingRunPartitionStatus status;
+
+    private String lastWarehouseId;   // checkpoint: committed up to and including this warehouse
+    private long warehousesDone;
+    private long invoicesCreated;
+    private int attempts;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    private Instant startedAt;
+    private Instant finishedAt;
+}
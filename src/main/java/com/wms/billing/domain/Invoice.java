@@ -20,8 +20,17 @@ public class Invoice {
     private LocalDate periodStart;
     private LocalDate periodEnd;
     private BigDecimal totalAmount;
-    private String status; // PREVIEW, FINAL
+    private String status; // PREVIEW, FINAL, ADJUSTMENT
 
+    private Long adjustsInvoiceId; // for ADJUSTMENT: the FINAL invoice whose lines were re-rated
+
+    @Column(length = 64)
+    private String contentHash; // SHA-256 of header + lines, set when finalized
+
+    // Join table named explicitly: InvoiceLineJdbcRepository pages lines through it
     @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @JoinTable(name = "invoice_invoice_lines",
+            joinColumns = @JoinColumn(name = "invoice_id"),
+            inverseJoinColumns = @JoinColumn(name = "invoice_lines_id"))
     private List<InvoiceLine> invoiceLines;
 }
@@ -1,8 +1,10 @@
 package com.wms.billing.domain;
 
+import com.wms.billing.dto.ChargeCategory;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 
 @Entity
 @Table(name = "invoice_line")
@@ -16,4 +18,12 @@ public class InvoiceLine {
     private BigDecimal quantity;
     private BigDecimal rate;
     private BigDecimal amount;
+
+    // Charge the line was rated against; lets re-rating find the line's rate in a revised rate sheet
+    @Enumerated(EnumType.STRING)
+    private ChargeCategory category;
+    private String chargeType;
+
+    // Activity date of the rated activity, or the start of its day/week bucket once lines are grouped
+    private LocalDate serviceDate;
 }
@@ -3,6 +3,8 @@ package com.wms.billing.domain;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -11,6 +13,8 @@ import java.util.List;
 @Builder
 @Entity
 @Table(name = "rate_sheets")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "rateSheets")
 @Getter
 @Setter
 @NoArgsConstructor
@@ -28,7 +32,13 @@ public class RateSheet {
     @NotBlank
     private String name;
 
+    // Version stamp bumped by each update; null on rows that predate the column, which counts as 0.
+    // Only written by RateSheetRepository#bumpRevision, so a flush of a stale entity cannot roll it back
+    @Column(updatable = false)
+    private Long revision;
+
     @OneToMany(mappedBy = "rateSheet", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "rateSheets.warehouses")
     private List<Warehouse> warehouses = new ArrayList<>();
 
 }
\ No newline at end of file
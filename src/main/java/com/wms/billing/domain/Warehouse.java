@@ -3,12 +3,16 @@ package com.wms.billing.domain;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
 @Table(name = "warehouses")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "warehouses")
 @Setter
 @Getter
 public class Warehouse {
@@ -23,5 +27,6 @@ public class Warehouse {
     private RateSheet rateSheet;
 
     @OneToMany(mappedBy = "warehouse", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "warehouses.charges")
     private List<WarehouseCharges> charges = new ArrayList<>();
 }
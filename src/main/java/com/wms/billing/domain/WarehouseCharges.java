@@ -4,12 +4,16 @@ import com.wms.billing.dto.AccessorialType;
 import com.wms.billing.dto.ChargeCategory;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.math.BigDecimal;
 
 
 @Entity
 @Table(name = "warehouse_charges")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "warehouseCharges")
 @Getter
 @Setter
 @NoArgsConstructor
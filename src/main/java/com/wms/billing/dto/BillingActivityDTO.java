@@ -2,10 +2,13 @@ package com.wms.billing.dto;
 
 import lombok.Data;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 
 @Data
 public class BillingActivityDTO {
+    private String activityId;   // optional WMS id; ledger and incremental postings ignore ids already seen
     private String type;
     private String category;
     private BigDecimal quantity;
+    private LocalDate activityDate;   // optional for rating; required when appending to the activity ledger
 }
@@ -0,0 +1,3 @@
+package com.wms.billing.dto;
+
+public enum BillingRunPartitionStatus { PENDING, RUNNING, COMPLETED, FAILED }
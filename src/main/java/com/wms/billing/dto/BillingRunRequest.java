@@ -0,0 +1,20 @@
+package com.wms.billing.dto;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+public class BillingRunRequest {
+
+    @NotNull
+    private LocalDate periodStart;
+
+    @NotNull
+    private LocalDate periodEnd;
+
+    // Optional: restrict the run to these customers; all rate sheets otherwise
+    private List<String> customerIds;
+}
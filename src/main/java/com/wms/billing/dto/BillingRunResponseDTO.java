@@ -0,0 +1,45 @@
+package com.wms.billing.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BillingRunResponseDTO {
+
+    private Long runId;
+    private LocalDate periodStart;
+    private LocalDate periodEnd;
+    private BillingRunStatus status;
+    private Instant createdAt;
+    private Instant finishedAt;
+
+    private long partitionsTotal;
+    private long partitionsPending;
+    private long partitionsRunning;
+    private long partitionsCompleted;
+    private long partitionsFailed;
+
+    private long warehousesProcessed;
+    private long invoicesCreated;
+    private double invoicesPerSecond;   // since the run (or its latest resume) started
+
+    private List<FailedPartition> failures;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class FailedPartition {
+        private Long rateSheetId;
+        private String customerId;
+        private String error;
+    }
+}
@@ -0,0 +1,3 @@
+package com.wms.billing.dto;
+
+public enum BillingRunStatus { RUNNING, COMPLETED, COMPLETED_WITH_ERRORS }
@@ -0,0 +1,22 @@
+package com.wms.billing.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+@Data
+public class InvoiceJobRequest {
+
+    @NotNull
+    private InvoiceJobType type;
+
+    @NotNull
+    private Long rateSheetId;
+
+    // RATING only: persist the invoice as FINAL instead of returning a preview
+    private boolean finalizeInvoice;
+
+    @NotNull
+    @Valid
+    private CreateInvoiceRequest request;
+}
@@ -0,0 +1,26 @@
+package com.wms.billing.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceJobResponseDTO {
+
+    private String jobId;
+    private InvoiceJobType type;
+    private InvoiceJobStatus status;
+    private Instant submittedAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private Instant expiresAt;   // result is discarded after this instant
+    private String error;
+    private String resultUrl;    // set once the job has succeeded
+
+}
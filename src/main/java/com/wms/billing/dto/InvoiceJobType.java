@@ -0,0 +1,11 @@
+package com.wms.billing.dto;
+
+/**
+ * Kind of work an asynchronous invoice job performs. Each type has its own worker pool and queue.
+ */
+public enum InvoiceJobType {
+    /** Rate activities and return the computed {@code Invoice} (optionally persisting it). */
+    RATING,
+    /** Rate activities and render the invoice PDF. */
+    PDF
+}
@@ -0,0 +1,21 @@
+package com.wms.billing.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class LedgerAppendRequest {
+
+    @NotBlank
+    private String customerId;
+
+    @NotBlank
+    private String warehouseId;
+
+    // Each activity needs an activityDate
+    @NotEmpty
+    private List<BillingActivityDTO> activities;
+}
@@ -0,0 +1,31 @@
+package com.wms.billing.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RerateResultDTO {
+
+    private long invoicesScanned;
+    private long invoicesAdjusted;
+    private BigDecimal totalDelta;   // negative: net credit to the customer
+    private boolean preview;
+    private List<InvoiceDelta> adjustments;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class InvoiceDelta {
+        private Long invoiceId;
+        private Long adjustmentInvoiceId;   // null when previewing
+        private BigDecimal delta;
+    }
+}
@@ -0,0 +1,27 @@
+package com.wms.billing.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+public class SimulationRequest {
+
+    @NotBlank
+    private String warehouseId;
+
+    private LocalDate periodStart;
+    private LocalDate periodEnd;
+
+    // Activity source: either inline activities, or the activity ledger of this customer over the period
+    private List<BillingActivityDTO> activities;
+    private String ledgerCustomerId;
+
+    // Candidates: saved rate sheets and/or drafts that are never persisted
+    private List<Long> rateSheetIds;
+    @Valid
+    private List<RateSheetDTO> rateSheets;
+}
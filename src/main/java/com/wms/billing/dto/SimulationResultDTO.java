@@ -0,0 +1,39 @@
+package com.wms.billing.dto;
+
+import com.wms.billing.domain.InvoiceLine;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SimulationResultDTO {
+
+    private String warehouseId;
+    private LocalDate periodStart;
+    private LocalDate periodEnd;
+    private int activityCount;             // activities received or read from the ledger
+    private int aggregatedActivityCount;   // distinct (category, type) pairs actually rated
+    private List<Candidate> candidates;    // in request order: saved rate sheets first, then drafts
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Candidate {
+        private String label;
+        private Long rateSheetId;                        // null for drafts
+        private BigDecimal totalAmount;
+        private Map<ChargeCategory, BigDecimal> byCategory;
+        private List<String> unpriced;                   // CATEGORY|type pairs the candidate has no charge for
+        private List<InvoiceLine> lines;
+    }
+}
@@ -0,0 +1,12 @@
+package com.wms.billing.exception;
+
+public class JobQueueFullException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public JobQueueFullException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() { return retryAfterSeconds; }
+}
@@ -1,9 +1,12 @@
 package com.wms.billing.helper;
 
+import com.wms.billing.domain.Activity;
 import com.wms.billing.domain.RateSheet;
 import com.wms.billing.domain.Warehouse;
 import com.wms.billing.domain.WarehouseCharges;
+import com.wms.billing.dto.BillingActivityDTO;
 import com.wms.billing.dto.ChargeCategory;
+import com.wms.billing.dto.CreateInvoiceRequest;
 import com.wms.billing.dto.RateSheetDTO;
 import com.wms.billing.dto.RateSheetResponseDTO;
 import com.wms.billing.dto.WarehouseChargeDTO;
@@ -95,4 +98,29 @@ public class EntityMapper {
         dto.setAccessorialType(charge.getAccessorialType());
         return dto;
     }
+
+    // Request → domain activities
+    /**
+     * Map incoming request activities to domain {@link Activity} objects, enriching with
+     * request-scope fields such as warehouse id.
+     *
+     * @param req invoice creation request containing activity DTOs
+     * @return list of mapped {@link Activity} instances
+     */
+    public static List<Activity> toActivities(CreateInvoiceRequest req) {
+        return toActivities(req.getWarehouseId(), req.getActivities());
+    }
+
+    public static List<Activity> toActivities(String warehouseId, List<BillingActivityDTO> activities) {
+        return activities.stream().map(dto -> {
+            Activity a = new Activity();
+            a.setActivityId(dto.getActivityId());
+            a.setType(dto.getType());
+            a.setQuantity(dto.getQuantity());
+            a.setCategory(ChargeCategory.valueOf(dto.getCategory()));
+            a.setWarehouseId(warehouseId);
+            a.setActivityDate(dto.getActivityDate());
+            return a;
+        }).collect(Collectors.toList());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package com.wms.billing.helper;
+
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.domain.InvoiceLine;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * Computes a SHA-256 digest over the billable content of an invoice (header fields and lines).
+ *
+ * <p>Numbers are normalized with {@link BigDecimal#stripTrailingZeros()} so an invoice hashed in memory
+ * and the same invoice read back from the database (where column scale may differ) produce the same value.
+ * The database id is not part of the digest.</p>
+ */
+public final class InvoiceContentHasher {
+
+    private static final byte FIELD_SEPARATOR = 0x1F;
+    private static final byte RECORD_SEPARATOR = 0x1E;
+
+    private InvoiceContentHasher() {}
+
+    public static String hash(Invoice invoice) {
+        Iterator<InvoiceLine> lines = invoice.getInvoiceLines() == null
+                ? Collections.<InvoiceLine>emptyIterator()
+                : invoice.getInvoiceLines().iterator();
+        return hash(invoice, lines);
+    }
+
+    /**
+     * Hash an invoice header together with lines supplied separately (e.g. from a paged cursor).
+     */
+    public static String hash(Invoice header, Iterator<InvoiceLine> lines) {
+        MessageDigest digest = newDigest();
+        update(digest, header.getRateSheetId());
+        update(digest, header.getCustomerId());
+        update(digest, header.getWarehouseId());
+        update(digest, header.getPeriodStart());
+        update(digest, header.getPeriodEnd());
+        update(digest, header.getTotalAmount());
+        update(digest, header.getStatus());
+        digest.update(RECORD_SEPARATOR);
+        while (lines.hasNext()) {
+            InvoiceLine line = lines.next();
+            update(digest, line.getDescription());
+            update(digest, line.getQuantity());
+            update(digest, line.getRate());
+            update(digest, line.getAmount());
+            if (line.getServiceDate() != null) {
+                // Only when set, so digests of invoices stored before lines carried a date still verify
+                update(digest, line.getServiceDate());
+            }
+            digest.update(RECORD_SEPARATOR);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, Object value) {
+        String text;
+        if (value instanceof BigDecimal bd) {
+            text = bd.signum() == 0 ? "0" : bd.stripTrailingZeros().toPlainString();
+        } else {
+            text = Objects.toString(value, "");
+        }
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        digest.update(FIELD_SEPARATOR);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.wms.billing.rating;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.dto.ChargeCategory;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Columnar (struct-of-arrays) batch of activities for {@link RatingKernel}.
+ *
+ * <p>Each activity is one index across parallel primitive arrays: warehouse and charge type as dictionary
+ * codes, the category as its ordinal and the quantity as a long scaled by {@link #QUANTITY_SCALE} decimal
+ * places. A batch holds no per-activity objects, and {@link #clear()} keeps the arrays so a streaming producer
+ * can refill the same batch chunk after chunk.</p>
+ *
+ * <p>Dictionaries are supplied by the caller and can be shared by many batches and by the {@link RateTable}s
+ * they are rated against. Not thread-safe while being filled; read-only use (rating) may be concurrent.</p>
+ */
+public final class ActivityBatch {
+
+    /** Decimal places kept for quantities; more precise quantities are rejected rather than rounded. */
+    public static final int QUANTITY_SCALE = 4;
+
+    private final StringDictionary warehouses;
+    private final StringDictionary types;
+
+    private int[] warehouse;
+    private byte[] category;
+    private int[] type;
+    private long[] quantity;
+    private int size;
+
+    public ActivityBatch(StringDictionary warehouses, StringDictionary types, int initialCapacity) {
+        this.warehouses = warehouses;
+        this.types = types;
+        int capacity = Math.max(16, initialCapacity);
+        this.warehouse = new int[capacity];
+        this.category = new byte[capacity];
+        this.type = new int[capacity];
+        this.quantity = new long[capacity];
+    }
+
+    /** Batch of {@code activities} using fresh dictionaries. */
+    public static ActivityBatch of(List<Activity> activities) {
+        ActivityBatch batch = new ActivityBatch(new StringDictionary(), new StringDictionary(), activities.size());
+        batch.addAll(activities);
+        return batch;
+    }
+
+    /**
+     * Append one record in coded form; no allocation unless the arrays have to grow. Streaming producers
+     * ({@code ActivityLedger#scan}) resolve codes once per chunk or per distinct value and use this method.
+     */
+    public void add(int warehouseCode, ChargeCategory chargeCategory, int typeCode, long scaledQuantity) {
+        if (size == warehouse.length) {
+            grow();
+        }
+        warehouse[size] = warehouseCode;
+        category[size] = (byte) chargeCategory.ordinal();
+        type[size] = typeCode;
+        quantity[size] = scaledQuantity;
+        size++;
+    }
+
+    /**
+     * Append an activity. Activities without category, type or quantity are skipped, as the rules would not
+     * match them either. Convenience for list-based callers: besides the dictionary lookups, {@link #scale} may
+     * allocate for quantities not stored at {@link #QUANTITY_SCALE}.
+     *
+     * @throws ArithmeticException if the quantity has more than {@link #QUANTITY_SCALE} decimals or does not fit
+     */
+    public void add(Activity activity) {
+        if (activity.getCategory() == null || activity.getType() == null || activity.getQuantity() == null) {
+            return;
+        }
+        add(warehouses.code(activity.getWarehouseId()), activity.getCategory(),
+                types.code(activity.getType()), scale(activity.getQuantity()));
+    }
+
+    public void addAll(List<Activity> activities) {
+        for (Activity activity : activities) {
+            add(activity);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int warehouse(int i) {
+        return warehouse[i];
+    }
+
+    public int category(int i) {
+        return category[i];
+    }
+
+    public int type(int i) {
+        return type[i];
+    }
+
+    public long quantity(int i) {
+        return quantity[i];
+    }
+
+    public StringDictionary warehouses() {
+        return warehouses;
+    }
+
+    public StringDictionary types() {
+        return types;
+    }
+
+    /**
+     * Quantity as a long with {@link #QUANTITY_SCALE} implied decimals. Quantities already at that scale (as
+     * stored by the database) are read directly; others are shifted first, without rounding.
+     *
+     * @throws ArithmeticException if the quantity has more than {@link #QUANTITY_SCALE} decimals or does not fit
+     */
+    public static long scale(BigDecimal quantity) {
+        if (quantity.scale() == QUANTITY_SCALE) {
+            return quantity.unscaledValue().longValueExact();
+        }
+        return quantity.movePointRight(QUANTITY_SCALE).longValueExact();
+    }
+
+    private void grow() {
+        int capacity = warehouse.length * 2;
+        warehouse = Arrays.copyOf(warehouse, capacity);
+        category = Arrays.copyOf(category, capacity);
+        type = Arrays.copyOf(type, capacity);
+        quantity = Arrays.copyOf(quantity, capacity);
+    }
+}
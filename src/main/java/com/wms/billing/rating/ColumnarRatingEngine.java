@@ -0,0 +1,62 @@
+package com.wms.billing.rating;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.InvoiceLine;
+import com.wms.billing.domain.RateSheet;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link RatingEngine} backed by {@link RatingKernel}: compiles the rate sheet into a {@link RateTable}, loads the
+ * activities into an {@link ActivityBatch} and prices them, one batch per activity date. Emits one line per
+ * charge and activity date rather than one per activity, with the date as {@link InvoiceLine#getServiceDate()} so
+ * {@code DAY} and {@code WEEK} line grouping buckets them like Drools lines. Does not set
+ * {@link Activity#getAmount()}.
+ *
+ * <p>Rate sheets with rates of more than {@link RateTable#RATE_SCALE} decimals are rejected with
+ * {@link IllegalArgumentException}. Quantities with more than {@link ActivityBatch#QUANTITY_SCALE} decimals, and
+ * amounts beyond the range of a long with {@link RateTable#AMOUNT_SCALE} decimals, fail with
+ * {@link ArithmeticException}.</p>
+ */
+@Component
+public class ColumnarRatingEngine implements RatingEngine {
+
+    public static final String NAME = "columnar";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<InvoiceLine> rate(RateSheet rateSheet,
+                                  String warehouseId,
+                                  LocalDate start,
+                                  LocalDate end,
+                                  List<Activity> activities) {
+        StringDictionary warehouses = new StringDictionary();
+        StringDictionary types = new StringDictionary();
+        RateTable table = RateTable.compile(rateSheet, warehouses, types);
+        Map<LocalDate, List<Activity>> byDate = new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+        for (Activity activity : activities) {
+            byDate.computeIfAbsent(activity.getActivityDate(), d -> new ArrayList<>()).add(activity);
+        }
+        ActivityBatch batch = new ActivityBatch(warehouses, types, activities.size());
+        RatingResult result = new RatingResult();
+        List<InvoiceLine> lines = new ArrayList<>();
+        for (Map.Entry<LocalDate, List<Activity>> day : byDate.entrySet()) {
+            batch.clear();
+            batch.addAll(day.getValue());
+            result.reset();
+            RatingKernel.rate(batch, table, result);
+            lines.addAll(result.toInvoiceLines(table, day.getKey()));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,202 @@
+package com.wms.billing.rating;
+
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.domain.Warehouse;
+import com.wms.billing.domain.WarehouseCharges;
+import com.wms.billing.dto.ChargeCategory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A rate sheet compiled for {@link RatingKernel}: a primitive open-addressing map from
+ * (warehouse code, category, type code) to the charges that price it.
+ *
+ * <p>Only the (category, type) pairs that {@code billing_rules.drl} prices are compiled in:
+ * {@code STORAGE/PER_PALLET_PER_DAY}, {@code INBOUND/PER_PALLET_PER_DAY} and {@code INBOUND/PER_SHIPMENT}. Like
+ * the rules, an activity is priced by every matching charge of every matching warehouse, so a table built here
+ * yields the same totals as a Drools run. When the rules gain a billable pair, {@link #BILLABLE} must follow.</p>
+ *
+ * <p>Each matching charge is a <em>slot</em>; slots for the same key are chained. Rates are held as longs
+ * scaled by {@link #RATE_SCALE}. Immutable once compiled and safe to share between threads.</p>
+ */
+public final class RateTable {
+
+    /** Decimal places kept for rates; a rate with more is rejected rather than rounded. */
+    public static final int RATE_SCALE = 4;
+
+    /** Scale of amounts: quantity scale plus rate scale, so products are exact. */
+    public static final int AMOUNT_SCALE = ActivityBatch.QUANTITY_SCALE + RATE_SCALE;
+
+    private static final Set<String> BILLABLE = Set.of(
+            ChargeCategory.STORAGE + "/PER_PALLET_PER_DAY",
+            ChargeCategory.INBOUND + "/PER_PALLET_PER_DAY",
+            ChargeCategory.INBOUND + "/PER_SHIPMENT");
+
+    private static final ChargeCategory[] CATEGORIES = ChargeCategory.values();
+
+    private static final int EMPTY = -1;
+
+    private final StringDictionary warehouses;
+    private final StringDictionary types;
+
+    // Open-addressing map: key -> first slot of its chain
+    private final long[] keys;
+    private final int[] heads;
+    private final int mask;
+
+    // Slots, one per compiled charge
+    private final long[] rates;
+    private final int[] next;
+    private final int[] slotWarehouse;
+    private final byte[] slotCategory;
+    private final int[] slotType;
+    private final int slotCount;
+
+    private RateTable(StringDictionary warehouses, StringDictionary types, int capacity, int slots) {
+        this.warehouses = warehouses;
+        this.types = types;
+        this.keys = new long[capacity];
+        this.heads = new int[capacity];
+        Arrays.fill(heads, EMPTY);
+        this.mask = capacity - 1;
+        this.rates = new long[slots];
+        this.next = new int[slots];
+        this.slotWarehouse = new int[slots];
+        this.slotCategory = new byte[slots];
+        this.slotType = new int[slots];
+        this.slotCount = slots;
+    }
+
+    /**
+     * Compile the billable charges of {@code rateSheet}. The rate sheet's warehouses and charges must be loaded.
+     *
+     * @throws IllegalArgumentException if a rate has more than {@link #RATE_SCALE} decimals or does not fit
+     */
+    public static RateTable compile(RateSheet rateSheet, StringDictionary warehouses, StringDictionary types) {
+        int count = 0;
+        for (Warehouse warehouse : rateSheet.getWarehouses()) {
+            for (WarehouseCharges charge : warehouse.getCharges()) {
+                if (billable(charge)) {
+                    count++;
+                }
+            }
+        }
+        RateTable table = new RateTable(warehouses, types, tableCapacity(count), count);
+        int slot = 0;
+        for (Warehouse warehouse : rateSheet.getWarehouses()) {
+            int warehouseCode = warehouses.code(warehouse.getWarehouseId());
+            for (WarehouseCharges charge : warehouse.getCharges()) {
+                if (billable(charge)) {
+                    table.put(slot++, warehouseCode, charge.getCategory(), types.code(charge.getType()),
+                            scaleRate(charge));
+                }
+            }
+        }
+        return table;
+    }
+
+    /** First slot pricing the key, or -1 if nothing does. */
+    public int find(int warehouseCode, int categoryOrdinal, int typeCode) {
+        long key = key(warehouseCode, categoryOrdinal, typeCode);
+        int i = mix(key) & mask;
+        while (heads[i] != EMPTY) {
+            if (keys[i] == key) {
+                return heads[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /** Next slot for the same key as {@code slot}, or -1 at the end of the chain. */
+    public int next(int slot) {
+        return next[slot];
+    }
+
+    public long rate(int slot) {
+        return rates[slot];
+    }
+
+    public int slotWarehouse(int slot) {
+        return slotWarehouse[slot];
+    }
+
+    public ChargeCategory slotCategory(int slot) {
+        return CATEGORIES[slotCategory[slot]];
+    }
+
+    public int slotType(int slot) {
+        return slotType[slot];
+    }
+
+    public int slotCount() {
+        return slotCount;
+    }
+
+    public StringDictionary warehouses() {
+        return warehouses;
+    }
+
+    public StringDictionary types() {
+        return types;
+    }
+
+    private void put(int slot, int warehouseCode, ChargeCategory category, int typeCode, long rate) {
+        rates[slot] = rate;
+        next[slot] = EMPTY;
+        slotWarehouse[slot] = warehouseCode;
+        slotCategory[slot] = (byte) category.ordinal();
+        slotType[slot] = typeCode;
+
+        long key = key(warehouseCode, category.ordinal(), typeCode);
+        int i = mix(key) & mask;
+        while (heads[i] != EMPTY) {
+            if (keys[i] == key) {
+                // Append to the chain so lines come out in rate sheet order
+                int tail = heads[i];
+                while (next[tail] != EMPTY) {
+                    tail = next[tail];
+                }
+                next[tail] = slot;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        heads[i] = slot;
+    }
+
+    private static boolean billable(WarehouseCharges charge) {
+        return charge.getCategory() != null && charge.getType() != null && charge.getRate() != null
+                && BILLABLE.contains(charge.getCategory() + "/" + charge.getType());
+    }
+
+    private static long scaleRate(WarehouseCharges charge) {
+        BigDecimal rate = charge.getRate();
+        try {
+            return rate.setScale(RATE_SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Rate " + rate + " for " + charge.getCategory() + "/"
+                    + charge.getType() + " cannot be held with " + RATE_SCALE + " decimals", e);
+        }
+    }
+
+    private static int tableCapacity(int entries) {
+        // Load factor at most 0.5 keeps probe sequences short
+        return Integer.highestOneBit(Math.max(8, entries * 2 - 1)) << 1;
+    }
+
+    private static long key(int warehouseCode, int categoryOrdinal, int typeCode) {
+        return ((long) warehouseCode << 35) | ((long) categoryOrdinal << 32) | (typeCode & 0xFFFFFFFFL);
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,29 @@
+package com.wms.billing.rating;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.InvoiceLine;
+import com.wms.billing.domain.RateSheet;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Prices activities against a rate sheet. Implementations are Spring beans, picked by {@link #name()} through
+ * {@code billing.rating.engine.*} (see {@code RatingEngineRouter}).
+ *
+ * <p>The rate sheet's warehouses and charges are already loaded, and engines must treat it as read-only: the
+ * same instance may be rated by a shadow engine on another thread. An engine may set {@link Activity#setAmount}
+ * but must not change anything else on an activity. Lines can be returned in any order and at any granularity
+ * (one per activity or one per charge); callers put them in canonical order and group them afterwards.</p>
+ */
+public interface RatingEngine {
+
+    /** Name used in configuration and metric tags, e.g. {@code drools}. */
+    String name();
+
+    List<InvoiceLine> rate(RateSheet rateSheet,
+                           String warehouseId,
+                           LocalDate start,
+                           LocalDate end,
+                           List<Activity> activities);
+}
@@ -0,0 +1,40 @@
+package com.wms.billing.rating;
+
+/**
+ * Prices an {@link ActivityBatch} against a {@link RateTable} into a {@link RatingResult}.
+ *
+ * <p>The loop touches only primitive arrays: one hash probe per record, a multiply per matching charge, no
+ * boxing and no per-record allocation. Arithmetic is exact; a product or sum that overflows a long throws
+ * {@link ArithmeticException} rather than wrapping, and the caller can fall back to the Drools path.</p>
+ */
+public final class RatingKernel {
+
+    private RatingKernel() {
+    }
+
+    /**
+     * Rate every record of {@code batch}, overwriting the per-record arrays of {@code result} and adding to its
+     * per-slot totals.
+     *
+     * @throws IllegalArgumentException if the batch and table were not built with the same dictionaries
+     */
+    public static void rate(ActivityBatch batch, RateTable table, RatingResult result) {
+        if (batch.warehouses() != table.warehouses() || batch.types() != table.types()) {
+            throw new IllegalArgumentException("Batch and rate table must share dictionaries");
+        }
+        int size = batch.size();
+        result.prepare(size, table.slotCount());
+        for (int i = 0; i < size; i++) {
+            int first = table.find(batch.warehouse(i), batch.category(i), batch.type(i));
+            long quantity = batch.quantity(i);
+            long amount = 0;
+            for (int slot = first; slot >= 0; slot = table.next(slot)) {
+                long lineAmount = Math.multiplyExact(quantity, table.rate(slot));
+                result.accumulate(slot, quantity, lineAmount);
+                amount = Math.addExact(amount, lineAmount);
+            }
+            result.record(i, first, amount);
+            result.count(amount, first >= 0);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.wms.billing.rating;
+
+import com.wms.billing.domain.InvoiceLine;
+import com.wms.billing.dto.ChargeCategory;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Output of {@link RatingKernel}, held in primitive arrays that are reused from one batch to the next.
+ *
+ * <p>Per record: the amount ({@link RateTable#AMOUNT_SCALE} implied decimals) and the first slot that priced
+ * it, or -1 if nothing did. Per slot: quantity, amount and record count, accumulated across every batch rated
+ * since the last {@link #reset()}, so a stream of chunks can be rated into one result.</p>
+ *
+ * <p>Not thread-safe.</p>
+ */
+public final class RatingResult {
+
+    private long[] amounts = new long[0];
+    private int[] slots = new int[0];
+    private int size;
+
+    private long[] slotQuantity = new long[0];
+    private long[] slotAmount = new long[0];
+    private int[] slotRecords = new int[0];
+
+    private long total;
+    private long priced;
+    private long unpriced;
+
+    /** Clear the accumulated totals, keeping the arrays. */
+    public void reset() {
+        size = 0;
+        Arrays.fill(slotQuantity, 0);
+        Arrays.fill(slotAmount, 0);
+        Arrays.fill(slotRecords, 0);
+        total = 0;
+        priced = 0;
+        unpriced = 0;
+    }
+
+    /** Size the arrays for a batch; allocates only when a batch or table is larger than any seen before. */
+    void prepare(int records, int slotCount) {
+        if (amounts.length < records) {
+            amounts = new long[records];
+            slots = new int[records];
+        }
+        if (slotAmount.length < slotCount) {
+            slotQuantity = Arrays.copyOf(slotQuantity, slotCount);
+            slotAmount = Arrays.copyOf(slotAmount, slotCount);
+            slotRecords = Arrays.copyOf(slotRecords, slotCount);
+        }
+        size = records;
+    }
+
+    void record(int i, int slot, long amount) {
+        slots[i] = slot;
+        amounts[i] = amount;
+    }
+
+    void accumulate(int slot, long quantity, long amount) {
+        slotQuantity[slot] = Math.addExact(slotQuantity[slot], quantity);
+        slotAmount[slot] = Math.addExact(slotAmount[slot], amount);
+        slotRecords[slot]++;
+    }
+
+    void count(long amount, boolean wasPriced) {
+        if (wasPriced) {
+            total = Math.addExact(total, amount);
+            priced++;
+        } else {
+            unpriced++;
+        }
+    }
+
+    /** Records in the last rated batch. */
+    public int size() {
+        return size;
+    }
+
+    /** Amount of record {@code i} of the last batch, summed over every charge that priced it. */
+    public long amount(int i) {
+        return amounts[i];
+    }
+
+    /** First slot that priced record {@code i} of the last batch, or -1. */
+    public int slot(int i) {
+        return slots[i];
+    }
+
+    public long slotQuantity(int slot) {
+        return slotQuantity[slot];
+    }
+
+    public long slotAmount(int slot) {
+        return slotAmount[slot];
+    }
+
+    public int slotRecords(int slot) {
+        return slotRecords[slot];
+    }
+
+    /** Total amount with {@link RateTable#AMOUNT_SCALE} implied decimals. */
+    public long total() {
+        return total;
+    }
+
+    public BigDecimal totalAmount() {
+        return BigDecimal.valueOf(total, RateTable.AMOUNT_SCALE);
+    }
+
+    public long priced() {
+        return priced;
+    }
+
+    public long unpriced() {
+        return unpriced;
+    }
+
+    /**
+     * One invoice line per charge that priced at least one record, in rate sheet order, described the way
+     * {@code billing_rules.drl} describes them ("Storage - PER_PALLET_PER_DAY").
+     */
+    public List<InvoiceLine> toInvoiceLines(RateTable table) {
+        return toInvoiceLines(table, null);
+    }
+
+    /** As {@link #toInvoiceLines(RateTable)}, with every line carrying {@code serviceDate}. */
+    public List<InvoiceLine> toInvoiceLines(RateTable table, LocalDate serviceDate) {
+        List<InvoiceLine> lines = new ArrayList<>();
+        for (int slot = 0; slot < table.slotCount(); slot++) {
+            if (slot >= slotRecords.length || slotRecords[slot] == 0) {
+                continue;
+            }
+            ChargeCategory category = table.slotCategory(slot);
+            String type = table.types().value(table.slotType(slot));
+            InvoiceLine line = new InvoiceLine();
+            line.setDescription(label(category) + " - " + type);
+            line.setQuantity(BigDecimal.valueOf(slotQuantity[slot], ActivityBatch.QUANTITY_SCALE));
+            line.setRate(BigDecimal.valueOf(table.rate(slot), RateTable.RATE_SCALE));
+            line.setAmount(BigDecimal.valueOf(slotAmount[slot], RateTable.AMOUNT_SCALE));
+            line.setCategory(category);
+            line.setChargeType(type);
+            line.setServiceDate(serviceDate);
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private static String label(ChargeCategory category) {
+        String name = category.name();
+        return name.charAt(0) + name.substring(1).toLowerCase();
+    }
+}
@@ -0,0 +1,46 @@
+package com.wms.billing.rating;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns dense int codes (0, 1, 2, ...) to strings, so columnar batches can store warehouse ids and charge
+ * types as ints. Codes are stable for the lifetime of the dictionary.
+ *
+ * <p>Not thread-safe for {@link #code}; {@link #lookup} and {@link #value} are safe once no more codes are
+ * being added.</p>
+ */
+public final class StringDictionary {
+
+    public static final int ABSENT = -1;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    /** Code of {@code value}, assigning the next code if it is new. */
+    public int code(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    /** Code of {@code value}, or {@link #ABSENT} without assigning one. */
+    public int lookup(String value) {
+        Integer code = codes.get(value);
+        return code != null ? code : ABSENT;
+    }
+
+    public String value(int code) {
+        return values.get(code);
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
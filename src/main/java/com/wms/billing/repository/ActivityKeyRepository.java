@@ -0,0 +1,40 @@
+package com.wms.billing.repository;
+
+import com.wms.billing.domain.ActivityKey;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface ActivityKeyRepository extends JpaRepository<ActivityKey, Long> {
+
+    @Query("""
+           SELECT k.activityId FROM ActivityKey k
+           WHERE k.scope = :scope AND k.periodMonth = :month AND k.activityId IN :ids
+           """)
+    List<String> findExisting(@Param("scope") String scope,
+                              @Param("month") LocalDate month,
+                              @Param("ids") Collection<String> ids);
+
+    /** Rows of [scope, activityId]; must be consumed inside a transaction and closed. */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "10000"))
+    @Query("SELECT k.scope, k.activityId FROM ActivityKey k WHERE k.periodMonth = :month")
+    Stream<Object[]> streamByPeriodMonth(@Param("month") LocalDate month);
+
+    @Modifying
+    @Query("""
+           DELETE FROM ActivityKey k
+           WHERE k.scope = :scope AND k.periodMonth = :month AND k.activityId IN :ids
+           """)
+    int deleteKeys(@Param("scope") String scope,
+                   @Param("month") LocalDate month,
+                   @Param("ids") Collection<String> ids);
+}
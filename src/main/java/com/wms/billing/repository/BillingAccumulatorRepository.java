@@ -0,0 +1,41 @@
+package com.wms.billing.repository;
+
+import com.wms.billing.domain.BillingAccumulator;
+import com.wms.billing.dto.ChargeCategory;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface BillingAccumulatorRepository extends JpaRepository<BillingAccumulator, Long> {
+
+    List<BillingAccumulator> findByRateSheetIdAndWarehouseIdAndPeriodMonthBetweenOrderByCategoryAscTypeAsc(
+            Long rateSheetId, String warehouseId, LocalDate fromMonth, LocalDate toMonth);
+
+    // Increment in the database so that concurrent postings to the same key serialise on the row lock
+    @Modifying
+    @Query("""
+           UPDATE BillingAccumulator a
+           SET a.quantity = a.quantity + :quantity,
+               a.activityCount = a.activityCount + :count,
+               a.updatedAt = :now
+           WHERE a.rateSheetId = :rateSheetId
+             AND a.warehouseId = :warehouseId
+             AND a.category = :category
+             AND a.type = :type
+             AND a.periodMonth = :periodMonth
+           """)
+    int increment(@Param("rateSheetId") Long rateSheetId,
+                  @Param("warehouseId") String warehouseId,
+                  @Param("category") ChargeCategory category,
+                  @Param("type") String type,
+                  @Param("periodMonth") LocalDate periodMonth,
+                  @Param("quantity") BigDecimal quantity,
+                  @Param("count") long count,
+                  @Param("now") Instant now);
+}
@@ -0,0 +1,74 @@
+package com.wms.billing.repository;
+
+import com.wms.billing.domain.BillingRunPartition;
+import com.wms.billing.dto.BillingRunPartitionStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface BillingRunPartitionRepository extends JpaRepository<BillingRunPartition, Long> {
+
+    Optional<BillingRunPartition> findFirstByRunIdAndStatusOrderByIdAsc(Long runId, BillingRunPartitionStatus status);
+
+    List<BillingRunPartition> findByRunIdAndStatus(Long runId, BillingRunPartitionStatus status);
+
+    long countByRunIdAndStatusIn(Long runId, List<BillingRunPartitionStatus> statuses);
+
+    // Atomic claim: succeeds for exactly one worker
+    @Modifying
+    @Query("""
+           UPDATE BillingRunPartition p
+           SET p.status = com.wms.billing.dto.BillingRunPartitionStatus.RUNNING,
+               p.attempts = p.attempts + 1,
+               p.startedAt = :now
+           WHERE p.id = :id AND p.status = com.wms.billing.dto.BillingRunPartitionStatus.PENDING
+           """)
+    int claim(@Param("id") Long id, @Param("now") Instant now);
+
+    @Modifying
+    @Query("""
+           UPDATE BillingRunPartition p
+           SET p.lastWarehouseId = :lastWarehouseId,
+               p.warehousesDone = p.warehousesDone + :warehouses,
+               p.invoicesCreated = p.invoicesCreated + :invoices
+           WHERE p.id = :id
+           """)
+    int checkpoint(@Param("id") Long id,
+                   @Param("lastWarehouseId") String lastWarehouseId,
+                   @Param("warehouses") long warehouses,
+                   @Param("invoices") long invoices);
+
+    @Modifying
+    @Query("""
+           UPDATE BillingRunPartition p
+           SET p.status = :status, p.finishedAt = :now, p.lastError = :error
+           WHERE p.id = :id
+           """)
+    int finish(@Param("id") Long id,
+               @Param("status") BillingRunPartitionStatus status,
+               @Param("now") Instant now,
+               @Param("error") String error);
+
+    // Back to PENDING, keeping the checkpoint
+    @Modifying
+    @Query("""
+           UPDATE BillingRunPartition p
+           SET p.status = com.wms.billing.dto.BillingRunPartitionStatus.PENDING, p.finishedAt = NULL
+           WHERE p.runId = :runId AND p.status IN :statuses
+           """)
+    int requeue(@Param("runId") Long runId, @Param("statuses") List<BillingRunPartitionStatus> statuses);
+
+    /** Rows of [status, partitions, warehousesDone, invoicesCreated] per status. */
+    @Query("""
+           SELECT p.status, COUNT(p), COALESCE(SUM(p.warehousesDone), 0), COALESCE(SUM(p.invoicesCreated), 0)
+           FROM BillingRunPartition p
+           WHERE p.runId = :runId
+           GROUP BY p.status
+           """)
+    List<Object[]> progress(@Param("runId") Long runId);
+}
@@ -0,0 +1,25 @@
+package com.wms.billing.repository;
+
+import com.wms.billing.domain.BillingRun;
+import com.wms.billing.dto.BillingRunStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface BillingRunRepository extends JpaRepository<BillingRun, Long> {
+
+    List<BillingRun> findByStatus(BillingRunStatus status);
+
+    // Conditional so that only one of the workers draining a run closes it
+    @Modifying
+    @Query("""
+           UPDATE BillingRun r
+           SET r.status = :status, r.finishedAt = :now
+           WHERE r.id = :runId AND r.status = com.wms.billing.dto.BillingRunStatus.RUNNING
+           """)
+    int finish(@Param("runId") Long runId, @Param("status") BillingRunStatus status, @Param("now") Instant now);
+}
@@ -0,0 +1,204 @@
+package com.wms.billing.repository;
+
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.domain.InvoiceLine;
+import com.wms.billing.dto.ChargeCategory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * Plain JDBC access to persisted invoices that avoids materializing the eager
+ * {@link Invoice#getInvoiceLines()} collection.
+ *
+ * <p>Lines are read with keyset pagination over {@code invoice_line.id}, so callers hold at most
+ * one page in memory regardless of how many lines an invoice carries. Table and column names
+ * follow the mapping pinned on {@link Invoice}.</p>
+ */
+@Repository
+public class InvoiceLineJdbcRepository {
+
+    private static final String HEADER_SQL = """
+            SELECT id, rate_sheet_id, customer_id, warehouse_id, period_start, period_end, total_amount, status, content_hash, adjusts_invoice_id
+            FROM invoice
+            WHERE id = ?
+            """;
+
+    private static final String COUNT_SQL = """
+            SELECT COUNT(*)
+            FROM invoice_invoice_lines
+            WHERE invoice_id = ?
+            """;
+
+    private static final String PAGE_SQL = """
+            SELECT l.id, l.description, l.quantity, l.rate, l.amount, l.category, l.charge_type, l.service_date
+            FROM invoice_line l
+            JOIN invoice_invoice_lines j ON j.invoice_lines_id = l.id
+            WHERE j.invoice_id = ?
+              AND l.id > ?
+            ORDER BY l.id
+            LIMIT ?
+            """;
+
+    private static final String UNHASHED_FINAL_SQL = """
+            SELECT id
+            FROM invoice
+            WHERE status = 'FINAL'
+              AND content_hash IS NULL
+              AND id > ?
+            ORDER BY id
+            LIMIT ?
+            """;
+
+    private static final String SAVE_CONTENT_HASH_SQL = """
+            UPDATE invoice
+            SET content_hash = ?
+            WHERE id = ?
+              AND content_hash IS NULL
+            """;
+
+    private static final RowMapper<Invoice> HEADER_MAPPER = (rs, rowNum) -> {
+        Invoice invoice = new Invoice();
+        invoice.setId(rs.getLong("id"));
+        invoice.setRateSheetId(rs.getObject("rate_sheet_id", Long.class));
+        invoice.setCustomerId(rs.getString("customer_id"));
+        invoice.setWarehouseId(rs.getString("warehouse_id"));
+        Date start = rs.getDate("period_start");
+        Date end = rs.getDate("period_end");
+        invoice.setPeriodStart(start != null ? start.toLocalDate() : null);
+        invoice.setPeriodEnd(end != null ? end.toLocalDate() : null);
+        invoice.setTotalAmount(rs.getBigDecimal("total_amount"));
+        invoice.setStatus(rs.getString("status"));
+        invoice.setContentHash(rs.getString("content_hash"));
+        invoice.setAdjustsInvoiceId(rs.getObject("adjusts_invoice_id", Long.class));
+        return invoice;
+    };
+
+    private static final RowMapper<InvoiceLine> LINE_MAPPER = (rs, rowNum) -> {
+        InvoiceLine line = new InvoiceLine();
+        line.setId(rs.getLong("id"));
+        line.setDescription(rs.getString("description"));
+        line.setQuantity(rs.getBigDecimal("quantity"));
+        line.setRate(rs.getBigDecimal("rate"));
+        line.setAmount(rs.getBigDecimal("amount"));
+        String category = rs.getString("category");
+        line.setCategory(category != null ? ChargeCategory.valueOf(category) : null);
+        line.setChargeType(rs.getString("charge_type"));
+        Date serviceDate = rs.getDate("service_date");
+        line.setServiceDate(serviceDate != null ? serviceDate.toLocalDate() : null);
+        return line;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public InvoiceLineJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Load the invoice header only. The returned invoice has {@code invoiceLines == null}.
+     *
+     * @param invoiceId persisted invoice id
+     * @return the header, or empty if no such invoice exists
+     */
+    public Optional<Invoice> findHeader(Long invoiceId) {
+        List<Invoice> rows = jdbcTemplate.query(HEADER_SQL, HEADER_MAPPER, invoiceId);
+        return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+    }
+
+    /**
+     * Ids of FINAL invoices stored without a content hash, in id order.
+     *
+     * @param afterId exclusive lower bound on the invoice id (use 0 for the first batch)
+     * @param limit maximum number of ids to return
+     */
+    public List<Long> findUnhashedFinalIds(long afterId, int limit) {
+        return jdbcTemplate.queryForList(UNHASHED_FINAL_SQL, Long.class, afterId, limit);
+    }
+
+    /**
+     * Record the content hash of an invoice stored without one. A hash already present is never overwritten.
+     *
+     * @return whether the hash was written
+     */
+    public boolean saveContentHash(Long invoiceId, String contentHash) {
+        return jdbcTemplate.update(SAVE_CONTENT_HASH_SQL, contentHash, invoiceId) == 1;
+    }
+
+    /**
+     * Count the lines attached to an invoice without loading them.
+     */
+    public long countLines(Long invoiceId) {
+        Long count = jdbcTemplate.queryForObject(COUNT_SQL, Long.class, invoiceId);
+        return count != null ? count : 0L;
+    }
+
+    /**
+     * Fetch the next page of lines ordered by line id.
+     *
+     * @param invoiceId persisted invoice id
+     * @param afterLineId exclusive lower bound on the line id (use 0 for the first page)
+     * @param pageSize maximum number of lines to return
+     */
+    public List<InvoiceLine> findPage(Long invoiceId, long afterLineId, int pageSize) {
+        return jdbcTemplate.query(PAGE_SQL, LINE_MAPPER, invoiceId, afterLineId, pageSize);
+    }
+
+    /**
+     * Iterate all lines of an invoice, fetching {@code pageSize} rows at a time.
+     * The iterator is lazy and single-use; memory is bounded by one page.
+     */
+    public Iterator<InvoiceLine> iterateLines(Long invoiceId, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be greater than 0");
+        }
+        return new PageIterator(invoiceId, pageSize);
+    }
+
+    private final class PageIterator implements Iterator<InvoiceLine> {
+        private final Long invoiceId;
+        private final int pageSize;
+        private List<InvoiceLine> page = List.of();
+        private int index;
+        private long lastId;
+        private boolean exhausted;
+
+        private PageIterator(Long invoiceId, int pageSize) {
+            this.invoiceId = invoiceId;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (index < page.size()) {
+                return true;
+            }
+            if (exhausted) {
+                return false;
+            }
+            page = findPage(invoiceId, lastId, pageSize);
+            index = 0;
+            if (page.size() < pageSize) {
+                exhausted = true;
+            }
+            if (!page.isEmpty()) {
+                lastId = page.get(page.size() - 1).getId();
+            }
+            return !page.isEmpty();
+        }
+
+        @Override
+        public InvoiceLine next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.get(index++);
+        }
+    }
+}
@@ -1,8 +1,51 @@
 package com.wms.billing.repository;
 
 import com.wms.billing.domain.Invoice;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
 @Repository
-public interface InvoiceRepository extends JpaRepository<Invoice, Long> {}
+public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
+
+    // Keyset page of FINAL invoice ids of a rate sheet whose period lies within [from, to]
+    @Query("""
+           SELECT i.id FROM Invoice i
+           WHERE i.rateSheetId = :rateSheetId
+             AND i.status = 'FINAL'
+             AND i.periodStart >= :from
+             AND i.periodEnd <= :to
+             AND i.id > :afterId
+           ORDER BY i.id
+           """)
+    List<Long> findFinalIds(@Param("rateSheetId") Long rateSheetId,
+                            @Param("from") LocalDate from,
+                            @Param("to") LocalDate to,
+                            @Param("afterId") Long afterId,
+                            Pageable page);
+
+    // Rate sheets with the most invoices for periods ending on or after :since, busiest first
+    @Query("""
+           SELECT i.rateSheetId FROM Invoice i
+           WHERE i.periodEnd >= :since
+           GROUP BY i.rateSheetId
+           ORDER BY COUNT(i) DESC
+           """)
+    List<Long> findBusiestRateSheetIds(@Param("since") LocalDate since, Pageable page);
+
+    // Row locks on the invoices until the transaction ends, taken in id order so concurrent callers cannot deadlock
+    @Query(value = "SELECT id FROM invoice WHERE id IN (:ids) ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Long> lockForUpdate(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT DISTINCT i FROM Invoice i LEFT JOIN FETCH i.invoiceLines WHERE i.id IN :ids")
+    List<Invoice> findWithLines(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT DISTINCT i FROM Invoice i LEFT JOIN FETCH i.invoiceLines WHERE i.adjustsInvoiceId IN :ids")
+    List<Invoice> findAdjustments(@Param("ids") Collection<Long> ids);
+}
@@ -1,18 +1,37 @@
 package com.wms.billing.repository;
 
 import com.wms.billing.domain.RateSheet;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * Rate sheet lookups. The queries below are served from the Hibernate query cache (region
+ * {@code rateSheetQueries}); Hibernate drops their results whenever {@code rate_sheets} or {@code warehouses}
+ * is written through JPA, e.g. by {@code RateSheetService#updateRateSheet}.
+ */
 public interface RateSheetRepository extends JpaRepository<RateSheet, Long> {
 
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "rateSheetQueries")
+    })
     RateSheet getRateSheetByRateSheetId(Long contractId);
 
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "rateSheetQueries")
+    })
+    List<RateSheet> findByCustomerIdIn(Collection<String> customerIds);
+
     @Query("""
            SELECT rs
            FROM RateSheet rs
@@ -25,6 +44,20 @@ public interface RateSheetRepository extends JpaRepository<RateSheet, Long> {
                                                               @Param("customerName") String customerName,
                                                               @Param("warehouseId") String warehouseId);
 
+    /**
+     * Atomically increment a rate sheet's revision (null counts as 0). The row stays locked until the transaction
+     * ends, so concurrent updates of one rate sheet run one after the other and each gets its own revision.
+     *
+     * @return the number of rows updated, 0 if the rate sheet does not exist
+     */
+    @Modifying
+    @Query("UPDATE RateSheet rs SET rs.revision = COALESCE(rs.revision, 0) + 1 WHERE rs.rateSheetId = :rateSheetId")
+    int bumpRevision(@Param("rateSheetId") Long rateSheetId);
+
+    /** Rows of [rateSheetId, revision] for every rate sheet; revision is null until the first update. */
+    @Query("SELECT rs.rateSheetId, rs.revision FROM RateSheet rs")
+    List<Object[]> findRevisions();
+
     // Strict: require that ALL requested warehouse ids exist under the same RateSheet
     @Query("""
            SELECT rs
@@ -36,6 +69,10 @@ public interface RateSheetRepository extends JpaRepository<RateSheet, Long> {
            GROUP BY rs
            HAVING COUNT(DISTINCT w.warehouseId) = :warehouseCount
            """)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "rateSheetQueries")
+    })
     List<RateSheet> findByCustomerAndAllWarehouseIds(@Param("customerId") String customerId,
                                                      @Param("customerName") String customerName,
                                                      @Param("warehouseIds") Collection<String> warehouseIds,
@@ -0,0 +1,52 @@
+package com.wms.billing.repository;
+
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.domain.Warehouse;
+import jakarta.persistence.EntityManager;
+import org.hibernate.CacheMode;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Loads a rate sheet with its warehouses and charges from Postgres, bypassing the Hibernate second-level cache.
+ *
+ * <p>The second-level cache is local to each instance: an update made on another instance is only seen here once
+ * the cached entries expire. FINAL invoices and rerating must price from the committed rates, so they load
+ * through this class. Entries read are put back into the cache ({@link CacheMode#REFRESH}), so they also
+ * refresh it for previews.</p>
+ *
+ * <p>Must run inside a transaction or an open session, like the lazy loads that follow it.</p>
+ */
+@Repository
+public class UncachedRateSheetLoader {
+
+    private final EntityManager entityManager;
+
+    public UncachedRateSheetLoader(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /** @return the rate sheet with warehouses and charges initialized, or null if it does not exist */
+    public RateSheet load(Long rateSheetId) {
+        Session session = entityManager.unwrap(Session.class);
+        CacheMode previous = session.getCacheMode();
+        session.setCacheMode(CacheMode.REFRESH);
+        try {
+            RateSheet rateSheet = session.get(RateSheet.class, rateSheetId);
+            if (rateSheet == null) {
+                return null;
+            }
+            // Collections are loaded here too: initialized later, they would be read from the cache again
+            Hibernate.initialize(rateSheet.getWarehouses());
+            if (rateSheet.getWarehouses() != null) {
+                for (Warehouse warehouse : rateSheet.getWarehouses()) {
+                    Hibernate.initialize(warehouse.getCharges());
+                }
+            }
+            return rateSheet;
+        } finally {
+            session.setCacheMode(previous);
+        }
+    }
+}
@@ -2,5 +2,13 @@ package com.wms.billing.repository;
 
 import com.wms.billing.domain.Warehouse;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface WarehouseRepository extends JpaRepository<Warehouse, Long> {}
\ No newline at end of file
+import java.util.List;
+
+public interface WarehouseRepository extends JpaRepository<Warehouse, Long> {
+
+    @Query("SELECT w.warehouseId FROM Warehouse w WHERE w.rateSheet.rateSheetId = :rateSheetId ORDER BY w.warehouseId")
+    List<String> findWarehouseIdsByRateSheetId(@Param("rateSheetId") Long rateSheetId);
+}
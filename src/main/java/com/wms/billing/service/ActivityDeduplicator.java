@@ -0,0 +1,218 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.ActivityKey;
+import com.wms.billing.helper.BloomFilter;
+import com.wms.billing.repository.ActivityKeyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Drops activities that were already ingested, by their optional {@code activityId}.
+ *
+ * <p>Ids are claimed per scope and month in {@code activity_key}, whose unique key makes the result exact. In
+ * front of it, an in-memory Bloom filter per month answers "definitely new" for the common case with a few hash
+ * probes; only ids it reports as possibly seen ("suspected") are looked up in the database, and those found
+ * there are "confirmed" duplicates. Activities without an id are never deduplicated.</p>
+ *
+ * <p>{@link #claim} runs in the caller's transaction when there is one, so ids are recorded atomically with
+ * whatever the caller stores. The filter only knows ids claimed by this instance: an id claimed by another
+ * instance passes the filter and fails on the unique key instead. Callers then retry with {@code exact=true},
+ * which checks every id against the database.</p>
+ *
+ * <p>Filters are built lazily from {@code activity_key} the first time a month is seen and the
+ * {@code billing.dedup.months-in-memory} most recently used months are kept.</p>
+ */
+@Slf4j
+@Service
+public class ActivityDeduplicator {
+
+    private final ActivityKeyRepository keyRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long expectedPerMonth;
+    private final double falsePositiveRate;
+    private final int monthsInMemory;
+
+    // Access-ordered so the least recently used month is evicted first; guarded by filtersLock
+    private final LinkedHashMap<LocalDate, BloomFilter> filters = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock filtersLock = new ReentrantLock();
+
+    private final Counter suspected;
+    private final Counter confirmed;
+
+    public ActivityDeduplicator(ActivityKeyRepository keyRepository,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry registry,
+                                @Value("${billing.dedup.expected-per-month:1000000}") long expectedPerMonth,
+                                @Value("${billing.dedup.false-positive-rate:0.01}") double falsePositiveRate,
+                                @Value("${billing.dedup.months-in-memory:3}") int monthsInMemory) {
+        this.keyRepository = keyRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.expectedPerMonth = expectedPerMonth;
+        this.falsePositiveRate = falsePositiveRate;
+        this.monthsInMemory = Math.max(1, monthsInMemory);
+
+        this.suspected = Counter.builder("billing.dedup.duplicates")
+                .description("Activity ids the Bloom filter reported as possibly seen")
+                .tag("stage", "suspected")
+                .register(registry);
+        this.confirmed = Counter.builder("billing.dedup.duplicates")
+                .description("Activities dropped as duplicates")
+                .tag("stage", "confirmed")
+                .register(registry);
+    }
+
+    /**
+     * Record the ids of {@code activities} under {@code scope} and return the activities that were not seen
+     * before, in their original order. Activities with an id must have an {@code activityDate}.
+     *
+     * @param exact check every id against the database instead of trusting the filter's negatives
+     * @throws IllegalArgumentException if an activity has an id but no date
+     * @throws org.springframework.dao.DataIntegrityViolationException if an id was claimed concurrently
+     */
+    public List<Activity> claim(String scope, List<Activity> activities, boolean exact) {
+        if (activities.stream().noneMatch(a -> a.getActivityId() != null)) {
+            return activities;
+        }
+
+        // Bucket ids by month, dropping repeats within the batch
+        Map<LocalDate, Set<String>> idsByMonth = new HashMap<>();
+        Set<Activity> dropped = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Activity a : activities) {
+            if (a.getActivityId() == null) {
+                continue;
+            }
+            if (a.getActivityDate() == null) {
+                throw new IllegalArgumentException("activityDate is required for activity " + a.getActivityId());
+            }
+            if (!idsByMonth.computeIfAbsent(month(a), m -> new HashSet<>()).add(a.getActivityId())) {
+                dropped.add(a);
+                confirmed.increment();
+            }
+        }
+
+        return transactionTemplate.execute(status -> {
+            Map<LocalDate, Set<String>> seen = new HashMap<>();
+            List<ActivityKey> keys = new ArrayList<>();
+            Instant now = Instant.now();
+
+            for (Map.Entry<LocalDate, Set<String>> e : idsByMonth.entrySet()) {
+                LocalDate month = e.getKey();
+                BloomFilter filter = filterFor(month);
+                List<String> candidates = new ArrayList<>();
+                for (String id : e.getValue()) {
+                    if (exact || filter.mightContain(scope + '|' + id)) {
+                        candidates.add(id);
+                    }
+                }
+                if (!exact) {
+                    suspected.increment(candidates.size());
+                }
+                Set<String> existing = candidates.isEmpty()
+                        ? Set.of()
+                        : new HashSet<>(keyRepository.findExisting(scope, month, candidates));
+                seen.put(month, existing);
+
+                for (String id : e.getValue()) {
+                    if (!existing.contains(id)) {
+                        ActivityKey key = new ActivityKey();
+                        key.setScope(scope);
+                        key.setPeriodMonth(month);
+                        key.setActivityId(id);
+                        key.setCreatedAt(now);
+                        keys.add(key);
+                    }
+                }
+            }
+            keyRepository.saveAllAndFlush(keys);
+            keys.forEach(k -> filterFor(k.getPeriodMonth()).put(scope + '|' + k.getActivityId()));
+
+            List<Activity> fresh = new ArrayList<>(activities.size());
+            for (Activity a : activities) {
+                if (dropped.contains(a)) {
+                    continue;
+                }
+                if (a.getActivityId() != null && seen.get(month(a)).contains(a.getActivityId())) {
+                    confirmed.increment();
+                    continue;
+                }
+                fresh.add(a);
+            }
+            if (fresh.size() < activities.size()) {
+                log.debug("Dropped {} duplicate activities in scope {}", activities.size() - fresh.size(), scope);
+            }
+            return fresh;
+        });
+    }
+
+    /**
+     * Forget claimed ids, for callers whose store failed after {@link #claim} committed. The filter keeps them,
+     * which costs at most a database lookup if they are resent.
+     */
+    public void release(String scope, List<Activity> activities) {
+        Map<LocalDate, List<String>> idsByMonth = new HashMap<>();
+        for (Activity a : activities) {
+            if (a.getActivityId() != null) {
+                idsByMonth.computeIfAbsent(month(a), m -> new ArrayList<>()).add(a.getActivityId());
+            }
+        }
+        transactionTemplate.executeWithoutResult(status ->
+                idsByMonth.forEach((month, ids) -> keyRepository.deleteKeys(scope, month, ids)));
+    }
+
+    private BloomFilter filterFor(LocalDate month) {
+        filtersLock.lock();
+        try {
+            BloomFilter filter = filters.get(month);
+            if (filter == null) {
+                filter = load(month);
+                filters.put(month, filter);
+                if (filters.size() > monthsInMemory) {
+                    filters.remove(filters.keySet().iterator().next());
+                }
+            }
+            return filter;
+        } finally {
+            filtersLock.unlock();
+        }
+    }
+
+    private BloomFilter load(LocalDate month) {
+        BloomFilter filter = new BloomFilter(expectedPerMonth, falsePositiveRate);
+        long[] loaded = {0};
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Object[]> rows = keyRepository.streamByPeriodMonth(month)) {
+                rows.forEach(row -> {
+                    filter.put(row[0] + "|" + row[1]);
+                    loaded[0]++;
+                });
+            }
+        });
+        log.debug("Loaded dedup filter for {}: {} ids, {} bits, {} hashes",
+                month, loaded[0], filter.bitCount(), filter.hashCount());
+        return filter;
+    }
+
+    private static LocalDate month(Activity a) {
+        return a.getActivityDate().withDayOfMonth(1);
+    }
+}
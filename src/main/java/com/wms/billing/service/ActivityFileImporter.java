@@ -0,0 +1,261 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.Invoice;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rates activity CSV files exported by the WMS, read straight from local disk instead of an API payload.
+ *
+ * <p>Files are resolved under {@code billing.import.dir}; paths that escape it are rejected. The first line is a
+ * header naming the columns, in any order: {@code category}, {@code type} and {@code quantity} are required;
+ * {@code warehouseId} and {@code activityDate} are optional, and other columns are ignored. Without a
+ * {@code warehouseId} column every row belongs to the requested warehouse; without an {@code activityDate} column
+ * every row belongs to the requested period.</p>
+ *
+ * <p>The file is memory-mapped in regions of {@code billing.import.region-size}, which are scanned in parallel
+ * by {@code billing.import.parallelism} workers (see {@link ActivityFileScanner}). Each region sums quantities per
+ * (warehouse, category, type); the sums are merged, and the merged totals are rated as one activity each, so an
+ * invoice over millions of rows rates a handful of facts. Categories must be {@code ChargeCategory} names, and
+ * for {@code ACCESSORIAL} the type must be an {@code AccessorialType}. If more than
+ * {@code billing.import.max-rejected-rows} rows are malformed, the import fails with {@code 400} listing the first
+ * errors; up to that limit, bad rows are skipped and logged.</p>
+ */
+@Slf4j
+@Service
+public class ActivityFileImporter {
+
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    /** Outcome of scanning one file: merged activities plus row counts. */
+    public record Result(long rows, long skipped, long rejected, List<String> errors, List<Activity> activities) {
+    }
+
+    private final InvoiceServiceDrools invoiceService;
+    private final Path directory;
+    private final long regionSize;
+    private final long maxRejectedRows;
+    private final ThreadPoolExecutor executor;
+
+    public ActivityFileImporter(InvoiceServiceDrools invoiceService,
+                                @Value("${billing.import.dir:${java.io.tmpdir}/wms-billing/import}") String directory,
+                                @Value("${billing.import.region-size:256MB}") DataSize regionSize,
+                                @Value("${billing.import.parallelism:0}") int parallelism,
+                                @Value("${billing.import.max-rejected-rows:0}") long maxRejectedRows) {
+        this.invoiceService = invoiceService;
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        // A region is mapped with room for one more line; both must fit in one mapping
+        this.regionSize = Math.min(Math.max(regionSize.toBytes(), ActivityFileScanner.MAX_LINE_BYTES),
+                Integer.MAX_VALUE - ActivityFileScanner.MAX_LINE_BYTES - 1L);
+        this.maxRejectedRows = maxRejectedRows;
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "activity-import-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        // Regions of concurrent imports share the workers; a file's regions are bounded by its size
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), factory);
+    }
+
+    /**
+     * Scan a file and rate the rows of {@code warehouseId} in {@code [start, end]}.
+     *
+     * @param preview whether to only preview (true) or persist the final invoice (false)
+     */
+    public Invoice rate(Long rateSheetId, String file, String warehouseId, LocalDate start, LocalDate end,
+                        boolean preview) {
+        Result result = scan(file, warehouseId, start, end);
+        return invoiceService.generateInvoice(rateSheetId, warehouseId, start, end, result.activities(), preview);
+    }
+
+    /**
+     * Scan a file into one aggregated activity per (category, type) for {@code warehouseId}.
+     *
+     * @throws IllegalArgumentException if the path escapes the import directory or the header is unusable
+     * @throws ResponseStatusException  404 if the file does not exist, 400 if too many rows are malformed
+     */
+    public Result scan(String file, String warehouseId, LocalDate start, LocalDate end) {
+        if (start == null || end == null || end.isBefore(start)) {
+            throw new IllegalArgumentException("periodStart and periodEnd are required, with periodStart <= periodEnd");
+        }
+        Path path = resolve(file);
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Header header = readHeader(channel, size);
+            ActivityFileScanner.Filter filter = new ActivityFileScanner.Filter(
+                    warehouseId.getBytes(StandardCharsets.UTF_8), dateKey(start), dateKey(end));
+
+            List<Future<ActivityFileScanner>> regions = new ArrayList<>();
+            for (long from = header.dataStart(); from < size; from += regionSize) {
+                long regionStart = from;
+                long regionEnd = Math.min(size, from + regionSize);
+                regions.add(executor.submit(() -> scanRegion(channel, size, header, filter, regionStart, regionEnd)));
+            }
+            Result result = merge(regions, warehouseId);
+            log.info("Imported {}: {} rows, {} aggregated activities, {} skipped, {} rejected in {} ms",
+                    path.getFileName(), result.rows(), result.activities().size(), result.skipped(),
+                    result.rejected(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            if (result.rejected() > maxRejectedRows) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, result.rejected() + " malformed rows in "
+                        + path.getFileName() + " (limit " + maxRejectedRows + "): " + result.errors());
+            }
+            if (result.rejected() > 0) {
+                log.warn("Skipped {} malformed rows in {}: {}", result.rejected(), path.getFileName(), result.errors());
+            }
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read activity file " + path.getFileName(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record Header(ActivityFileScanner.Columns columns, long dataStart) {
+    }
+
+    private Path resolve(String file) {
+        if (file == null || file.isBlank()) {
+            throw new IllegalArgumentException("file is required");
+        }
+        Path path = directory.resolve(file).normalize();
+        if (!path.startsWith(directory)) {
+            throw new IllegalArgumentException("file must be inside the import directory");
+        }
+        if (!Files.isRegularFile(path)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Activity file not found: " + file);
+        }
+        return path;
+    }
+
+    private static Header readHeader(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                Math.min(size, ActivityFileScanner.MAX_LINE_BYTES));
+        int end = 0;
+        while (end < buffer.limit() && buffer.get(end) != '\n') {
+            end++;
+        }
+        if (end == buffer.limit() && end == ActivityFileScanner.MAX_LINE_BYTES) {
+            throw new IllegalArgumentException("Header line is too long");
+        }
+        byte[] bytes = new byte[end];
+        buffer.get(0, bytes);
+        String line = new String(bytes, StandardCharsets.UTF_8).strip();
+        if (line.startsWith("\uFEFF")) {
+            line = line.substring(1);
+        }
+        String[] names = line.split(",", -1);
+        int warehouse = -1, category = -1, type = -1, quantity = -1, activityDate = -1;
+        for (int i = 0; i < names.length; i++) {
+            switch (names[i].strip().toLowerCase()) {
+                case "warehouseid" -> warehouse = i;
+                case "category" -> category = i;
+                case "type" -> type = i;
+                case "quantity" -> quantity = i;
+                case "activitydate" -> activityDate = i;
+                default -> { }
+            }
+        }
+        if (category < 0 || type < 0 || quantity < 0) {
+            throw new IllegalArgumentException("Header must name category, type and quantity columns: " + line);
+        }
+        return new Header(new ActivityFileScanner.Columns(names.length, warehouse, category, type, quantity,
+                activityDate), Math.min(size, end + 1L));
+    }
+
+    private static ActivityFileScanner scanRegion(FileChannel channel, long size, Header header,
+                                                  ActivityFileScanner.Filter filter, long start, long end)
+            throws IOException {
+        boolean lineAligned = start == header.dataStart();
+        long mapStart = lineAligned ? start : start - 1;
+        long mapEnd = Math.min(size, end + ActivityFileScanner.MAX_LINE_BYTES);
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        ActivityFileScanner scanner = new ActivityFileScanner(header.columns(), filter, MAX_REPORTED_ERRORS);
+        scanner.scan(buffer, mapStart, start, end, lineAligned, mapEnd == size);
+        return scanner;
+    }
+
+    /** Merge region sums in a fixed (category, type) order, so the result does not depend on region timing. */
+    private static Result merge(List<Future<ActivityFileScanner>> regions, String warehouseId) throws IOException {
+        Map<String, long[]> sums = new TreeMap<>();
+        Map<String, Activity> activities = new TreeMap<>();
+        long rows = 0, skipped = 0, rejected = 0;
+        List<String> errors = new ArrayList<>();
+        try {
+            for (Future<ActivityFileScanner> region : regions) {
+                ActivityFileScanner scanner = region.get();
+                rows += scanner.rows();
+                skipped += scanner.skipped();
+                rejected += scanner.rejected();
+                scanner.errors().stream().limit(MAX_REPORTED_ERRORS - errors.size()).forEach(errors::add);
+                for (int slot = 0; slot < scanner.slots(); slot++) {
+                    String key = scanner.category(slot).ordinal() + "\0" + scanner.type(slot);
+                    long[] sum = sums.computeIfAbsent(key, k -> new long[1]);
+                    sum[0] = Math.addExact(sum[0], scanner.quantity(slot));
+                    if (!activities.containsKey(key)) {
+                        Activity a = new Activity();
+                        a.setWarehouseId(warehouseId);
+                        a.setCategory(scanner.category(slot));
+                        a.setType(scanner.type(slot));
+                        activities.put(key, a);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            regions.forEach(r -> r.cancel(true));
+            throw new IllegalStateException("Activity import interrupted", e);
+        } catch (ExecutionException e) {
+            regions.forEach(r -> r.cancel(true));
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        }
+        List<Activity> merged = new ArrayList<>(activities.size());
+        activities.forEach((key, a) -> {
+            a.setQuantity(BigDecimal.valueOf(sums.get(key)[0], ActivityFileScanner.QUANTITY_SCALE));
+            merged.add(a);
+        });
+        return new Result(rows, skipped, rejected, List.copyOf(errors), merged);
+    }
+
+    private static int dateKey(LocalDate date) {
+        return date.getYear() * 10_000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+}
@@ -0,0 +1,456 @@
+package com.wms.billing.service;
+
+import com.wms.billing.dto.AccessorialType;
+import com.wms.billing.dto.ChargeCategory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses one region of a memory-mapped activity CSV file into per (warehouse, category, type) quantity sums.
+ *
+ * <p>The scanner works on the mapped bytes directly. Fields are located by offset; quantities and dates are
+ * parsed digit by digit, categories are matched against the encoded enum names, and warehouse ids and types are
+ * interned per region, so a row costs no {@code String} or {@code BigDecimal} allocation. Strings are only created
+ * for the first occurrence of each distinct warehouse id or type, and for error messages.</p>
+ *
+ * <p>Format: UTF-8, comma-separated, no quoting, {@code \n} or {@code \r\n} line ends. Quantities have at most
+ * {@link #QUANTITY_SCALE} decimals; dates are {@code yyyy-MM-dd}.</p>
+ *
+ * <p>A region owns the lines that <em>start</em> inside it, so regions cut at arbitrary offsets still see every
+ * line exactly once. Not thread-safe; use one scanner per region.</p>
+ */
+class ActivityFileScanner {
+
+    static final int QUANTITY_SCALE = 4;
+
+    /** Longest accepted line, and how far past its end a region must be mapped. */
+    static final int MAX_LINE_BYTES = 64 * 1024;
+
+    private static final ChargeCategory[] CATEGORIES = ChargeCategory.values();
+    private static final byte[][] CATEGORY_NAMES = new byte[CATEGORIES.length][];
+
+    static {
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            CATEGORY_NAMES[i] = CATEGORIES[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /** Field positions from the header; {@code -1} for an absent optional column. */
+    record Columns(int count, int warehouse, int category, int type, int quantity, int activityDate) {
+    }
+
+    /**
+     * Rows to keep: only {@code warehouseId} (unless the file has no warehouse column) and, when the file has an
+     * {@code activityDate} column, only dates in {@code [fromDate, toDate]} given as {@code yyyyMMdd} ints.
+     */
+    record Filter(byte[] warehouseId, int fromDate, int toDate) {
+    }
+
+    private final Columns columns;
+    private final Filter filter;
+    private final int maxErrors;
+
+    private final int[] fieldStart;
+    private final int[] fieldEnd;
+
+    private final Interner warehouses = new Interner();
+    private final Interner types = new Interner();
+    private byte[] typeValidity = new byte[16];   // 0 unknown, 1 valid, 2 not an AccessorialType
+
+    // Aggregates: open-addressing map (warehouse, category, type) -> slot
+    private long[] keys = new long[64];
+    private int[] slotOf = new int[64];
+    private long[] quantity = new long[32];
+    private long[] rowCount = new long[32];
+    private long[] slotKey = new long[32];
+    private int slots;
+
+    private long rows;
+    private long skipped;
+    private long rejected;
+    private final List<String> errors = new ArrayList<>();
+
+    ActivityFileScanner(Columns columns, Filter filter, int maxErrors) {
+        this.columns = columns;
+        this.filter = filter;
+        this.maxErrors = maxErrors;
+        this.fieldStart = new int[columns.count()];
+        this.fieldEnd = new int[columns.count()];
+        Arrays.fill(slotOf, -1);
+    }
+
+    /**
+     * Scan the lines starting in {@code [ownStart, ownEnd)} (file offsets).
+     *
+     * @param buffer      mapping of the file from {@code mapOffset}; must extend {@link #MAX_LINE_BYTES} past
+     *                    {@code ownEnd}, or to the end of the file
+     * @param mapOffset   file offset of {@code buffer}'s position 0
+     * @param lineAligned whether {@code ownStart} is known to be the start of a line
+     * @param atEof       whether {@code buffer} ends at the end of the file
+     */
+    void scan(ByteBuffer buffer, long mapOffset, long ownStart, long ownEnd, boolean lineAligned, boolean atEof) {
+        int limit = buffer.limit();
+        int pos = (int) (ownStart - mapOffset);
+        if (!lineAligned && buffer.get(pos - 1) != '\n') {
+            // Mid-line: the previous region owns this line
+            while (pos < limit && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+        int end = (int) (ownEnd - mapOffset);
+        while (pos < end && pos < limit) {
+            int lineEnd = pos;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == limit && !atEof) {
+                reject(mapOffset + pos, "line longer than " + MAX_LINE_BYTES + " bytes");
+                return;
+            }
+            int contentEnd = lineEnd > pos && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            if (contentEnd > pos) {
+                row(buffer, mapOffset, pos, contentEnd);
+            }
+            pos = lineEnd + 1;
+        }
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    long skipped() {
+        return skipped;
+    }
+
+    long rejected() {
+        return rejected;
+    }
+
+    List<String> errors() {
+        return errors;
+    }
+
+    int slots() {
+        return slots;
+    }
+
+    String warehouse(int slot) {
+        int code = (int) (slotKey[slot] >>> 35);
+        return code == 0 ? null : warehouses.value(code - 1);
+    }
+
+    ChargeCategory category(int slot) {
+        return CATEGORIES[(int) (slotKey[slot] >>> 32) & 0x7];
+    }
+
+    String type(int slot) {
+        return types.value((int) slotKey[slot]);
+    }
+
+    /** Quantity sum with {@link #QUANTITY_SCALE} implied decimals. */
+    long quantity(int slot) {
+        return quantity[slot];
+    }
+
+    long rowCount(int slot) {
+        return rowCount[slot];
+    }
+
+    private void row(ByteBuffer buf, long mapOffset, int from, int to) {
+        rows++;
+        int fields = 0;
+        int start = from;
+        for (int i = from; i < to; i++) {
+            byte b = buf.get(i);
+            if (b == ',') {
+                if (fields < fieldStart.length) {
+                    fieldStart[fields] = start;
+                    fieldEnd[fields] = i;
+                }
+                fields++;
+                start = i + 1;
+            } else if (b == '"') {
+                reject(mapOffset + from, "quoted fields are not supported");
+                return;
+            }
+        }
+        if (fields < fieldStart.length) {
+            fieldStart[fields] = start;
+            fieldEnd[fields] = to;
+        }
+        fields++;
+        if (fields != columns.count()) {
+            reject(mapOffset + from, "expected " + columns.count() + " fields, found " + fields);
+            return;
+        }
+
+        int warehouseCode = 0;   // 0 = no warehouse column
+        if (columns.warehouse() >= 0) {
+            int ws = fieldStart[columns.warehouse()];
+            int we = fieldEnd[columns.warehouse()];
+            if (filter.warehouseId() != null && !equals(buf, ws, we, filter.warehouseId())) {
+                skipped++;
+                return;
+            }
+            warehouseCode = warehouses.intern(buf, ws, we) + 1;
+        }
+        if (columns.activityDate() >= 0) {
+            int date = parseDate(buf, fieldStart[columns.activityDate()], fieldEnd[columns.activityDate()]);
+            if (date < 0) {
+                reject(mapOffset + from, "activityDate is not yyyy-MM-dd");
+                return;
+            }
+            if (date < filter.fromDate() || date > filter.toDate()) {
+                skipped++;
+                return;
+            }
+        }
+        int category = category(buf, fieldStart[columns.category()], fieldEnd[columns.category()]);
+        if (category < 0) {
+            reject(mapOffset + from, "unknown category");
+            return;
+        }
+        int ts = fieldStart[columns.type()];
+        int te = fieldEnd[columns.type()];
+        if (ts == te) {
+            reject(mapOffset + from, "type is required");
+            return;
+        }
+        int type = types.intern(buf, ts, te);
+        if (CATEGORIES[category] == ChargeCategory.ACCESSORIAL && !isAccessorialType(type)) {
+            reject(mapOffset + from, "type is not an AccessorialType: " + types.value(type));
+            return;
+        }
+        long qty = parseQuantity(buf, fieldStart[columns.quantity()], fieldEnd[columns.quantity()]);
+        if (qty == Long.MIN_VALUE) {
+            reject(mapOffset + from, "quantity is not a number with at most " + QUANTITY_SCALE + " decimals");
+            return;
+        }
+
+        int slot = slot(((long) warehouseCode << 35) | ((long) category << 32) | (type & 0xFFFFFFFFL));
+        long sum = quantity[slot] + qty;
+        if (((quantity[slot] ^ sum) & (qty ^ sum)) < 0) {
+            reject(mapOffset + from, "quantity sum overflows");
+            return;
+        }
+        quantity[slot] = sum;
+        rowCount[slot]++;
+    }
+
+    private void reject(long offset, String message) {
+        rejected++;
+        if (errors.size() < maxErrors) {
+            errors.add("byte " + offset + ": " + message);
+        }
+    }
+
+    private boolean isAccessorialType(int type) {
+        if (type >= typeValidity.length) {
+            typeValidity = Arrays.copyOf(typeValidity, Math.max(type + 1, typeValidity.length * 2));
+        }
+        if (typeValidity[type] == 0) {
+            boolean valid;
+            try {
+                AccessorialType.valueOf(types.value(type));
+                valid = true;
+            } catch (IllegalArgumentException e) {
+                valid = false;
+            }
+            typeValidity[type] = (byte) (valid ? 1 : 2);
+        }
+        return typeValidity[type] == 1;
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (slotOf[i] >= 0) {
+            if (keys[i] == key) {
+                return slotOf[i];
+            }
+            i = (i + 1) & mask;
+        }
+        if (slots == quantity.length) {
+            quantity = Arrays.copyOf(quantity, slots * 2);
+            rowCount = Arrays.copyOf(rowCount, slots * 2);
+            slotKey = Arrays.copyOf(slotKey, slots * 2);
+        }
+        int slot = slots++;
+        slotKey[slot] = key;
+        keys[i] = key;
+        slotOf[i] = slot;
+        if (slots * 2 > keys.length) {
+            rehash();
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        keys = new long[keys.length * 2];
+        slotOf = new int[keys.length];
+        Arrays.fill(slotOf, -1);
+        int mask = keys.length - 1;
+        for (int slot = 0; slot < slots; slot++) {
+            int i = mix(slotKey[slot]) & mask;
+            while (slotOf[i] >= 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = slotKey[slot];
+            slotOf[i] = slot;
+        }
+    }
+
+    private static int category(ByteBuffer buf, int from, int to) {
+        for (int c = 0; c < CATEGORY_NAMES.length; c++) {
+            if (equals(buf, from, to, CATEGORY_NAMES[c])) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /** Quantity scaled by {@link #QUANTITY_SCALE}, or {@code Long.MIN_VALUE} if malformed or out of range. */
+    static long parseQuantity(ByteBuffer buf, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            negative = buf.get(i) == '-';
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        int decimals = -1;   // -1 until the decimal point
+        for (; i < to; i++) {
+            byte b = buf.get(i);
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            if (b < '0' || b > '9' || decimals == QUANTITY_SCALE) {
+                return Long.MIN_VALUE;
+            }
+            if (value > (Long.MAX_VALUE - 9) / 10) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + (b - '0');
+            digits++;
+            if (decimals >= 0) {
+                decimals++;
+            }
+        }
+        if (digits == 0) {
+            return Long.MIN_VALUE;
+        }
+        for (int d = Math.max(decimals, 0); d < QUANTITY_SCALE; d++) {
+            if (value > Long.MAX_VALUE / 10) {
+                return Long.MIN_VALUE;
+            }
+            value *= 10;
+        }
+        return negative ? -value : value;
+    }
+
+    /** {@code yyyy-MM-dd} as a {@code yyyyMMdd} int, or -1 if malformed. */
+    static int parseDate(ByteBuffer buf, int from, int to) {
+        if (to - from != 10 || buf.get(from + 4) != '-' || buf.get(from + 7) != '-') {
+            return -1;
+        }
+        int year = digits(buf, from, 4);
+        int month = digits(buf, from + 5, 2);
+        int day = digits(buf, from + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return -1;
+        }
+        return year * 10_000 + month * 100 + day;
+    }
+
+    private static int digits(ByteBuffer buf, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            byte b = buf.get(i);
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private static boolean equals(ByteBuffer buf, int from, int to, byte[] value) {
+        if (to - from != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (buf.get(from + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /** Byte-sequence to dense code, without decoding a byte sequence it has already seen. */
+    private static final class Interner {
+        private int[] table = new int[64];   // code + 1, 0 = empty
+        private int[] hashes = new int[16];
+        private byte[][] bytes = new byte[16][];
+        private String[] values = new String[16];
+        private int size;
+
+        int intern(ByteBuffer buf, int from, int to) {
+            int hash = 0x811C9DC5;
+            for (int i = from; i < to; i++) {
+                hash = (hash ^ buf.get(i)) * 0x01000193;
+            }
+            int mask = table.length - 1;
+            int i = hash & mask;
+            while (table[i] != 0) {
+                int code = table[i] - 1;
+                if (hashes[code] == hash && ActivityFileScanner.equals(buf, from, to, bytes[code])) {
+                    return code;
+                }
+                i = (i + 1) & mask;
+            }
+            if (size == values.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+                bytes = Arrays.copyOf(bytes, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            byte[] copy = new byte[to - from];
+            buf.get(from, copy);
+            int code = size++;
+            hashes[code] = hash;
+            bytes[code] = copy;
+            values[code] = new String(copy, StandardCharsets.UTF_8);
+            table[i] = code + 1;
+            if (size * 2 > table.length) {
+                table = new int[table.length * 2];
+                int m = table.length - 1;
+                for (int c = 0; c < size; c++) {
+                    int j = hashes[c] & m;
+                    while (table[j] != 0) {
+                        j = (j + 1) & m;
+                    }
+                    table[j] = c + 1;
+                }
+            }
+            return code;
+        }
+
+        String value(int code) {
+            return values[code];
+        }
+    }
+}
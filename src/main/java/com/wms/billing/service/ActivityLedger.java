@@ -0,0 +1,443 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.exception.FileStorageException;
+import com.wms.billing.rating.ActivityBatch;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Append-only store of billable activities, so a period can be rated (or re-rated and audited) from stored
+ * activities instead of a resent payload. Enabled with {@code billing.ledger.enabled=true}.
+ *
+ * <p>Records are appended in a compact binary format (see {@link ActivityLedgerSegment}) to memory-mapped
+ * segment files of {@code billing.ledger.segment-size} under {@code billing.ledger.dir}. When the active segment
+ * is full the ledger rolls to a new one. With {@code billing.ledger.fsync=true} every append is forced to disk
+ * before it returns; otherwise the OS flushes dirty pages on its own schedule.</p>
+ *
+ * <p>An in-memory index of record positions per (customer, warehouse, day) serves range scans without reading
+ * unrelated records. It is rebuilt on startup by scanning the segments sequentially.</p>
+ *
+ * <p>Compaction ({@code billing.ledger.compaction-cron}) drops records older than
+ * {@code billing.ledger.retention-days} from full segments, deleting segments that become empty. A retention of
+ * 0 keeps everything.</p>
+ *
+ * <p>Appends and compaction take the write lock; scans share the read lock.</p>
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "billing.ledger.enabled", havingValue = "true")
+public class ActivityLedger implements BillingActivitySource {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{10})\\.log");
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final int retentionDays;
+    private final ActivityDeduplicator deduplicator;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, ActivityLedgerSegment> segments = new TreeMap<>();
+    // customerId + '\0' + warehouseId -> epoch day -> record positions
+    private final Map<String, TreeMap<Integer, Positions>> index = new HashMap<>();
+    private ActivityLedgerSegment active;
+
+    private final Counter appended;
+
+    public ActivityLedger(@Value("${billing.ledger.dir:${java.io.tmpdir}/wms-billing/ledger}") String directory,
+                          @Value("${billing.ledger.segment-size:64MB}") DataSize segmentSize,
+                          @Value("${billing.ledger.fsync:false}") boolean fsync,
+                          @Value("${billing.ledger.retention-days:0}") int retentionDays,
+                          ActivityDeduplicator deduplicator,
+                          MeterRegistry registry) {
+        this.directory = Paths.get(directory);
+        this.segmentSize = (int) Math.min(segmentSize.toBytes(), Integer.MAX_VALUE);
+        this.fsync = fsync;
+        this.retentionDays = retentionDays;
+        this.deduplicator = deduplicator;
+
+        this.appended = Counter.builder("billing.ledger.records.appended")
+                .description("Activities appended to the ledger")
+                .register(registry);
+        Gauge.builder("billing.ledger.segments", this, l -> l.withReadLock(l.segments::size))
+                .register(registry);
+        Gauge.builder("billing.ledger.bytes", this, ActivityLedger::totalBytes)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void open() {
+        lock.writeLock().lock();
+        try {
+            Files.createDirectories(directory);
+            for (int id : segmentIds()) {
+                openSegment(id);
+            }
+            active = segments.isEmpty() ? openSegment(1) : segments.lastEntry().getValue();
+            log.info("Activity ledger opened at {}: {} segment(s), {} record(s)",
+                    directory, segments.size(), segments.values().stream().mapToLong(ActivityLedgerSegment::records).sum());
+        } catch (IOException e) {
+            throw new FileStorageException("Could not open activity ledger at " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        lock.writeLock().lock();
+        try {
+            for (ActivityLedgerSegment segment : segments.values()) {
+                segment.force();
+                segment.close();
+            }
+            segments.clear();
+            index.clear();
+        } catch (IOException e) {
+            log.warn("Could not close activity ledger cleanly", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append a customer's activities. Each activity needs a warehouse, activity date, category, type and
+     * quantity; the batch is validated before anything is written. Activities whose {@code activityId} was
+     * already appended for this customer are skipped (see {@link ActivityDeduplicator}).
+     *
+     * @return number of activities appended
+     * @throws IllegalArgumentException if an activity is incomplete
+     */
+    public int append(String customerId, List<Activity> activities) {
+        Map<Activity, byte[]> records = new IdentityHashMap<>(activities.size());
+        for (Activity a : activities) {
+            records.put(a, ActivityLedgerSegment.encode(customerId, a.getWarehouseId(), a.getActivityDate(),
+                    a.getCategory(), a.getType(), a.getQuantity(), a.getActivityId()));
+        }
+
+        String scope = "ledger:" + customerId;
+        List<Activity> fresh;
+        try {
+            fresh = deduplicator.claim(scope, activities, false);
+        } catch (DataIntegrityViolationException e) {
+            fresh = deduplicator.claim(scope, activities, true);
+        }
+
+        int written = 0;
+        lock.writeLock().lock();
+        try {
+            Set<ActivityLedgerSegment> touched = fsync ? new HashSet<>() : null;
+            for (Activity a : fresh) {
+                byte[] record = records.get(a);
+                int offset = active.append(record);
+                if (offset < 0) {
+                    roll(record.length);
+                    offset = active.append(record);
+                }
+                indexRecord(customerId, a.getWarehouseId(), (int) a.getActivityDate().toEpochDay(), active.id(), offset);
+                if (touched != null) {
+                    touched.add(active);
+                }
+                written++;
+            }
+            if (touched != null) {
+                touched.forEach(ActivityLedgerSegment::force);
+            }
+        } catch (IOException e) {
+            // Records before the failed roll are stored and indexed; only the rest may be sent again
+            deduplicator.release(scope, fresh.subList(written, fresh.size()));
+            appended.increment(written);
+            throw new FileStorageException("Could not append to activity ledger", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        appended.increment(fresh.size());
+        return fresh.size();
+    }
+
+    /**
+     * Activities of one customer at one warehouse with an activity date in {@code [start, end]}, ordered by date
+     * and then by append order.
+     */
+    @Override
+    public List<Activity> findActivities(String customerId, String warehouseId, LocalDate start, LocalDate end) {
+        lock.readLock().lock();
+        try {
+            TreeMap<Integer, Positions> days = index.get(key(customerId, warehouseId));
+            if (days == null) {
+                return List.of();
+            }
+            NavigableMap<Integer, Positions> range =
+                    days.subMap((int) start.toEpochDay(), true, (int) end.toEpochDay(), true);
+            List<Activity> result = new ArrayList<>();
+            for (Positions positions : range.values()) {
+                for (int i = 0; i < positions.size; i++) {
+                    long position = positions.values[i];
+                    ActivityLedgerSegment segment = segments.get((int) (position >>> 32));
+                    result.add(toActivity(segment.read((int) position)));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stream the activities {@link #findActivities} would return into {@code batch}, handing it to {@code sink}
+     * every {@code chunkSize} records and once more for the remainder. The batch is cleared before each chunk,
+     * so the sink must consume it (e.g. with {@link com.wms.billing.rating.RatingKernel}) before returning. Runs under the read lock.
+     */
+    public void scan(String customerId, String warehouseId, LocalDate start, LocalDate end,
+                     ActivityBatch batch, int chunkSize, Consumer<ActivityBatch> sink) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        lock.readLock().lock();
+        try {
+            TreeMap<Integer, Positions> days = index.get(key(customerId, warehouseId));
+            if (days == null) {
+                return;
+            }
+            int warehouseCode = batch.warehouses().code(warehouseId);
+            batch.clear();
+            NavigableMap<Integer, Positions> range =
+                    days.subMap((int) start.toEpochDay(), true, (int) end.toEpochDay(), true);
+            for (Positions positions : range.values()) {
+                for (int i = 0; i < positions.size; i++) {
+                    long position = positions.values[i];
+                    ActivityLedgerSegment.Entry e = segments.get((int) (position >>> 32)).read((int) position);
+                    batch.add(warehouseCode, e.category(), batch.types().code(e.type()),
+                            ActivityBatch.scale(e.quantity()));
+                    if (batch.size() == chunkSize) {
+                        sink.accept(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            if (batch.size() > 0) {
+                sink.accept(batch);
+                batch.clear();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Scheduled(cron = "${billing.ledger.compaction-cron:0 30 2 * * *}")
+    public void scheduledCompaction() {
+        if (retentionDays > 0) {
+            compact(LocalDate.now().minusDays(retentionDays));
+        }
+    }
+
+    /**
+     * Drop records dated before {@code cutoff} from every full segment. Segments left empty are deleted; the
+     * others are rewritten to a temporary file that then replaces the original. A segment keeps being served
+     * until its replacement is complete, so a failure leaves it as it was. The index is rebuilt afterwards, also
+     * when a later segment fails.
+     *
+     * @return number of records dropped
+     */
+    public long compact(LocalDate cutoff) {
+        int cutoffDay = (int) cutoff.toEpochDay();
+        long dropped = 0;
+        lock.writeLock().lock();
+        try {
+            for (ActivityLedgerSegment segment : new ArrayList<>(segments.values())) {
+                if (segment == active) {
+                    continue;
+                }
+                dropped += compactSegment(segment, cutoffDay);
+            }
+        } catch (IOException e) {
+            throw new FileStorageException("Activity ledger compaction failed", e);
+        } finally {
+            if (dropped > 0) {
+                rebuildIndex();
+            }
+            lock.writeLock().unlock();
+        }
+        if (dropped > 0) {
+            log.info("Activity ledger compaction dropped {} record(s) dated before {}", dropped, cutoff);
+        }
+        return dropped;
+    }
+
+    private long compactSegment(ActivityLedgerSegment segment, int cutoffDay) throws IOException {
+        List<byte[]> kept = new ArrayList<>();
+        int[] total = {0};
+        segment.forEach((offset, e) -> {
+            total[0]++;
+            if (e.activityDate().toEpochDay() >= cutoffDay) {
+                kept.add(ActivityLedgerSegment.encode(e.customerId(), e.warehouseId(), e.activityDate(),
+                        e.category(), e.type(), e.quantity(), e.activityId()));
+            }
+        });
+        if (kept.size() == total[0]) {
+            return 0;
+        }
+
+        if (kept.isEmpty()) {
+            Files.delete(segment.path());
+            segments.remove(segment.id());
+            closeQuietly(segment);
+            return total[0];
+        }
+
+        // Build the replacement completely before touching the original
+        Path temp = segment.path().resolveSibling(segment.path().getFileName() + ".compact");
+        Files.deleteIfExists(temp);
+        int size = kept.stream().mapToInt(r -> r.length).sum() + Integer.BYTES;
+        try {
+            ActivityLedgerSegment rewritten = ActivityLedgerSegment.open(segment.id(), temp, size, (o, e) -> { });
+            try {
+                kept.forEach(rewritten::append);
+                rewritten.force();
+            } finally {
+                rewritten.close();
+            }
+            Files.move(temp, segment.path(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        // The original's mapping still reads the replaced file, so it serves until the rewritten one is open
+        ActivityLedgerSegment replacement = ActivityLedgerSegment.open(segment.id(), segment.path(), 0, (o, e) -> { });
+        segments.put(segment.id(), replacement);
+        closeQuietly(segment);
+        return total[0] - kept.size();
+    }
+
+    private static void closeQuietly(ActivityLedgerSegment segment) {
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.warn("Could not close activity ledger segment {}", segment.path().getFileName(), e);
+        }
+    }
+
+    private void rebuildIndex() {
+        index.clear();
+        for (ActivityLedgerSegment segment : segments.values()) {
+            segment.forEach((offset, e) -> indexRecord(e.customerId(), e.warehouseId(),
+                    (int) e.activityDate().toEpochDay(), segment.id(), offset));
+        }
+    }
+
+    private void roll(int recordLength) throws IOException {
+        active.force();
+        int next = segments.lastKey() + 1;
+        Path path = segmentPath(next);
+        ActivityLedgerSegment segment = ActivityLedgerSegment.open(next, path,
+                Math.max(segmentSize, recordLength + Integer.BYTES), (o, e) -> { });
+        segments.put(next, segment);
+        active = segment;
+        log.debug("Activity ledger rolled to {}", path.getFileName());
+    }
+
+    private ActivityLedgerSegment openSegment(int id) throws IOException {
+        ActivityLedgerSegment segment = ActivityLedgerSegment.open(id, segmentPath(id), segmentSize,
+                (offset, e) -> indexRecord(e.customerId(), e.warehouseId(), (int) e.activityDate().toEpochDay(), id, offset));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private List<Integer> segmentIds() throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing
+                    .map(p -> SEGMENT_NAME.matcher(p.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(m -> Integer.parseInt(m.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format("segment-%010d.log", id));
+    }
+
+    private void indexRecord(String customerId, String warehouseId, int epochDay, int segmentId, int offset) {
+        index.computeIfAbsent(key(customerId, warehouseId), k -> new TreeMap<>())
+                .computeIfAbsent(epochDay, d -> new Positions())
+                .add(((long) segmentId << 32) | (offset & 0xFFFFFFFFL));
+    }
+
+    private long totalBytes() {
+        return withReadLock(() -> segments.values().stream().mapToLong(ActivityLedgerSegment::size).sum());
+    }
+
+    private <T> T withReadLock(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static String key(String customerId, String warehouseId) {
+        return customerId + '\0' + warehouseId;
+    }
+
+    private static Activity toActivity(ActivityLedgerSegment.Entry e) {
+        Activity a = new Activity();
+        a.setActivityId(e.activityId());
+        a.setWarehouseId(e.warehouseId());
+        a.setActivityDate(e.activityDate());
+        a.setCategory(e.category());
+        a.setType(e.type());
+        a.setQuantity(e.quantity());
+        return a;
+    }
+
+    /** Growable list of packed (segment id, offset) positions. */
+    private static final class Positions {
+        long[] values = new long[4];
+        int size;
+
+        void add(long position) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = position;
+        }
+    }
+}
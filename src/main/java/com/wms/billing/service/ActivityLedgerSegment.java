@@ -0,0 +1,253 @@
+package com.wms.billing.service;
+
+import com.wms.billing.dto.ChargeCategory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.zip.CRC32;
+
+/**
+ * One memory-mapped segment file of the {@link ActivityLedger}.
+ *
+ * <p>A segment is a preallocated file of records laid out back to back from offset 0:</p>
+ * <pre>
+ * int    payload length (0 marks the end of the data)
+ * int    CRC32 of the payload
+ * int    activity date (epoch day)
+ * byte   charge category (ordinal)
+ * short  customerId length, UTF-8 bytes
+ * short  warehouseId length, UTF-8 bytes
+ * short  type length, UTF-8 bytes
+ * short  activityId length (0 if none), UTF-8 bytes
+ * byte   quantity scale
+ * byte   quantity unscaled length, two's-complement bytes
+ * </pre>
+ *
+ * <p>Not thread-safe; {@link ActivityLedger} serialises writers against readers.</p>
+ */
+class ActivityLedgerSegment {
+
+    static final int HEADER_BYTES = 8;
+
+    /** Decoded record. */
+    record Entry(String customerId, String warehouseId, LocalDate activityDate,
+                 ChargeCategory category, String type, BigDecimal quantity, String activityId) {
+    }
+
+    /** Receives records in append order, with their offsets. */
+    @FunctionalInterface
+    interface Visitor {
+        void visit(int offset, Entry entry);
+    }
+
+    // Persisted by ordinal: new categories may only be appended to ChargeCategory
+    private static final ChargeCategory[] CATEGORIES = ChargeCategory.values();
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int writePosition;
+    private int records;
+
+    private ActivityLedgerSegment(int id, Path path, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Map a segment file, creating and preallocating it to {@code capacity} bytes if it does not exist, and
+     * scan its records. A torn or corrupt tail (crash mid-append) ends the scan and is zeroed so that later
+     * appends start from a clean boundary.
+     */
+    static ActivityLedgerSegment open(int id, Path path, int capacity, Visitor visitor) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            int mapped = (int) Math.max(size, capacity);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mapped);
+            ActivityLedgerSegment segment = new ActivityLedgerSegment(id, path, channel, buffer, mapped);
+            segment.recover(visitor);
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int id() {
+        return id;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int size() {
+        return writePosition;
+    }
+
+    int records() {
+        return records;
+    }
+
+    /**
+     * Append one encoded record.
+     *
+     * @return the record's offset, or {@code -1} if the segment has no room for it
+     */
+    int append(byte[] record) {
+        if (writePosition + record.length + Integer.BYTES > capacity) {
+            return -1;   // keep room for the end-of-data marker
+        }
+        int offset = writePosition;
+        // Payload and CRC first, length last: a record becomes visible to recovery only once complete
+        buffer.put(offset + Integer.BYTES, record, Integer.BYTES, record.length - Integer.BYTES);
+        buffer.putInt(offset, record.length - HEADER_BYTES);
+        writePosition += record.length;
+        records++;
+        return offset;
+    }
+
+    Entry read(int offset) {
+        int length = buffer.getInt(offset);
+        return decode(buffer.slice(offset + HEADER_BYTES, length));
+    }
+
+    /** Visit every record in append order. */
+    void forEach(Visitor visitor) {
+        int offset = 0;
+        while (offset < writePosition) {
+            int length = buffer.getInt(offset);
+            visitor.visit(offset, decode(buffer.slice(offset + HEADER_BYTES, length)));
+            offset += HEADER_BYTES + length;
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        channel.close();   // the mapping itself is released when the buffer is collected
+    }
+
+    /** Encode a record, header included, ready for {@link #append(byte[])}. */
+    static byte[] encode(String customerId, String warehouseId, LocalDate activityDate,
+                         ChargeCategory category, String type, BigDecimal quantity, String activityId) {
+        byte[] customer = utf8(customerId, "customerId");
+        byte[] warehouse = utf8(warehouseId, "warehouseId");
+        byte[] typeBytes = utf8(type, "type");
+        byte[] id = activityId == null ? new byte[0] : utf8(activityId, "activityId");
+        if (activityDate == null) {
+            throw new IllegalArgumentException("activityDate is required");
+        }
+        if (category == null) {
+            throw new IllegalArgumentException("category is required");
+        }
+        if (quantity == null) {
+            throw new IllegalArgumentException("quantity is required");
+        }
+        if (quantity.scale() < Byte.MIN_VALUE || quantity.scale() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("quantity scale out of range: " + quantity);
+        }
+        byte[] unscaled = quantity.unscaledValue().toByteArray();
+        if (unscaled.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("quantity too large: " + quantity);
+        }
+
+        int payload = Integer.BYTES + 1
+                + Short.BYTES + customer.length
+                + Short.BYTES + warehouse.length
+                + Short.BYTES + typeBytes.length
+                + Short.BYTES + id.length
+                + 1 + 1 + unscaled.length;
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + payload);
+        out.putInt(payload);
+        out.putInt(0);   // CRC, filled in below
+        out.putInt((int) activityDate.toEpochDay());
+        out.put((byte) category.ordinal());
+        out.putShort((short) customer.length).put(customer);
+        out.putShort((short) warehouse.length).put(warehouse);
+        out.putShort((short) typeBytes.length).put(typeBytes);
+        out.putShort((short) id.length).put(id);
+        out.put((byte) quantity.scale());
+        out.put((byte) unscaled.length).put(unscaled);
+
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), HEADER_BYTES, payload);
+        out.putInt(Integer.BYTES, (int) crc.getValue());
+        return out.array();
+    }
+
+    private void recover(Visitor visitor) {
+        int position = 0;
+        while (position + HEADER_BYTES <= capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > capacity) {
+                break;
+            }
+            ByteBuffer payload = buffer.slice(position + HEADER_BYTES, length);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            visitor.visit(position, decode(payload));
+            position += HEADER_BYTES + length;
+            records++;
+        }
+        writePosition = position;
+
+        if (position + Integer.BYTES <= capacity && buffer.getInt(position) != 0) {
+            for (int i = position; i < capacity; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+    }
+
+    private static Entry decode(ByteBuffer in) {
+        LocalDate date = LocalDate.ofEpochDay(in.getInt());
+        ChargeCategory category = CATEGORIES[in.get()];
+        String customerId = readString(in);
+        String warehouseId = readString(in);
+        String type = readString(in);
+        String activityId = readString(in);
+        int scale = in.get();
+        byte[] unscaled = new byte[in.get()];
+        in.get(unscaled);
+        return new Entry(customerId, warehouseId, date, category, type,
+                new BigDecimal(new BigInteger(unscaled), scale), activityId.isEmpty() ? null : activityId);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[Short.toUnsignedInt(in.getShort())];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String value, String field) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(field + " is required");
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException(field + " is too long");
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,24 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Supplies stored activities for server-side billing ({@link BillingRunService}). Billing through the REST API
+ * does not need one: those requests carry their activities.
+ */
+public interface BillingActivitySource {
+
+    /**
+     * Activities a customer incurred at one warehouse within a period.
+     *
+     * @param customerId customer of the rate sheet being billed
+     * @param warehouseId warehouse to bill
+     * @param start period start (inclusive)
+     * @param end period end (inclusive)
+     * @return activities with {@code warehouseId}, {@code category}, {@code type} and {@code quantity} set; empty if none
+     */
+    List<Activity> findActivities(String customerId, String warehouseId, LocalDate start, LocalDate end);
+}
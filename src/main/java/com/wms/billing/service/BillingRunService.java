@@ -0,0 +1,395 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.BillingRun;
+import com.wms.billing.domain.BillingRunPartition;
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.dto.BillingRunPartitionStatus;
+import com.wms.billing.dto.BillingRunRequest;
+import com.wms.billing.dto.BillingRunResponseDTO;
+import com.wms.billing.dto.BillingRunStatus;
+import com.wms.billing.repository.BillingRunPartitionRepository;
+import com.wms.billing.repository.BillingRunRepository;
+import com.wms.billing.repository.InvoiceRepository;
+import com.wms.billing.repository.RateSheetRepository;
+import com.wms.billing.repository.WarehouseRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-side month-end billing.
+ *
+ * <p>A run covers one period and is split into one partition per rate sheet. Partitions are executed in parallel by
+ * {@code billing.runs.concurrency} workers on a bounded pool; each worker claims the next PENDING partition with a
+ * conditional update, so a partition is processed by exactly one worker.</p>
+ *
+ * <p>Within a partition, warehouses are billed in {@code warehouseId} order, {@code billing.runs.batch-size} at a
+ * time. Each batch is rated with {@link InvoiceServiceDrools#rateFinal}, and its invoices are saved together with the
+ * partition checkpoint in one transaction. A crash therefore loses at most the uncommitted batch. On startup, runs
+ * still marked RUNNING have their in-flight partitions put back to PENDING and continue after their checkpoint.
+ * Failed partitions can be retried with {@link #resume(Long)}.</p>
+ *
+ * <p>Activities come from the {@link BillingActivitySource} bean; without one, runs cannot be started. Warehouses
+ * with no activities in the period produce no invoice.</p>
+ *
+ * <p>Assumes a single application instance drives a given run.</p>
+ */
+@Slf4j
+@Service
+public class BillingRunService {
+
+    private static final List<BillingRunPartitionStatus> UNFINISHED =
+            List.of(BillingRunPartitionStatus.PENDING, BillingRunPartitionStatus.RUNNING);
+
+    private final BillingRunRepository runRepository;
+    private final BillingRunPartitionRepository partitionRepository;
+    private final RateSheetRepository rateSheetRepository;
+    private final WarehouseRepository warehouseRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final InvoiceServiceDrools invoiceService;
+    private final ObjectProvider<BillingActivitySource> activitySource;
+    private final TransactionTemplate transactionTemplate;
+    private final int concurrency;
+    private final int batchSize;
+
+    private final ThreadPoolExecutor executor;
+    // Runs this instance is currently driving -> live workers
+    private final Map<Long, AtomicInteger> activeRuns = new ConcurrentHashMap<>();
+
+    private final Counter invoicesCreated;
+    private final Counter partitionsFailed;
+    private final Timer partitionTimer;
+
+    public BillingRunService(BillingRunRepository runRepository,
+                             BillingRunPartitionRepository partitionRepository,
+                             RateSheetRepository rateSheetRepository,
+                             WarehouseRepository warehouseRepository,
+                             InvoiceRepository invoiceRepository,
+                             InvoiceServiceDrools invoiceService,
+                             ObjectProvider<BillingActivitySource> activitySource,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry registry,
+                             @Value("${billing.runs.concurrency:4}") int concurrency,
+                             @Value("${billing.runs.batch-size:20}") int batchSize) {
+        this.runRepository = runRepository;
+        this.partitionRepository = partitionRepository;
+        this.rateSheetRepository = rateSheetRepository;
+        this.warehouseRepository = warehouseRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.invoiceService = invoiceService;
+        this.activitySource = activitySource;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.concurrency = concurrency;
+        this.batchSize = Math.max(1, batchSize);
+
+        AtomicInteger seq = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "billing-run-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        // Queue only holds worker loops (concurrency per active run), not partitions
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), factory);
+
+        this.invoicesCreated = Counter.builder("billing.runs.invoices")
+                .description("Invoices created by billing runs")
+                .register(registry);
+        this.partitionsFailed = Counter.builder("billing.runs.partitions.failed")
+                .description("Billing run partitions that failed")
+                .register(registry);
+        this.partitionTimer = Timer.builder("billing.runs.partition.duration")
+                .description("Time to bill one rate sheet partition")
+                .register(registry);
+        Gauge.builder("billing.runs.active", activeRuns, Map::size)
+                .description("Billing runs being executed by this instance")
+                .register(registry);
+    }
+
+    /**
+     * Create a run with one partition per rate sheet (optionally restricted to some customers) and start it.
+     *
+     * @throws ResponseStatusException 501 if no {@link BillingActivitySource} is configured, 400 for an invalid period
+     */
+    public BillingRun start(BillingRunRequest request) {
+        requireActivitySource();
+        if (request.getPeriodEnd().isBefore(request.getPeriodStart())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "periodEnd must not be before periodStart");
+        }
+
+        BillingRun run = transactionTemplate.execute(status -> {
+            List<RateSheet> rateSheets = request.getCustomerIds() == null || request.getCustomerIds().isEmpty()
+                    ? rateSheetRepository.findAll()
+                    : rateSheetRepository.findByCustomerIdIn(request.getCustomerIds());
+
+            BillingRun created = new BillingRun();
+            created.setPeriodStart(request.getPeriodStart());
+            created.setPeriodEnd(request.getPeriodEnd());
+            created.setStatus(BillingRunStatus.RUNNING);
+            created.setCreatedAt(Instant.now());
+            created.setStartedAt(created.getCreatedAt());
+            runRepository.save(created);
+
+            List<BillingRunPartition> partitions = new ArrayList<>(rateSheets.size());
+            for (RateSheet rateSheet : rateSheets) {
+                BillingRunPartition partition = new BillingRunPartition();
+                partition.setRunId(created.getId());
+                partition.setRateSheetId(rateSheet.getRateSheetId());
+                partition.setCustomerId(rateSheet.getCustomerId());
+                partition.setStatus(BillingRunPartitionStatus.PENDING);
+                partitions.add(partition);
+            }
+            partitionRepository.saveAll(partitions);
+            return created;
+        });
+
+        log.info("Billing run {} created for {}..{}", run.getId(), run.getPeriodStart(), run.getPeriodEnd());
+        launch(run.getId());
+        return run;
+    }
+
+    /**
+     * Retry a run's failed partitions (and any left RUNNING by a crash) from their checkpoints.
+     */
+    public BillingRun resume(Long runId) {
+        requireActivitySource();
+        if (activeRuns.containsKey(runId)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Billing run " + runId + " is already executing");
+        }
+        BillingRun run = transactionTemplate.execute(status -> {
+            BillingRun existing = runRepository.findById(runId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Billing run not found: " + runId));
+            partitionRepository.requeue(runId, List.of(BillingRunPartitionStatus.FAILED, BillingRunPartitionStatus.RUNNING));
+            existing.setStatus(BillingRunStatus.RUNNING);
+            existing.setStartedAt(Instant.now());
+            existing.setFinishedAt(null);
+            return runRepository.save(existing);
+        });
+        launch(runId);
+        return run;
+    }
+
+    public Optional<BillingRunResponseDTO> progress(Long runId) {
+        return runRepository.findById(runId).map(this::toProgress);
+    }
+
+    /** Pick up runs interrupted by a shutdown or crash. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedRuns() {
+        if (activitySource.getIfAvailable() == null) {
+            return;
+        }
+        for (BillingRun run : runRepository.findByStatus(BillingRunStatus.RUNNING)) {
+            transactionTemplate.executeWithoutResult(status ->
+                    partitionRepository.requeue(run.getId(), List.of(BillingRunPartitionStatus.RUNNING)));
+            log.info("Resuming interrupted billing run {}", run.getId());
+            launch(run.getId());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void launch(Long runId) {
+        AtomicInteger workers = new AtomicInteger(concurrency);
+        if (activeRuns.putIfAbsent(runId, workers) != null) {
+            return;
+        }
+        for (int i = 0; i < concurrency; i++) {
+            executor.execute(() -> work(runId, workers));
+        }
+    }
+
+    private void work(Long runId, AtomicInteger workers) {
+        BillingActivitySource source = activitySource.getObject();
+        try {
+            BillingRun run = runRepository.findById(runId).orElseThrow();
+            Optional<BillingRunPartition> next;
+            while (!Thread.currentThread().isInterrupted() && (next = claimNext(runId)).isPresent()) {
+                process(run, next.get(), source);
+            }
+        } catch (RuntimeException e) {
+            log.error("Billing run {} worker stopped", runId, e);
+        } finally {
+            if (workers.decrementAndGet() == 0) {
+                activeRuns.remove(runId);
+                closeIfDone(runId);
+            }
+        }
+    }
+
+    private Optional<BillingRunPartition> claimNext(Long runId) {
+        while (true) {
+            Optional<BillingRunPartition> candidate =
+                    partitionRepository.findFirstByRunIdAndStatusOrderByIdAsc(runId, BillingRunPartitionStatus.PENDING);
+            if (candidate.isEmpty()) {
+                return Optional.empty();
+            }
+            Integer claimed = transactionTemplate.execute(status ->
+                    partitionRepository.claim(candidate.get().getId(), Instant.now()));
+            if (claimed != null && claimed == 1) {
+                return candidate;
+            }
+            // Another worker got it first; look again
+        }
+    }
+
+    private void process(BillingRun run, BillingRunPartition partition, BillingActivitySource source) {
+        Timer.Sample sample = Timer.start();
+        try {
+            List<String> warehouseIds = warehouseRepository.findWarehouseIdsByRateSheetId(partition.getRateSheetId());
+            int from = resumeIndex(warehouseIds, partition.getLastWarehouseId());
+
+            for (int i = from; i < warehouseIds.size(); i += batchSize) {
+                List<String> batch = warehouseIds.subList(i, Math.min(i + batchSize, warehouseIds.size()));
+                int created = billBatch(run, partition, batch, source);
+                invoicesCreated.increment(created);
+            }
+
+            transactionTemplate.executeWithoutResult(status -> partitionRepository.finish(
+                    partition.getId(), BillingRunPartitionStatus.COMPLETED, Instant.now(), null));
+        } catch (RuntimeException e) {
+            log.warn("Billing run {} partition {} (rateSheetId={}) failed", run.getId(), partition.getId(),
+                    partition.getRateSheetId(), e);
+            partitionsFailed.increment();
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            transactionTemplate.executeWithoutResult(status -> partitionRepository.finish(
+                    partition.getId(), BillingRunPartitionStatus.FAILED, Instant.now(),
+                    error.length() > 1000 ? error.substring(0, 1000) : error));
+        } finally {
+            sample.stop(partitionTimer);
+        }
+    }
+
+    /** Rate one batch of warehouses and commit its invoices together with the checkpoint. */
+    private int billBatch(BillingRun run, BillingRunPartition partition, List<String> warehouseIds,
+                          BillingActivitySource source) {
+        Integer created = transactionTemplate.execute(status -> {
+            List<Invoice> invoices = new ArrayList<>(warehouseIds.size());
+            for (String warehouseId : warehouseIds) {
+                List<Activity> activities = source.findActivities(
+                        partition.getCustomerId(), warehouseId, run.getPeriodStart(), run.getPeriodEnd());
+                if (activities.isEmpty()) {
+                    continue;
+                }
+                invoices.add(invoiceService.rateFinal(partition.getRateSheetId(), warehouseId,
+                        run.getPeriodStart(), run.getPeriodEnd(), activities));
+            }
+            invoiceRepository.saveAll(invoices);
+            partitionRepository.checkpoint(partition.getId(), warehouseIds.get(warehouseIds.size() - 1),
+                    warehouseIds.size(), invoices.size());
+            return invoices.size();
+        });
+        return created != null ? created : 0;
+    }
+
+    /**
+     * Index after the checkpointed warehouse. Found by equality: the list is in database collation order, which
+     * need not agree with {@link String#compareTo}.
+     *
+     * @throws IllegalStateException if the checkpointed warehouse has left the rate sheet, as the position to
+     *                               resume from is then unknown
+     */
+    private static int resumeIndex(List<String> warehouseIds, String lastWarehouseId) {
+        if (lastWarehouseId == null) {
+            return 0;
+        }
+        int last = warehouseIds.indexOf(lastWarehouseId);
+        if (last < 0) {
+            throw new IllegalStateException("Checkpointed warehouse " + lastWarehouseId
+                    + " is no longer on the rate sheet; cannot resume the partition");
+        }
+        return last + 1;
+    }
+
+    private void closeIfDone(Long runId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (partitionRepository.countByRunIdAndStatusIn(runId, UNFINISHED) > 0) {
+                return;
+            }
+            boolean anyFailed = partitionRepository.countByRunIdAndStatusIn(
+                    runId, List.of(BillingRunPartitionStatus.FAILED)) > 0;
+            BillingRunStatus result = anyFailed ? BillingRunStatus.COMPLETED_WITH_ERRORS : BillingRunStatus.COMPLETED;
+            if (runRepository.finish(runId, result, Instant.now()) == 1) {
+                log.info("Billing run {} finished: {}", runId, result);
+            }
+        });
+    }
+
+    private void requireActivitySource() {
+        if (activitySource.getIfAvailable() == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED,
+                    "Billing runs need a BillingActivitySource; none is configured");
+        }
+    }
+
+    private BillingRunResponseDTO toProgress(BillingRun run) {
+        BillingRunResponseDTO dto = BillingRunResponseDTO.builder()
+                .runId(run.getId())
+                .periodStart(run.getPeriodStart())
+                .periodEnd(run.getPeriodEnd())
+                .status(run.getStatus())
+                .createdAt(run.getCreatedAt())
+                .finishedAt(run.getFinishedAt())
+                .build();
+
+        long total = 0;
+        for (Object[] row : partitionRepository.progress(run.getId())) {
+            BillingRunPartitionStatus status = (BillingRunPartitionStatus) row[0];
+            long count = ((Number) row[1]).longValue();
+            total += count;
+            dto.setWarehousesProcessed(dto.getWarehousesProcessed() + ((Number) row[2]).longValue());
+            dto.setInvoicesCreated(dto.getInvoicesCreated() + ((Number) row[3]).longValue());
+            switch (status) {
+                case PENDING -> dto.setPartitionsPending(count);
+                case RUNNING -> dto.setPartitionsRunning(count);
+                case COMPLETED -> dto.setPartitionsCompleted(count);
+                case FAILED -> dto.setPartitionsFailed(count);
+            }
+        }
+        dto.setPartitionsTotal(total);
+
+        if (run.getStartedAt() != null) {
+            Instant until = run.getFinishedAt() != null ? run.getFinishedAt() : Instant.now();
+            double seconds = Math.max(Duration.between(run.getStartedAt(), until).toMillis(), 1) / 1000d;
+            dto.setInvoicesPerSecond(dto.getInvoicesCreated() / seconds);
+        }
+
+        if (dto.getPartitionsFailed() > 0) {
+            dto.setFailures(partitionRepository.findByRunIdAndStatus(run.getId(), BillingRunPartitionStatus.FAILED)
+                    .stream()
+                    .map(p -> new BillingRunResponseDTO.FailedPartition(p.getRateSheetId(), p.getCustomerId(), p.getLastError()))
+                    .toList());
+        }
+        return dto;
+    }
+}
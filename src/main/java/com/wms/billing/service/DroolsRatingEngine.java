@@ -0,0 +1,76 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.InvoiceLine;
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.rating.RatingEngine;
+import lombok.RequiredArgsConstructor;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieSession;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link RatingEngine} that fires {@code billing_rules.drl} in a {@code billingKS} session. Emits one line per
+ * (activity, matching charge) and sets each priced activity's amount.
+ *
+ * <p>Large requests are split across sessions by {@link ParallelRatingExecutor} when it is enabled.</p>
+ */
+@Component
+@RequiredArgsConstructor
+public class DroolsRatingEngine implements RatingEngine {
+
+    public static final String NAME = "drools";
+
+    private final KieContainer kieContainer;
+    private final InvoiceStageTimer stageTimer;
+    private final DroolsRuleProfiler ruleProfiler;
+    private final ParallelRatingExecutor parallelRating;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<InvoiceLine> rate(RateSheet rateSheet,
+                                  String warehouseId,
+                                  LocalDate start,
+                                  LocalDate end,
+                                  List<Activity> activities) {
+        if (!parallelRating.shouldSplit(activities.size())) {
+            return fireRules(rateSheet, activities);
+        }
+        // Chunks share the rate sheet read-only; each rule firing only touches its own activity
+        return stageTimer.time("fire_rules_parallel", () -> {
+            List<InvoiceLine> merged = new ArrayList<>();
+            parallelRating.mapChunks(activities, chunk -> fireRules(rateSheet, chunk)).forEach(merged::addAll);
+            return merged;
+        });
+    }
+
+    /** Rates {@code activities} in one KIE session and returns the lines the rules emitted. */
+    private List<InvoiceLine> fireRules(RateSheet rateSheet, List<Activity> activities) {
+        List<InvoiceLine> invoiceLines = new ArrayList<>();
+        KieSession kieSession = stageTimer.time("session_create", () -> {
+            KieSession session = kieContainer.newKieSession("billingKS");
+            ruleProfiler.attach(session);
+            session.setGlobal("invoiceLines", invoiceLines);
+
+            // Insert only the aggregate root and activities. Rules will traverse nested collections.
+            session.insert(rateSheet);
+            session.insert(rateSheet.getWarehouses());
+            activities.forEach(session::insert);
+            return session;
+        });
+        try {
+            stageTimer.run("fire_rules", kieSession::fireAllRules);
+        } finally {
+            kieSession.dispose();
+        }
+        return invoiceLines;
+    }
+}
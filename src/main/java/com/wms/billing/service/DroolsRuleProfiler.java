@@ -0,0 +1,182 @@
+package com.wms.billing.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.event.rule.MatchCancelledEvent;
+import org.kie.api.event.rule.MatchCreatedEvent;
+import org.kie.api.runtime.KieSession;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-rule profiling of the billing KIE sessions.
+ *
+ * <p>When enabled ({@code billing.drools.profiler.enabled}), a fraction of sessions
+ * ({@code billing.drools.profiler.sample-rate}, 0..1) get an agenda listener that counts, per rule, matches
+ * created, matches cancelled and firings, and measures the time spent in each consequence (RHS). Sessions that are
+ * not sampled, and all sessions while the profiler is off, get no listener and pay nothing beyond one random draw.</p>
+ *
+ * <p>Counters are {@link LongAdder}s shared across sessions, so concurrent rating threads do not contend on a
+ * lock. Results are exposed at {@code /actuator/droolsrules} and as the meters
+ * {@code billing.drools.rule.matches{rule,outcome}}, {@code billing.drools.rule.fired{rule}} and
+ * {@code billing.drools.rule.rhs{rule}}. Counts are for sampled sessions only; scale by
+ * {@link #sampledSessions()} relative to total sessions to estimate totals.</p>
+ */
+@Component
+public class DroolsRuleProfiler {
+
+    /** Lock-free aggregate for one rule. */
+    public static final class RuleStats {
+        private final LongAdder matchesCreated = new LongAdder();
+        private final LongAdder matchesCancelled = new LongAdder();
+        private final LongAdder fired = new LongAdder();
+        private final LongAdder rhsNanos = new LongAdder();
+        private final LongAccumulator maxRhsNanos = new LongAccumulator(Math::max, 0);
+
+        public long matchesCreated() {
+            return matchesCreated.sum();
+        }
+
+        public long matchesCancelled() {
+            return matchesCancelled.sum();
+        }
+
+        public long fired() {
+            return fired.sum();
+        }
+
+        public long rhsNanos() {
+            return rhsNanos.sum();
+        }
+
+        public long maxRhsNanos() {
+            return maxRhsNanos.get();
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final double sampleRate;
+
+    private final ConcurrentMap<String, RuleStats> rules = new ConcurrentHashMap<>();
+    private final LongAdder sampledSessions = new LongAdder();
+
+    public DroolsRuleProfiler(MeterRegistry registry,
+                              @Value("${billing.drools.profiler.enabled:false}") boolean enabled,
+                              @Value("${billing.drools.profiler.sample-rate:1.0}") double sampleRate) {
+        this.registry = registry;
+        this.enabled = enabled;
+        this.sampleRate = Math.max(0.0, Math.min(1.0, sampleRate));
+        FunctionCounter.builder("billing.drools.sessions.sampled", sampledSessions, LongAdder::sum)
+                .description("KIE sessions profiled per rule")
+                .register(registry);
+    }
+
+    /**
+     * Attach the profiling listener to a new session if the profiler is on and the session is sampled.
+     *
+     * @return whether the session is being profiled
+     */
+    public boolean attach(KieSession session) {
+        if (!enabled) {
+            return false;
+        }
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return false;
+        }
+        sampledSessions.increment();
+        session.addEventListener(new Listener());
+        return true;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public long sampledSessions() {
+        return sampledSessions.sum();
+    }
+
+    /** Per-rule statistics, most expensive consequence time first. */
+    public Map<String, RuleStats> snapshot() {
+        Map<String, RuleStats> sorted = new LinkedHashMap<>();
+        rules.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, RuleStats> e) -> e.getValue().rhsNanos()).reversed())
+                .forEach(e -> sorted.put(e.getKey(), e.getValue()));
+        return sorted;
+    }
+
+    private RuleStats stats(String rule) {
+        RuleStats existing = rules.get(rule);
+        return existing != null ? existing : rules.computeIfAbsent(rule, this::register);
+    }
+
+    private RuleStats register(String rule) {
+        RuleStats stats = new RuleStats();
+        FunctionCounter.builder("billing.drools.rule.matches", stats, RuleStats::matchesCreated)
+                .description("Rule matches (activations) created")
+                .tags("rule", rule, "outcome", "created")
+                .register(registry);
+        FunctionCounter.builder("billing.drools.rule.matches", stats, RuleStats::matchesCancelled)
+                .description("Rule matches cancelled before firing")
+                .tags("rule", rule, "outcome", "cancelled")
+                .register(registry);
+        FunctionCounter.builder("billing.drools.rule.fired", stats, RuleStats::fired)
+                .description("Rule firings")
+                .tag("rule", rule)
+                .register(registry);
+        FunctionTimer.builder("billing.drools.rule.rhs", stats, RuleStats::fired, RuleStats::rhsNanos, TimeUnit.NANOSECONDS)
+                .description("Time spent in rule consequences")
+                .tag("rule", rule)
+                .register(registry);
+        return stats;
+    }
+
+    /** One per session; fire callbacks of a session never nest, so a single start timestamp suffices. */
+    private final class Listener extends DefaultAgendaEventListener {
+
+        private long firingStarted;
+
+        @Override
+        public void matchCreated(MatchCreatedEvent event) {
+            stats(event.getMatch().getRule().getName()).matchesCreated.increment();
+        }
+
+        @Override
+        public void matchCancelled(MatchCancelledEvent event) {
+            stats(event.getMatch().getRule().getName()).matchesCancelled.increment();
+        }
+
+        @Override
+        public void beforeMatchFired(BeforeMatchFiredEvent event) {
+            firingStarted = System.nanoTime();
+        }
+
+        @Override
+        public void afterMatchFired(AfterMatchFiredEvent event) {
+            long elapsed = System.nanoTime() - firingStarted;
+            RuleStats stats = stats(event.getMatch().getRule().getName());
+            stats.fired.increment();
+            stats.rhsNanos.add(elapsed);
+            stats.maxRhsNanos.accumulate(elapsed);
+        }
+    }
+}
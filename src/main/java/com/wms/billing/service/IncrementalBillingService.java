@@ -0,0 +1,183 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.BillingAccumulator;
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.dto.ChargeCategory;
+import com.wms.billing.repository.BillingAccumulatorRepository;
+import com.wms.billing.repository.RateSheetRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Incremental billing: activities are posted as they happen and added to running per-month accumulators
+ * ({@link BillingAccumulator}), so rating a month only has to read a handful of rows.
+ *
+ * <p>Postings increment the accumulator rows in the database, so concurrent postings (from any instance) to the
+ * same key serialise on the row lock and nothing is lost. A batch is applied in one transaction in key order,
+ * which keeps concurrent batches from deadlocking. When two postings race to create the same row, the loser's
+ * transaction fails on the unique key and is retried once, by which time the row exists. The same retry covers
+ * an activity id claimed concurrently by another posting.</p>
+ *
+ * <p>At period end the accumulated quantities are rated through the same Drools rules as a full activity list,
+ * one activity per (category, type). This relies on the rules charging rate × quantity, which holds for every
+ * per-unit charge in the rule set; each emitted line therefore carries the period's total quantity.</p>
+ */
+@Slf4j
+@Service
+public class IncrementalBillingService {
+
+    private record Key(ChargeCategory category, String type, LocalDate month) {
+    }
+
+    private static final Comparator<Key> KEY_ORDER = Comparator
+            .comparing(Key::category)
+            .thenComparing(Key::type)
+            .thenComparing(Key::month);
+
+    private static final class Sum {
+        BigDecimal quantity = BigDecimal.ZERO;
+        long count;
+    }
+
+    private final BillingAccumulatorRepository accumulatorRepository;
+    private final RateSheetRepository rateSheetRepository;
+    private final InvoiceServiceDrools invoiceService;
+    private final ActivityDeduplicator deduplicator;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter posted;
+
+    public IncrementalBillingService(BillingAccumulatorRepository accumulatorRepository,
+                                     RateSheetRepository rateSheetRepository,
+                                     InvoiceServiceDrools invoiceService,
+                                     ActivityDeduplicator deduplicator,
+                                     PlatformTransactionManager transactionManager,
+                                     MeterRegistry registry) {
+        this.accumulatorRepository = accumulatorRepository;
+        this.rateSheetRepository = rateSheetRepository;
+        this.invoiceService = invoiceService;
+        this.deduplicator = deduplicator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.posted = Counter.builder("billing.accumulators.activities")
+                .description("Activities posted to incremental billing accumulators")
+                .register(registry);
+    }
+
+    /**
+     * Add activities to their month's accumulators. Activities whose {@code activityId} was already posted to
+     * this rate sheet are skipped (see {@link ActivityDeduplicator}); ids are recorded in the same transaction
+     * as the increments.
+     *
+     * @return number of activities posted
+     * @throws IllegalArgumentException if an activity has no date, category, type or quantity
+     */
+    public int post(Long rateSheetId, String warehouseId, List<Activity> activities) {
+        if (!rateSheetRepository.existsById(rateSheetId)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "rateSheetId not found: " + rateSheetId);
+        }
+        for (Activity a : activities) {
+            if (a.getActivityDate() == null || a.getCategory() == null || a.getType() == null || a.getQuantity() == null) {
+                throw new IllegalArgumentException("Incremental activities need activityDate, category, type and quantity");
+            }
+        }
+
+        int count;
+        try {
+            count = apply(rateSheetId, warehouseId, activities, false);
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Concurrent posting for rateSheetId={} warehouseId={}; retrying", rateSheetId, warehouseId);
+            count = apply(rateSheetId, warehouseId, activities, true);
+        }
+        posted.increment(count);
+        return count;
+    }
+
+    /**
+     * Rate whole months from their accumulators.
+     *
+     * @param start first day of a month
+     * @param end last day of a month, not before {@code start}
+     * @param preview whether to only preview (true) or persist the final invoice (false)
+     */
+    public Invoice invoice(Long rateSheetId, String warehouseId, LocalDate start, LocalDate end, boolean preview) {
+        if (start.getDayOfMonth() != 1 || !end.equals(YearMonth.from(end).atEndOfMonth()) || end.isBefore(start)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Incremental invoices cover whole months: periodStart must be a first and periodEnd a last day of month");
+        }
+
+        List<BillingAccumulator> rows = accumulatorRepository
+                .findByRateSheetIdAndWarehouseIdAndPeriodMonthBetweenOrderByCategoryAscTypeAsc(
+                        rateSheetId, warehouseId, start, end.withDayOfMonth(1));
+
+        // One activity per (category, type) across the months of the period
+        Map<String, Activity> merged = new LinkedHashMap<>();
+        for (BillingAccumulator row : rows) {
+            Activity activity = merged.computeIfAbsent(row.getCategory() + "|" + row.getType(), k -> {
+                Activity a = new Activity();
+                a.setWarehouseId(warehouseId);
+                a.setCategory(row.getCategory());
+                a.setType(row.getType());
+                a.setQuantity(BigDecimal.ZERO);
+                return a;
+            });
+            activity.setQuantity(activity.getQuantity().add(row.getQuantity()));
+        }
+
+        return invoiceService.generateInvoice(rateSheetId, warehouseId, start, end,
+                new ArrayList<>(merged.values()), preview);
+    }
+
+    private int apply(Long rateSheetId, String warehouseId, List<Activity> activities, boolean exactDedup) {
+        Integer count = transactionTemplate.execute(status -> {
+            List<Activity> fresh = deduplicator.claim("rate-sheet:" + rateSheetId, activities, exactDedup);
+
+            TreeMap<Key, Sum> sums = new TreeMap<>(KEY_ORDER);
+            for (Activity a : fresh) {
+                Key key = new Key(a.getCategory(), a.getType(), a.getActivityDate().withDayOfMonth(1));
+                Sum sum = sums.computeIfAbsent(key, k -> new Sum());
+                sum.quantity = sum.quantity.add(a.getQuantity());
+                sum.count++;
+            }
+
+            Instant now = Instant.now();
+            for (Map.Entry<Key, Sum> e : sums.entrySet()) {
+                Key key = e.getKey();
+                Sum sum = e.getValue();
+                int updated = accumulatorRepository.increment(rateSheetId, warehouseId, key.category(), key.type(),
+                        key.month(), sum.quantity, sum.count, now);
+                if (updated == 0) {
+                    BillingAccumulator row = new BillingAccumulator();
+                    row.setRateSheetId(rateSheetId);
+                    row.setWarehouseId(warehouseId);
+                    row.setCategory(key.category());
+                    row.setType(key.type());
+                    row.setPeriodMonth(key.month());
+                    row.setQuantity(sum.quantity);
+                    row.setActivityCount(sum.count);
+                    row.setUpdatedAt(now);
+                    accumulatorRepository.saveAndFlush(row);
+                }
+            }
+            return fresh.size();
+        });
+        return count != null ? count : 0;
+    }
+}
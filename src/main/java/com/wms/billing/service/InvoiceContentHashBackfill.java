@@ -0,0 +1,92 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.helper.InvoiceContentHasher;
+import com.wms.billing.repository.InvoiceLineJdbcRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Records the content hash of FINAL invoices saved before content hashes were recorded, so the PDF render cache
+ * can key them without rehashing their lines on every download.
+ *
+ * <p>Runs {@code billing.invoice.content-hash-backfill.initial-delay} after startup and then every
+ * {@code billing.invoice.content-hash-backfill.interval} until a pass finds nothing left; invoices finalized since
+ * always carry a hash, so later runs return at once. Invoices are read in id order,
+ * {@code billing.invoice.content-hash-backfill.batch-size} ids at a time, and hashed from their stored lines
+ * ({@code billing.pdf.large-invoice.page-size} per page). A hash is only written where none is stored yet.</p>
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "billing.invoice.content-hash-backfill.enabled", havingValue = "true",
+        matchIfMissing = true)
+public class InvoiceContentHashBackfill {
+
+    private final InvoiceLineJdbcRepository invoiceLineRepository;
+    private final int batchSize;
+    private final int linePageSize;
+
+    private volatile boolean complete;
+
+    public InvoiceContentHashBackfill(InvoiceLineJdbcRepository invoiceLineRepository,
+                                      @Value("${billing.invoice.content-hash-backfill.batch-size:500}") int batchSize,
+                                      @Value("${billing.pdf.large-invoice.page-size:1000}") int linePageSize) {
+        if (batchSize < 1 || linePageSize < 1) {
+            throw new IllegalArgumentException("billing.invoice.content-hash-backfill.batch-size and "
+                    + "billing.pdf.large-invoice.page-size must be positive");
+        }
+        this.invoiceLineRepository = invoiceLineRepository;
+        this.batchSize = batchSize;
+        this.linePageSize = linePageSize;
+    }
+
+    @Scheduled(initialDelayString = "${billing.invoice.content-hash-backfill.initial-delay:PT1M}",
+            fixedDelayString = "${billing.invoice.content-hash-backfill.interval:PT1H}")
+    public void backfill() {
+        if (complete) {
+            return;
+        }
+        long started = System.nanoTime();
+        int hashed = 0;
+        int failed = 0;
+        long afterId = 0;
+        List<Long> ids;
+        do {
+            ids = invoiceLineRepository.findUnhashedFinalIds(afterId, batchSize);
+            for (Long invoiceId : ids) {
+                try {
+                    if (hash(invoiceId)) {
+                        hashed++;
+                    }
+                } catch (RuntimeException e) {
+                    failed++;
+                    log.warn("Could not backfill the content hash of invoice {}", invoiceId, e);
+                }
+                afterId = invoiceId;
+            }
+        } while (ids.size() == batchSize);
+
+        if (hashed > 0 || failed > 0) {
+            log.info("Backfilled content hashes of {} FINAL invoices ({} failed) in {} ms", hashed, failed,
+                    (System.nanoTime() - started) / 1_000_000);
+        }
+        // Failed invoices are retried on the next run
+        complete = failed == 0;
+    }
+
+    private boolean hash(Long invoiceId) {
+        Optional<Invoice> header = invoiceLineRepository.findHeader(invoiceId);
+        if (header.isEmpty()) {
+            return false;
+        }
+        String contentHash = InvoiceContentHasher.hash(header.get(),
+                invoiceLineRepository.iterateLines(invoiceId, linePageSize));
+        return invoiceLineRepository.saveContentHash(invoiceId, contentHash);
+    }
+}
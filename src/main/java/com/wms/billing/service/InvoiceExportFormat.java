@@ -0,0 +1,97 @@
+package com.wms.billing.service;
+
+import org.springframework.http.MediaType;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Machine-readable invoice export formats, selected by the request's {@code Accept} header.
+ */
+public enum InvoiceExportFormat {
+    CSV("text/csv", "csv"),
+    JSON_LINES("application/x-ndjson", "jsonl"),
+    XLSX("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx");
+
+    public static final String CSV_VALUE = "text/csv";
+    public static final String JSON_LINES_VALUE = "application/x-ndjson";
+    public static final String XLSX_VALUE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private final MediaType mediaType;
+    private final String extension;
+
+    InvoiceExportFormat(String mediaType, String extension) {
+        this.mediaType = MediaType.parseMediaType(mediaType);
+        this.extension = extension;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Pick the export format a request asks for. An export format only matches an {@code Accept} entry naming its
+     * media type exactly; wildcards such as {@code text/*} never select one. The highest quality wins, and entries
+     * with {@code q=0} are not acceptable.
+     *
+     * @param accept raw header value, may be null
+     * @return the most preferred acceptable export format, or empty if none is acceptable
+     */
+    public static Optional<InvoiceExportFormat> fromAccept(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return Optional.empty();
+        }
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        InvoiceExportFormat best = null;
+        double bestQuality = 0.0;
+        for (InvoiceExportFormat format : values()) {
+            double quality = quality(accepted, format.mediaType, true);
+            if (quality > bestQuality) {
+                best = format;
+                bestQuality = quality;
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    /**
+     * As {@link #fromAccept(String)}, for an endpoint that also produces other representations (JSON by default):
+     * an export format is only picked when the header ranks it strictly above each of them, wildcards included.
+     *
+     * @param accept       raw header value, may be null
+     * @param alternatives the other media types the endpoint produces
+     * @return the export format to write, or empty to produce one of the alternatives
+     */
+    public static Optional<InvoiceExportFormat> preferredOver(String accept, List<MediaType> alternatives) {
+        Optional<InvoiceExportFormat> format = fromAccept(accept);
+        if (format.isEmpty()) {
+            return format;
+        }
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        double exportQuality = quality(accepted, format.get().mediaType, true);
+        for (MediaType alternative : alternatives) {
+            if (quality(accepted, alternative, false) >= exportQuality) {
+                return Optional.empty();
+            }
+        }
+        return format;
+    }
+
+    /** Quality the {@code Accept} entries give {@code type}: that of the most specific entry including it, else 0. */
+    private static double quality(List<MediaType> accepted, MediaType type, boolean exactOnly) {
+        double quality = 0.0;
+        int specificity = 0;
+        for (MediaType range : accepted) {
+            int rangeSpecificity = range.isWildcardType() ? 1 : range.isWildcardSubtype() ? 2 : 3;
+            if (rangeSpecificity > specificity && (!exactOnly || rangeSpecificity == 3) && range.includes(type)) {
+                specificity = rangeSpecificity;
+                quality = range.getQualityValue();
+            }
+        }
+        return quality;
+    }
+}
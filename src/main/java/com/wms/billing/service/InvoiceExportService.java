@@ -0,0 +1,220 @@
+package com.wms.billing.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.domain.InvoiceLine;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Writes an {@link Invoice} and its {@link InvoiceLine}s as CSV, JSON lines or XLSX.
+ *
+ * <p>All writers consume lines from an iterator and write them out as they go, so an invoice can be
+ * exported straight from a paged cursor without holding its lines in memory. XLSX uses POI's
+ * {@link SXSSFWorkbook}, which keeps only a window of rows in memory and flushes the rest to a temp file.</p>
+ *
+ * <p>Layouts:</p>
+ * <ul>
+ *   <li><b>CSV</b> – one row per line; invoice header columns are repeated on each row so the file can be loaded as a single table.</li>
+ *   <li><b>JSON lines</b> – first record {@code {"record":"invoice",...}}, then one {@code {"record":"line",...}} per line.</li>
+ *   <li><b>XLSX</b> – a single sheet with the same columns as CSV.</li>
+ * </ul>
+ *
+ * <p>Decimals are never rounded. In XLSX a decimal is a numeric cell only if it round-trips through a double (at
+ * most {@value #MAX_EXACT_DIGITS} significant digits), formatted with its own scale and at least two decimals for
+ * {@code amount}; a longer one is written as text. Text values starting with {@code = + - @}, tab or carriage
+ * return are prefixed with {@code '} in CSV and XLSX, so a spreadsheet never evaluates them as a formula.</p>
+ */
+@Service
+public class InvoiceExportService {
+
+    private static final String[] COLUMNS = {
+            "invoice_id", "rate_sheet_id", "customer_id", "warehouse_id", "period_start", "period_end",
+            "status", "line_no", "description", "quantity", "rate", "amount"
+    };
+    private static final int AMOUNT_COLUMN = COLUMNS.length - 1;
+
+    // Significant digits a double round-trips exactly
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private final ObjectMapper objectMapper;
+    private final int xlsxRowWindow;
+
+    public InvoiceExportService(ObjectMapper objectMapper,
+                                @Value("${billing.export.xlsx.row-window:500}") int xlsxRowWindow) {
+        this.objectMapper = objectMapper;
+        this.xlsxRowWindow = xlsxRowWindow;
+    }
+
+    /**
+     * Write the invoice in the requested format. {@code out} is flushed but not closed.
+     */
+    public void write(InvoiceExportFormat format, Invoice header, Iterator<InvoiceLine> lines, OutputStream out) throws IOException {
+        switch (format) {
+            case CSV -> writeCsv(header, lines, out);
+            case JSON_LINES -> writeJsonLines(header, lines, out);
+            case XLSX -> writeXlsx(header, lines, out);
+        }
+    }
+
+    private void writeCsv(Invoice header, Iterator<InvoiceLine> lines, OutputStream out) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        w.write(String.join(",", COLUMNS));
+        w.write("\r\n");
+        long lineNo = 0;
+        while (lines.hasNext()) {
+            Object[] row = row(header, ++lineNo, lines.next());
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    w.write(',');
+                }
+                w.write(csvField(row[i]));
+            }
+            w.write("\r\n");
+        }
+        w.flush();
+    }
+
+    private void writeJsonLines(Invoice header, Iterator<InvoiceLine> lines, OutputStream out) throws IOException {
+        JsonGenerator gen = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        gen.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+
+        Map<String, Object> invoiceRecord = new LinkedHashMap<>();
+        invoiceRecord.put("record", "invoice");
+        invoiceRecord.put("id", header.getId());
+        invoiceRecord.put("rateSheetId", header.getRateSheetId());
+        invoiceRecord.put("customerId", header.getCustomerId());
+        invoiceRecord.put("warehouseId", header.getWarehouseId());
+        invoiceRecord.put("periodStart", header.getPeriodStart());
+        invoiceRecord.put("periodEnd", header.getPeriodEnd());
+        invoiceRecord.put("totalAmount", header.getTotalAmount());
+        invoiceRecord.put("status", header.getStatus());
+        gen.writeObject(invoiceRecord);
+
+        long lineNo = 0;
+        while (lines.hasNext()) {
+            InvoiceLine line = lines.next();
+            gen.writeStartObject();
+            gen.writeStringField("record", "line");
+            gen.writeNumberField("lineNo", ++lineNo);
+            gen.writeStringField("description", line.getDescription());
+            writeDecimal(gen, "quantity", line.getQuantity());
+            writeDecimal(gen, "rate", line.getRate());
+            writeDecimal(gen, "amount", line.getAmount());
+            gen.writeEndObject();
+        }
+        gen.writeRaw('\n');
+        gen.flush();
+    }
+
+    private void writeXlsx(Invoice header, Iterator<InvoiceLine> lines, OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(xlsxRowWindow);
+        try {
+            Sheet sheet = workbook.createSheet("Invoice");
+            Row headerRow = sheet.createRow(0);
+            for (int i = 0; i < COLUMNS.length; i++) {
+                headerRow.createCell(i).setCellValue(COLUMNS[i]);
+            }
+            Map<Integer, CellStyle> decimalStyles = new HashMap<>();
+            int rowIndex = 0;
+            while (lines.hasNext()) {
+                Object[] values = row(header, rowIndex + 1, lines.next());
+                Row row = sheet.createRow(++rowIndex);
+                for (int i = 0; i < values.length; i++) {
+                    Object value = values[i];
+                    if (value == null) {
+                        continue;
+                    }
+                    Cell cell = row.createCell(i);
+                    if (value instanceof BigDecimal bd) {
+                        writeDecimal(workbook, decimalStyles, cell, bd, i == AMOUNT_COLUMN ? 2 : 0);
+                    } else if (value instanceof Number n) {
+                        cell.setCellValue(n.doubleValue());
+                    } else {
+                        cell.setCellValue(neutralize(value.toString()));
+                    }
+                }
+            }
+            workbook.write(out);
+            out.flush();
+        } finally {
+            workbook.dispose(); // delete the temp files backing flushed rows
+            workbook.close();
+        }
+    }
+
+    private static Object[] row(Invoice header, long lineNo, InvoiceLine line) {
+        return new Object[]{
+                header.getId(), header.getRateSheetId(), header.getCustomerId(), header.getWarehouseId(),
+                header.getPeriodStart(), header.getPeriodEnd(), header.getStatus(), lineNo,
+                line.getDescription(), line.getQuantity(), line.getRate(), line.getAmount()
+        };
+    }
+
+    /** Numeric cell with at least {@code minScale} decimals shown if the value round-trips a double, else text. */
+    private static void writeDecimal(SXSSFWorkbook workbook, Map<Integer, CellStyle> styles, Cell cell,
+                                     BigDecimal value, int minScale) {
+        if (value.stripTrailingZeros().precision() > MAX_EXACT_DIGITS) {
+            cell.setCellValue(value.toPlainString());
+            return;
+        }
+        int scale = Math.max(minScale, Math.max(0, value.scale()));
+        CellStyle style = styles.computeIfAbsent(scale, sc -> {
+            CellStyle created = workbook.createCellStyle();
+            created.setDataFormat(workbook.createDataFormat().getFormat(sc == 0 ? "0" : "0." + "0".repeat(sc)));
+            return created;
+        });
+        cell.setCellValue(value.doubleValue());
+        cell.setCellStyle(style);
+    }
+
+    private static void writeDecimal(JsonGenerator gen, String field, BigDecimal value) throws IOException {
+        if (value == null) {
+            gen.writeNullField(field);
+        } else {
+            gen.writeNumberField(field, value);
+        }
+    }
+
+    private static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String s = value instanceof BigDecimal bd ? bd.toPlainString()
+                : value instanceof String text ? neutralize(text) : Objects.toString(value);
+        if (s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) {
+            return '"' + s.replace("\"", "\"\"") + '"';
+        }
+        return s;
+    }
+
+    /** Text a spreadsheet would read as a formula, prefixed with {@code '} so it stays text. */
+    private static String neutralize(String text) {
+        if (!text.isEmpty() && "=+-@\t\r".indexOf(text.charAt(0)) >= 0) {
+            return "'" + text;
+        }
+        return text;
+    }
+}
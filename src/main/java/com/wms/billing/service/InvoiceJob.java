@@ -0,0 +1,60 @@
+package com.wms.billing.service;
+
+import com.wms.billing.dto.InvoiceJobStatus;
+import com.wms.billing.dto.InvoiceJobType;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * In-memory state of one asynchronous invoice job. Fields are written by the worker thread and read by
+ * status requests, hence volatile.
+ */
+@Getter
+public class InvoiceJob {
+
+    private final String id;
+    private final InvoiceJobType type;
+    private final Instant submittedAt;
+
+    private volatile InvoiceJobStatus status = InvoiceJobStatus.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Instant expiresAt;
+    private volatile String error;
+    private volatile Object result; // Invoice for RATING, byte[] for PDF
+
+    InvoiceJob(String id, InvoiceJobType type, Instant submittedAt) {
+        this.id = id;
+        this.type = type;
+        this.submittedAt = submittedAt;
+    }
+
+    void markRunning(Instant now) {
+        this.startedAt = now;
+        this.status = InvoiceJobStatus.RUNNING;
+    }
+
+    void markSucceeded(Object result, Instant now, Instant expiresAt) {
+        this.result = result;
+        this.finishedAt = now;
+        this.expiresAt = expiresAt;
+        this.status = InvoiceJobStatus.SUCCEEDED;
+    }
+
+    void markFailed(String error, Instant now, Instant expiresAt) {
+        this.error = error;
+        this.finishedAt = now;
+        this.expiresAt = expiresAt;
+        this.status = InvoiceJobStatus.FAILED;
+    }
+
+    /** Size of a PDF result; other results are not counted. */
+    long resultBytes() {
+        return result instanceof byte[] pdf ? pdf.length : 0;
+    }
+
+    boolean isExpired(Instant now) {
+        return expiresAt != null && now.isAfter(expiresAt);
+    }
+}
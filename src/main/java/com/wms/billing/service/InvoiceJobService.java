@@ -0,0 +1,229 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.dto.CreateInvoiceRequest;
+import com.wms.billing.dto.InvoiceJobRequest;
+import com.wms.billing.dto.InvoiceJobType;
+import com.wms.billing.exception.JobQueueFullException;
+import com.wms.billing.helper.EntityMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs invoice rating and PDF rendering off the request thread.
+ *
+ * <p>Each {@link InvoiceJobType} has its own fixed-size worker pool backed by a bounded queue, so a burst of
+ * PDF jobs cannot starve rating and vice versa. When a queue is full, submission fails fast with
+ * {@link JobQueueFullException}, which the API maps to {@code 429 Too Many Requests} with a {@code Retry-After}
+ * estimated from the queue depth and recent job durations.</p>
+ *
+ * <p>Finished jobs (and their results) are kept for {@code billing.jobs.result-ttl} and then purged. At most
+ * {@code billing.jobs.max-retained} finished jobs, holding at most {@code billing.jobs.max-retained-bytes} of PDF
+ * results, are kept; beyond that the oldest finished jobs are dropped early and counted in
+ * {@code billing.jobs.evicted}.</p>
+ */
+@Slf4j
+@Service
+public class InvoiceJobService {
+
+    private final InvoiceServiceDrools invoiceService;
+    private final JasperInvoiceGenerator jasperGenerator;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration resultTtl;
+    private final int maxRetained;
+    private final long maxRetainedBytes;
+    private final Counter evicted;
+
+    private final Map<InvoiceJobType, ThreadPoolExecutor> executors = new EnumMap<>(InvoiceJobType.class);
+    private final Map<InvoiceJobType, AtomicLong> completedCount = new EnumMap<>(InvoiceJobType.class);
+    private final Map<InvoiceJobType, AtomicLong> completedNanos = new EnumMap<>(InvoiceJobType.class);
+    private final ConcurrentMap<String, InvoiceJob> jobs = new ConcurrentHashMap<>();
+
+    public InvoiceJobService(InvoiceServiceDrools invoiceService,
+                             JasperInvoiceGenerator jasperGenerator,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry registry,
+                             @Value("${billing.jobs.rating.concurrency:4}") int ratingConcurrency,
+                             @Value("${billing.jobs.rating.queue-capacity:100}") int ratingQueueCapacity,
+                             @Value("${billing.jobs.pdf.concurrency:2}") int pdfConcurrency,
+                             @Value("${billing.jobs.pdf.queue-capacity:50}") int pdfQueueCapacity,
+                             @Value("${billing.jobs.result-ttl:15m}") Duration resultTtl,
+                             @Value("${billing.jobs.max-retained:1000}") int maxRetained,
+                             @Value("${billing.jobs.max-retained-bytes:256MB}") DataSize maxRetainedBytes) {
+        this.invoiceService = invoiceService;
+        this.jasperGenerator = jasperGenerator;
+        // Jobs run outside any request, so there is no open-in-view session for the rate sheet's lazy collections
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.resultTtl = resultTtl;
+        this.maxRetained = maxRetained;
+        this.maxRetainedBytes = maxRetainedBytes.toBytes();
+
+        executors.put(InvoiceJobType.RATING, newExecutor("rating", ratingConcurrency, ratingQueueCapacity));
+        executors.put(InvoiceJobType.PDF, newExecutor("pdf", pdfConcurrency, pdfQueueCapacity));
+
+        for (InvoiceJobType type : InvoiceJobType.values()) {
+            completedCount.put(type, new AtomicLong());
+            completedNanos.put(type, new AtomicLong());
+            ThreadPoolExecutor executor = executors.get(type);
+            String tag = type.name().toLowerCase();
+            Gauge.builder("billing.jobs.queued", executor, e -> e.getQueue().size())
+                    .tag("type", tag).register(registry);
+            Gauge.builder("billing.jobs.active", executor, ThreadPoolExecutor::getActiveCount)
+                    .tag("type", tag).register(registry);
+        }
+        Gauge.builder("billing.jobs.retained", jobs, Map::size).register(registry);
+        this.evicted = Counter.builder("billing.jobs.evicted")
+                .description("Finished jobs dropped before their TTL to stay within the retention limits")
+                .register(registry);
+    }
+
+    /**
+     * Queue a job.
+     *
+     * @return the queued job
+     * @throws JobQueueFullException if the queue for the job's type is full
+     */
+    public InvoiceJob submit(InvoiceJobRequest request) {
+        InvoiceJobType type = request.getType();
+        InvoiceJob job = new InvoiceJob(UUID.randomUUID().toString(), type, Instant.now());
+        // Map up front so malformed activities fail the submission (400), not the job
+        List<Activity> activities = EntityMapper.toActivities(request.getRequest());
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+        jobs.put(job.getId(), job);
+        try {
+            executors.get(type).execute(() -> run(job, request, activities, mdc));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            long retryAfter = estimateRetryAfterSeconds(type);
+            log.debug("{} job queue full; asking client to retry after {}s", type, retryAfter);
+            throw new JobQueueFullException(type + " job queue is full", retryAfter);
+        }
+        return job;
+    }
+
+    public Optional<InvoiceJob> find(String jobId) {
+        InvoiceJob job = jobs.get(jobId);
+        if (job == null || job.isExpired(Instant.now())) {
+            return Optional.empty();
+        }
+        return Optional.of(job);
+    }
+
+    @Scheduled(fixedDelayString = "${billing.jobs.purge-interval:60s}")
+    public void purgeExpired() {
+        Instant now = Instant.now();
+        int before = jobs.size();
+        jobs.values().removeIf(job -> job.isExpired(now));
+        int purged = before - jobs.size();
+        if (purged > 0) {
+            log.debug("Purged {} expired invoice jobs", purged);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.values().forEach(ExecutorService::shutdownNow);
+    }
+
+    private void run(InvoiceJob job, InvoiceJobRequest request, List<Activity> activities, Map<String, String> mdc) {
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        }
+        StageTimings.bind(new StageTimings("job:" + job.getType().name().toLowerCase()));
+        long started = System.nanoTime();
+        job.markRunning(Instant.now());
+        try {
+            CreateInvoiceRequest req = request.getRequest();
+            boolean preview = request.getType() != InvoiceJobType.RATING || !request.isFinalizeInvoice();
+            Invoice invoice = transactionTemplate.execute(status -> invoiceService.generateInvoice(
+                    request.getRateSheetId(),
+                    req.getWarehouseId(),
+                    req.getPeriodStart(),
+                    req.getPeriodEnd(),
+                    activities,
+                    preview
+            ));
+            Object result = request.getType() == InvoiceJobType.PDF
+                    ? jasperGenerator.generateInvoicePdf(invoice)
+                    : invoice;
+            Instant now = Instant.now();
+            job.markSucceeded(result, now, now.plus(resultTtl));
+        } catch (Exception e) {
+            log.warn("Invoice job {} ({}) failed", job.getId(), job.getType(), e);
+            Instant now = Instant.now();
+            job.markFailed(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName(), now, now.plus(resultTtl));
+        } finally {
+            trimRetained();
+            completedCount.get(job.getType()).incrementAndGet();
+            completedNanos.get(job.getType()).addAndGet(System.nanoTime() - started);
+            StageTimings.unbind();
+            MDC.clear();
+        }
+    }
+
+    /** Drop the oldest finished jobs until both retention limits hold. */
+    private synchronized void trimRetained() {
+        List<InvoiceJob> finished = jobs.values().stream()
+                .filter(job -> job.getFinishedAt() != null)
+                .sorted(Comparator.comparing(InvoiceJob::getFinishedAt))
+                .toList();
+        int count = finished.size();
+        long bytes = finished.stream().mapToLong(InvoiceJob::resultBytes).sum();
+        for (InvoiceJob job : finished) {
+            if (count <= maxRetained && bytes <= maxRetainedBytes) {
+                break;
+            }
+            jobs.remove(job.getId());
+            count--;
+            bytes -= job.resultBytes();
+            evicted.increment();
+            log.debug("Dropped finished invoice job {} before its TTL to stay within retention limits", job.getId());
+        }
+    }
+
+    private long estimateRetryAfterSeconds(InvoiceJobType type) {
+        ThreadPoolExecutor executor = executors.get(type);
+        long count = completedCount.get(type).get();
+        if (count == 0) {
+            return 1;
+        }
+        double avgSeconds = completedNanos.get(type).get() / (double) count / 1_000_000_000d;
+        double drainSeconds = avgSeconds * executor.getQueue().size() / executor.getMaximumPoolSize();
+        return Math.max(1, (long) Math.ceil(drainSeconds));
+    }
+
+    private static ThreadPoolExecutor newExecutor(String name, int concurrency, int queueCapacity) {
+        AtomicInteger seq = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "invoice-job-" + name + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), factory, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
@@ -0,0 +1,50 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.InvoiceLine;
+import net.sf.jasperreports.engine.JRDataSource;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRField;
+
+import java.util.Iterator;
+
+/**
+ * Jasper data source over an iterator of {@link InvoiceLine}s.
+ *
+ * <p>Unlike {@code JRBeanCollectionDataSource}, this does not require the full line list up front,
+ * so it can be fed from a paged cursor. Supported fields match the bean properties used by the
+ * invoice templates: {@code description}, {@code quantity}, {@code rate}, {@code amount}.</p>
+ */
+final class InvoiceLineDataSource implements JRDataSource {
+
+    private final Iterator<InvoiceLine> lines;
+    private InvoiceLine current;
+
+    InvoiceLineDataSource(Iterator<InvoiceLine> lines) {
+        this.lines = lines;
+    }
+
+    @Override
+    public boolean next() {
+        if (!lines.hasNext()) {
+            current = null;
+            return false;
+        }
+        current = lines.next();
+        return true;
+    }
+
+    @Override
+    public Object getFieldValue(JRField field) throws JRException {
+        if (current == null) {
+            return null;
+        }
+        return switch (field.getName()) {
+            case "id" -> current.getId();
+            case "description" -> current.getDescription();
+            case "quantity" -> current.getQuantity();
+            case "rate" -> current.getRate();
+            case "amount" -> current.getAmount();
+            default -> throw new JRException("Unknown invoice line field: " + field.getName());
+        };
+    }
+}
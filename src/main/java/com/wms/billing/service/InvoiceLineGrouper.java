@@ -0,0 +1,103 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.InvoiceLine;
+import com.wms.billing.dto.ChargeCategory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collapses invoice lines that only differ in quantity and amount into one line per charge, so an invoice
+ * carries a line per (category, charge type, description, rate) instead of one per rated activity. Enabled with
+ * {@code billing.invoice.line-grouping.enabled=true}.
+ *
+ * <p>{@code billing.invoice.line-grouping.bucket} optionally keeps a line per {@code DAY} or {@code WEEK}
+ * (starting Monday) of activity date; the grouped line's {@code serviceDate} is the bucket start. Quantities
+ * and amounts are summed exactly, so the invoice total does not change.</p>
+ *
+ * <p>Grouped lines come out in first-occurrence order, which for lines already in the canonical order of
+ * {@link InvoiceServiceDrools} is that same order. Input lines are never modified, and grouping grouped lines
+ * again returns equal lines.</p>
+ */
+@Component
+public class InvoiceLineGrouper {
+
+    /** Granularity by activity date within a group. */
+    public enum Bucket { NONE, DAY, WEEK }
+
+    private record Key(ChargeCategory category, String chargeType, String description, BigDecimal rate,
+                       LocalDate bucket) {
+    }
+
+    private final boolean enabled;
+    private final Bucket bucket;
+
+    public InvoiceLineGrouper(@Value("${billing.invoice.line-grouping.enabled:false}") boolean enabled,
+                              @Value("${billing.invoice.line-grouping.bucket:NONE}") Bucket bucket) {
+        this.enabled = enabled;
+        this.bucket = bucket;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Grouped copy of {@code lines}, or {@code lines} itself when grouping is off. */
+    public List<InvoiceLine> group(List<InvoiceLine> lines) {
+        if (!enabled || lines == null || lines.isEmpty()) {
+            return lines;
+        }
+        Map<Key, InvoiceLine> groups = new LinkedHashMap<>();
+        for (InvoiceLine line : lines) {
+            LocalDate bucketStart = bucketStart(line.getServiceDate());
+            BigDecimal rate = line.getRate() != null ? line.getRate().stripTrailingZeros() : null;
+            Key key = new Key(line.getCategory(), line.getChargeType(), line.getDescription(), rate, bucketStart);
+            InvoiceLine group = groups.get(key);
+            if (group == null) {
+                groups.put(key, copy(line, bucketStart));
+            } else {
+                group.setQuantity(add(group.getQuantity(), line.getQuantity()));
+                group.setAmount(add(group.getAmount(), line.getAmount()));
+            }
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private LocalDate bucketStart(LocalDate date) {
+        if (date == null) {
+            return null;
+        }
+        return switch (bucket) {
+            case NONE -> null;
+            case DAY -> date;
+            case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        };
+    }
+
+    private static InvoiceLine copy(InvoiceLine line, LocalDate bucketStart) {
+        InvoiceLine group = new InvoiceLine();
+        group.setDescription(line.getDescription());
+        group.setCategory(line.getCategory());
+        group.setChargeType(line.getChargeType());
+        group.setRate(line.getRate());
+        group.setQuantity(line.getQuantity());
+        group.setAmount(line.getAmount());
+        group.setServiceDate(bucketStart);
+        return group;
+    }
+
+    private static BigDecimal add(BigDecimal a, BigDecimal b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null ? a : a.add(b);
+    }
+}
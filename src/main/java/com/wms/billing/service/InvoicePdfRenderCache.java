@@ -0,0 +1,278 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.domain.InvoiceTemplate;
+import com.wms.billing.exception.FileStorageException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Local disk cache of rendered PDFs for FINAL invoices.
+ *
+ * <p>A FINAL invoice never changes, so its PDF is fully determined by the invoice id, the template
+ * (id plus a version derived from the template file's size and modification time) and the invoice
+ * content hash. Entries are stored as one file per key, named after the SHA-256 of that tuple, and
+ * evicted in least-recently-used order once the total size exceeds {@code billing.pdf.render-cache.max-bytes}.</p>
+ *
+ * <p>Hits bypass Jasper. {@code InvoiceController} hands the stored file to Tomcat's sendfile support, which
+ * writes it to the socket with {@link FileChannel#transferTo} without copying through the heap; on connectors
+ * without sendfile the file is copied through the response stream with {@link #transfer}. Concurrent misses for
+ * the same key render once; other callers wait and then read the stored file.</p>
+ *
+ * <p>Sendfile opens the file only after the request handler has returned, so an evicted file is deleted
+ * {@code billing.pdf.render-cache.eviction-grace} later rather than at once, unless its key has been stored
+ * again meanwhile. Files waiting for deletion are not counted against {@code max-bytes}.</p>
+ *
+ * <p>The in-memory index is rebuilt from the directory on startup (oldest modification time first), so the
+ * cache survives restarts.</p>
+ */
+@Slf4j
+@Service
+public class InvoicePdfRenderCache {
+
+    /** Writes a rendered PDF to the supplied stream. */
+    @FunctionalInterface
+    public interface PdfRenderer {
+        void render(OutputStream out) throws Exception;
+    }
+
+    private static final String SUFFIX = ".pdf";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxBytes;
+    private final long evictionGraceMillis;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, ReentrantLock> renderLocks = new ConcurrentHashMap<>();
+    private long totalBytes;
+    // Evicted key -> time (epoch millis) after which its file may be deleted; guarded by this
+    private final Map<String, Long> evicted = new HashMap<>();
+
+    public InvoicePdfRenderCache(@Value("${billing.pdf.render-cache.enabled:true}") boolean enabled,
+                                 @Value("${billing.pdf.render-cache.dir:${java.io.tmpdir}/wms-billing/pdf-cache}") String directory,
+                                 @Value("${billing.pdf.render-cache.max-bytes:1073741824}") long maxBytes,
+                                 @Value("${billing.pdf.render-cache.eviction-grace:PT1M}") Duration evictionGrace) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+        this.evictionGraceMillis = evictionGrace.toMillis();
+    }
+
+    @PostConstruct
+    void loadIndex() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing.toList();
+            }
+            List<Path> cached = new ArrayList<>();
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file); // interrupted render
+                } else if (name.endsWith(SUFFIX)) {
+                    cached.add(file);
+                }
+            }
+            cached.sort(Comparator.comparing(InvoicePdfRenderCache::lastModified));
+            synchronized (this) {
+                for (Path file : cached) {
+                    String key = file.getFileName().toString();
+                    key = key.substring(0, key.length() - SUFFIX.length());
+                    long size = Files.size(file);
+                    entries.put(key, size);
+                    totalBytes += size;
+                }
+                evictIfNeeded();
+            }
+            log.info("PDF render cache at {}: {} entries, {} bytes", directory, entries.size(), totalBytes);
+        } catch (IOException e) {
+            throw new FileStorageException("Cannot initialize PDF render cache at " + directory, e);
+        }
+    }
+
+    /**
+     * Only FINAL invoices that carry a content hash are cacheable.
+     */
+    public boolean isCacheable(Invoice header) {
+        return enabled && "FINAL".equals(header.getStatus()) && header.getContentHash() != null;
+    }
+
+    /**
+     * Compute the cache key for an invoice rendered with a given template.
+     */
+    public String cacheKey(Invoice header, InvoiceTemplate template) {
+        File templateFile = new File(template.getFilePath());
+        String templateVersion = templateFile.length() + "-" + templateFile.lastModified();
+        String raw = header.getId() + "|" + template.getId() + "|" + templateVersion + "|" + header.getContentHash();
+        return sha256(raw);
+    }
+
+    /**
+     * Open the cached PDF for {@code key}, rendering and storing it first on a miss.
+     * The caller owns the returned channel and must close it.
+     *
+     * @throws Exception if rendering fails
+     */
+    public FileChannel openOrRender(String key, PdfRenderer renderer) throws Exception {
+        FileChannel hit = open(key);
+        if (hit != null) {
+            return hit;
+        }
+
+        ReentrantLock lock = renderLocks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            hit = open(key);
+            if (hit != null) {
+                return hit;
+            }
+            store(key, renderer);
+            FileChannel stored = open(key);
+            if (stored == null) {
+                throw new FileStorageException("Rendered PDF was evicted before it could be served: " + key);
+            }
+            return stored;
+        } finally {
+            lock.unlock();
+            renderLocks.remove(key, lock);
+        }
+    }
+
+    /**
+     * Location of the stored PDF for {@code key}. Only valid to hand out right after {@link #openOrRender}
+     * returned for that key; eviction keeps the file for {@code billing.pdf.render-cache.eviction-grace}.
+     */
+    public Path pathFor(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    /**
+     * Delete evicted files whose grace period has passed and whose key has not been stored again.
+     */
+    @Scheduled(initialDelayString = "${billing.pdf.render-cache.eviction-grace:PT1M}",
+            fixedDelayString = "${billing.pdf.render-cache.eviction-grace:PT1M}")
+    public synchronized void purgeEvicted() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Long>> it = evicted.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entry.getValue() > now) {
+                continue;
+            }
+            it.remove();
+            if (entries.containsKey(entry.getKey())) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(pathFor(entry.getKey()));
+            } catch (IOException e) {
+                log.warn("Could not delete evicted PDF {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Copy an entire channel to {@code target} using {@link FileChannel#transferTo}.
+     */
+    public static void transfer(FileChannel source, WritableByteChannel target) throws IOException {
+        long position = 0;
+        long size = source.size();
+        while (position < size) {
+            position += source.transferTo(position, size - position, target);
+        }
+    }
+
+    // Opening under the monitor guarantees eviction cannot delete the file between lookup and open;
+    // once open, a later delete does not affect the reader.
+    private synchronized FileChannel open(String key) throws IOException {
+        if (entries.get(key) == null) {
+            return null;
+        }
+        try {
+            return FileChannel.open(pathFor(key), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            Long size = entries.remove(key);
+            totalBytes -= size != null ? size : 0;
+            return null;
+        }
+    }
+
+    private void store(String key, PdfRenderer renderer) throws Exception {
+        synchronized (this) {
+            // Keep purgeEvicted() from deleting the file about to be stored under this key
+            evicted.remove(key);
+        }
+        Path tmp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                renderer.render(out);
+            }
+            Files.move(tmp, pathFor(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        long size = Files.size(pathFor(key));
+        synchronized (this) {
+            Long previous = entries.put(key, size);
+            totalBytes += size - (previous != null ? previous : 0);
+            evictIfNeeded();
+        }
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            // A sendfile response may still be about to open it; purgeEvicted() deletes it later
+            evicted.put(eldest.getKey(), System.currentTimeMillis() + evictionGraceMillis);
+            totalBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.dto.BillingActivityDTO;
+import com.wms.billing.dto.CreateInvoiceRequest;
+import com.wms.billing.helper.EntityMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses identical concurrent invoice previews into one Drools evaluation.
+ *
+ * <p>Requests are keyed by a SHA-256 over the rate sheet id and the canonical form of the
+ * {@link CreateInvoiceRequest} (warehouse, period and activities in sorted order, quantities with their scale, so
+ * {@code 10} and {@code 10.000} are different requests). The first caller for a key computes the preview; callers arriving while
+ * it runs wait for the same result (or exception) instead of loading the rate sheet and running a session again.</p>
+ *
+ * <p>Optionally ({@code billing.preview.cache.enabled}) finished previews are also kept for
+ * {@code billing.preview.cache.ttl}. Both the in-flight key and cached entries carry the rate sheet's generation,
+ * which is bumped on {@link RateSheetUpdatedEvent}, so nothing computed against an older rate sheet is handed out
+ * after the update commits.</p>
+ *
+ * <p>The returned {@link Invoice} may be shared between callers and must be treated as read-only.</p>
+ *
+ * <p>Metrics: {@code billing.preview.requests} tagged {@code outcome=computed|coalesced|cache_hit}, and the gauge
+ * {@code billing.preview.in_flight}.</p>
+ */
+@Slf4j
+@Service
+public class InvoicePreviewCoalescer {
+
+    private static final byte FIELD_SEPARATOR = 0x1F;
+    private static final byte RECORD_SEPARATOR = 0x1E;
+
+    private record CachedPreview(Long rateSheetId, Invoice invoice, long expiresAtNanos) {}
+
+    private final InvoiceServiceDrools invoiceService;
+    private final boolean cacheEnabled;
+    private final long cacheTtlNanos;
+
+    private final ConcurrentMap<String, CompletableFuture<Invoice>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final Map<String, CachedPreview> cache;
+
+    private final Counter computed;
+    private final Counter coalesced;
+    private final Counter cacheHits;
+
+    public InvoicePreviewCoalescer(InvoiceServiceDrools invoiceService,
+                                   MeterRegistry registry,
+                                   @Value("${billing.preview.cache.enabled:false}") boolean cacheEnabled,
+                                   @Value("${billing.preview.cache.ttl:30s}") Duration cacheTtl,
+                                   @Value("${billing.preview.cache.max-entries:500}") int cacheMaxEntries) {
+        this.invoiceService = invoiceService;
+        this.cacheEnabled = cacheEnabled;
+        this.cacheTtlNanos = cacheTtl.toNanos();
+        this.cache = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPreview> eldest) {
+                return size() > cacheMaxEntries;
+            }
+        };
+
+        this.computed = outcomeCounter(registry, "computed");
+        this.coalesced = outcomeCounter(registry, "coalesced");
+        this.cacheHits = outcomeCounter(registry, "cache_hit");
+        Gauge.builder("billing.preview.in_flight", inFlight, Map::size)
+                .description("Distinct preview computations currently running")
+                .register(registry);
+    }
+
+    /**
+     * Preview an invoice, sharing the computation with identical concurrent requests.
+     *
+     * @param rateSheetId the rate sheet to price against
+     * @param req the preview request
+     * @return the computed preview invoice (read-only, possibly shared)
+     */
+    public Invoice preview(Long rateSheetId, CreateInvoiceRequest req) {
+        long generation = generation(rateSheetId).get();
+        String key = requestKey(rateSheetId, req) + ":" + generation;
+
+        if (cacheEnabled) {
+            Invoice cached = lookup(key);
+            if (cached != null) {
+                cacheHits.increment();
+                return cached;
+            }
+        }
+
+        CompletableFuture<Invoice> mine = new CompletableFuture<>();
+        CompletableFuture<Invoice> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.increment();
+            log.debug("Joining in-flight preview for rateSheetId={}", rateSheetId);
+            return await(running);
+        }
+
+        try {
+            computed.increment();
+            List<Activity> activities = EntityMapper.toActivities(req);
+            Invoice invoice = invoiceService.generateInvoice(
+                    rateSheetId,
+                    req.getWarehouseId(),
+                    req.getPeriodStart(),
+                    req.getPeriodEnd(),
+                    activities,
+                    true
+            );
+            if (cacheEnabled && generation(rateSheetId).get() == generation) {
+                store(key, new CachedPreview(rateSheetId, invoice, System.nanoTime() + cacheTtlNanos));
+            }
+            mine.complete(invoice);
+            return invoice;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Drop cached previews for a rate sheet once its update has committed. Previews still running against the
+     * old rate sheet finish for their current waiters but are not cached or joined by later requests.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRateSheetUpdated(RateSheetUpdatedEvent event) {
+        generation(event.rateSheetId()).incrementAndGet();
+        synchronized (cache) {
+            cache.values().removeIf(entry -> event.rateSheetId().equals(entry.rateSheetId()));
+        }
+        log.debug("Invalidated preview results for rateSheetId={}", event.rateSheetId());
+    }
+
+    private AtomicLong generation(Long rateSheetId) {
+        return generations.computeIfAbsent(rateSheetId, id -> new AtomicLong());
+    }
+
+    private Invoice lookup(String key) {
+        synchronized (cache) {
+            CachedPreview entry = cache.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.expiresAtNanos() > 0) {
+                cache.remove(key);
+                return null;
+            }
+            return entry.invoice();
+        }
+    }
+
+    private void store(String key, CachedPreview entry) {
+        synchronized (cache) {
+            cache.put(key, entry);
+        }
+    }
+
+    private static Invoice await(CompletableFuture<Invoice> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
+    }
+
+    private static Counter outcomeCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("billing.preview.requests")
+                .description("Invoice preview requests by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * Canonical hash of a preview request. Every activity field that can reach the invoice is hashed: category, type
+     * and quantity select and price the charge, and the activity date becomes the lines' service date (and their
+     * DAY/WEEK bucket when lines are grouped). The activity id is not: previews rate every activity as sent, without
+     * deduplication, and no rule reads it. Activities are hashed in sorted order, since {@link InvoiceServiceDrools}
+     * puts lines in canonical order whatever order the activities arrive in; duplicates are kept, as each is rated.
+     */
+    static String requestKey(Long rateSheetId, CreateInvoiceRequest req) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        update(digest, rateSheetId);
+        update(digest, req.getWarehouseId());
+        update(digest, req.getPeriodStart());
+        update(digest, req.getPeriodEnd());
+        digest.update(RECORD_SEPARATOR);
+        if (req.getActivities() != null) {
+            List<String> records = new ArrayList<>(req.getActivities().size());
+            for (BillingActivityDTO activity : req.getActivities()) {
+                records.add(text(activity.getCategory()) + (char) FIELD_SEPARATOR
+                        + text(activity.getType()) + (char) FIELD_SEPARATOR
+                        + text(activity.getQuantity()) + (char) FIELD_SEPARATOR
+                        + text(activity.getActivityDate()) + (char) FIELD_SEPARATOR);
+            }
+            Collections.sort(records);
+            for (String record : records) {
+                digest.update(record.getBytes(StandardCharsets.UTF_8));
+                digest.update(RECORD_SEPARATOR);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, Object value) {
+        digest.update(text(value).getBytes(StandardCharsets.UTF_8));
+        digest.update(FIELD_SEPARATOR);
+    }
+
+    private static String text(Object value) {
+        if (value instanceof BigDecimal bd) {
+            // Scale kept: 10 and 10.000 give lines with different quantity scales, so they must not share a result
+            return bd.toPlainString();
+        }
+        return Objects.toString(value, "");
+    }
+}
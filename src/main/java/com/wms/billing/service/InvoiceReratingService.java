@@ -0,0 +1,295 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.domain.InvoiceLine;
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.domain.Warehouse;
+import com.wms.billing.domain.WarehouseCharges;
+import com.wms.billing.dto.ChargeCategory;
+import com.wms.billing.dto.RerateResultDTO;
+import com.wms.billing.helper.InvoiceContentHasher;
+import com.wms.billing.repository.InvoiceRepository;
+import com.wms.billing.repository.UncachedRateSheetLoader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Re-rates FINAL invoices against the current version of their rate sheet without re-running activities.
+ *
+ * <p>Each invoice line records the charge it was rated against (category and type; older lines are recognised
+ * by their "Category - TYPE" description). Lines are grouped by charge, and the group's stored quantity is
+ * re-priced at the rate sheet's current rate for the invoice's warehouse. The rate already billed is the
+ * original line rate plus the rate deltas of earlier adjustments, so re-rating twice never charges a correction
+ * twice. Charges whose rate is unchanged, or that are no longer in the rate sheet, are left alone.</p>
+ *
+ * <p>Differences are issued as a separate ADJUSTMENT invoice referencing the original
+ * ({@link Invoice#getAdjustsInvoiceId()}); a negative total is a credit note. Each adjustment line carries the
+ * stored quantity, the rate delta and quantity × delta.</p>
+ *
+ * <p>Period re-rating reads FINAL invoices in id pages of {@code billing.rerate.batch-size}; each page (invoices,
+ * their previous adjustments and the new ones) is one transaction and two fetch-join queries.</p>
+ *
+ * <p>The original invoices are locked ({@code SELECT ... FOR UPDATE}) before their previous adjustments are read,
+ * so concurrent re-rates of one invoice run one after the other and the second sees the first's adjustment
+ * instead of issuing the same correction again.</p>
+ */
+@Slf4j
+@Service
+public class InvoiceReratingService {
+
+    private static final String ADJUSTMENT = "ADJUSTMENT";
+
+    private final InvoiceRepository invoiceRepository;
+    private final UncachedRateSheetLoader rateSheetLoader;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Counter adjustmentsIssued;
+
+    public InvoiceReratingService(InvoiceRepository invoiceRepository,
+                                  UncachedRateSheetLoader rateSheetLoader,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry registry,
+                                  @Value("${billing.rerate.batch-size:200}") int batchSize) {
+        this.invoiceRepository = invoiceRepository;
+        this.rateSheetLoader = rateSheetLoader;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = Math.max(1, batchSize);
+        this.adjustmentsIssued = Counter.builder("billing.rerate.adjustments")
+                .description("Adjustment invoices issued by re-rating")
+                .register(registry);
+    }
+
+    /**
+     * Re-rate one FINAL invoice.
+     *
+     * @param preview compute the adjustment without saving it
+     * @return the adjustment invoice, or empty if no rate changed
+     * @throws ResponseStatusException 404 if the invoice does not exist, 409 if it is not FINAL
+     */
+    public Optional<Invoice> rerate(Long invoiceId, boolean preview) {
+        return transactionTemplate.execute(status -> {
+            invoiceRepository.lockForUpdate(List.of(invoiceId));
+            List<Invoice> found = invoiceRepository.findWithLines(List.of(invoiceId));
+            if (found.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Invoice not found: " + invoiceId);
+            }
+            Invoice invoice = found.get(0);
+            if (!"FINAL".equals(invoice.getStatus())) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Only FINAL invoices can be re-rated; invoice " + invoiceId + " is " + invoice.getStatus());
+            }
+            Map<String, BigDecimal> rates = currentRates(invoice.getRateSheetId());
+            List<Invoice> previous = invoiceRepository.findAdjustments(List.of(invoiceId));
+            Optional<Invoice> adjustment = adjustmentFor(invoice, previous, rates);
+            if (adjustment.isPresent() && !preview) {
+                invoiceRepository.save(adjustment.get());
+                adjustmentsIssued.increment();
+            }
+            return adjustment;
+        });
+    }
+
+    /**
+     * Re-rate every FINAL invoice of a rate sheet whose period lies within {@code [from, to]}.
+     *
+     * @param preview compute the adjustments without saving them
+     */
+    public RerateResultDTO reratePeriod(Long rateSheetId, LocalDate from, LocalDate to, boolean preview) {
+        Map<String, BigDecimal> rates = transactionTemplate.execute(status -> currentRates(rateSheetId));
+
+        long scanned = 0;
+        BigDecimal totalDelta = BigDecimal.ZERO;
+        List<RerateResultDTO.InvoiceDelta> deltas = new ArrayList<>();
+        long afterId = 0;
+        while (true) {
+            long cursor = afterId;
+            List<Long> ids = invoiceRepository.findFinalIds(rateSheetId, from, to, cursor, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            List<RerateResultDTO.InvoiceDelta> page = transactionTemplate.execute(status -> reratePage(ids, rates, preview));
+            for (RerateResultDTO.InvoiceDelta delta : page) {
+                totalDelta = totalDelta.add(delta.getDelta());
+            }
+            deltas.addAll(page);
+            scanned += ids.size();
+            afterId = ids.get(ids.size() - 1);
+        }
+
+        log.info("Re-rated {} invoices of rateSheetId={} for {}..{}: {} adjusted, delta {}{}",
+                scanned, rateSheetId, from, to, deltas.size(), totalDelta, preview ? " (preview)" : "");
+        return RerateResultDTO.builder()
+                .invoicesScanned(scanned)
+                .invoicesAdjusted(deltas.size())
+                .totalDelta(totalDelta)
+                .preview(preview)
+                .adjustments(deltas)
+                .build();
+    }
+
+    private List<RerateResultDTO.InvoiceDelta> reratePage(List<Long> ids, Map<String, BigDecimal> rates, boolean preview) {
+        invoiceRepository.lockForUpdate(ids);
+        Map<Long, List<Invoice>> previousByInvoice = new HashMap<>();
+        for (Invoice adjustment : invoiceRepository.findAdjustments(ids)) {
+            previousByInvoice.computeIfAbsent(adjustment.getAdjustsInvoiceId(), k -> new ArrayList<>()).add(adjustment);
+        }
+
+        List<Invoice> adjustments = new ArrayList<>();
+        for (Invoice invoice : invoiceRepository.findWithLines(ids)) {
+            adjustmentFor(invoice, previousByInvoice.getOrDefault(invoice.getId(), List.of()), rates)
+                    .ifPresent(adjustments::add);
+        }
+        if (!preview && !adjustments.isEmpty()) {
+            invoiceRepository.saveAll(adjustments);
+            adjustmentsIssued.increment(adjustments.size());
+        }
+        return adjustments.stream()
+                .map(a -> new RerateResultDTO.InvoiceDelta(a.getAdjustsInvoiceId(), a.getId(), a.getTotalAmount()))
+                .toList();
+    }
+
+    private Optional<Invoice> adjustmentFor(Invoice invoice, List<Invoice> previous, Map<String, BigDecimal> rates) {
+        // Quantity and original rate per charge
+        Map<String, LineGroup> groups = new LinkedHashMap<>();
+        for (InvoiceLine line : lines(invoice)) {
+            String key = chargeKey(line);
+            if (key == null || line.getQuantity() == null || line.getRate() == null) {
+                continue;
+            }
+            LineGroup group = groups.computeIfAbsent(key, k -> new LineGroup(line));
+            if (group.rate.compareTo(line.getRate()) != 0) {
+                group.ambiguous = true;
+            }
+            group.quantity = group.quantity.add(line.getQuantity());
+        }
+        // Rate corrections already issued
+        for (Invoice adjustment : previous) {
+            for (InvoiceLine line : lines(adjustment)) {
+                LineGroup group = groups.get(chargeKey(line));
+                if (group != null && line.getRate() != null) {
+                    group.rate = group.rate.add(line.getRate());
+                }
+            }
+        }
+
+        List<InvoiceLine> corrections = new ArrayList<>();
+        for (Map.Entry<String, LineGroup> e : groups.entrySet()) {
+            LineGroup group = e.getValue();
+            if (group.ambiguous) {
+                log.warn("Invoice {} has lines for {} at different rates; not re-rated", invoice.getId(), e.getKey());
+                continue;
+            }
+            BigDecimal current = rates.get(invoice.getWarehouseId() + "|" + e.getKey());
+            if (current == null || current.compareTo(group.rate) == 0) {
+                continue;
+            }
+            BigDecimal rateDelta = current.subtract(group.rate);
+            InvoiceLine line = new InvoiceLine();
+            line.setDescription("Rate correction - " + group.description
+                    + " (" + group.rate.toPlainString() + " -> " + current.toPlainString() + ")");
+            line.setQuantity(group.quantity);
+            line.setRate(rateDelta);
+            line.setAmount(group.quantity.multiply(rateDelta));
+            line.setCategory(group.category);
+            line.setChargeType(group.chargeType);
+            corrections.add(line);
+        }
+        if (corrections.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Invoice adjustment = new Invoice();
+        adjustment.setRateSheetId(invoice.getRateSheetId());
+        adjustment.setCustomerId(invoice.getCustomerId());
+        adjustment.setWarehouseId(invoice.getWarehouseId());
+        adjustment.setPeriodStart(invoice.getPeriodStart());
+        adjustment.setPeriodEnd(invoice.getPeriodEnd());
+        adjustment.setStatus(ADJUSTMENT);
+        adjustment.setAdjustsInvoiceId(invoice.getId());
+        adjustment.setInvoiceLines(corrections);
+        adjustment.setTotalAmount(corrections.stream().map(InvoiceLine::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add));
+        adjustment.setContentHash(InvoiceContentHasher.hash(adjustment));
+        return Optional.of(adjustment);
+    }
+
+    /**
+     * warehouseId|CATEGORY|type -> rate, first charge wins as in the rules' line order. Read from the database, not
+     * the second-level cache, which may not have seen an update made on another instance.
+     */
+    private Map<String, BigDecimal> currentRates(Long rateSheetId) {
+        RateSheet rateSheet = rateSheetLoader.load(rateSheetId);
+        if (rateSheet == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "rateSheetId not found: " + rateSheetId);
+        }
+        Map<String, BigDecimal> rates = new HashMap<>();
+        if (rateSheet.getWarehouses() != null) {
+            for (Warehouse warehouse : rateSheet.getWarehouses()) {
+                for (WarehouseCharges charge : warehouse.getCharges()) {
+                    if (charge.getRate() != null && charge.getCategory() != null && charge.getType() != null) {
+                        rates.putIfAbsent(warehouse.getWarehouseId() + "|" + charge.getCategory() + "|" + charge.getType(),
+                                charge.getRate());
+                    }
+                }
+            }
+        }
+        return rates;
+    }
+
+    /** CATEGORY|type of the charge behind a line, or null if it cannot be told. */
+    private static String chargeKey(InvoiceLine line) {
+        if (line.getCategory() != null && line.getChargeType() != null) {
+            return line.getCategory() + "|" + line.getChargeType();
+        }
+        // Lines written before category/type were stored: "Storage - PER_PALLET_PER_DAY"
+        String description = line.getDescription();
+        int separator = description != null ? description.indexOf(" - ") : -1;
+        if (separator <= 0) {
+            return null;
+        }
+        try {
+            ChargeCategory category = ChargeCategory.valueOf(description.substring(0, separator).trim().toUpperCase());
+            return category + "|" + description.substring(separator + 3).trim();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static List<InvoiceLine> lines(Invoice invoice) {
+        return invoice.getInvoiceLines() != null ? invoice.getInvoiceLines() : List.of();
+    }
+
+    private static final class LineGroup {
+        final String description;
+        final ChargeCategory category;
+        final String chargeType;
+        BigDecimal rate;
+        BigDecimal quantity = BigDecimal.ZERO;
+        boolean ambiguous;
+
+        LineGroup(InvoiceLine first) {
+            String key = chargeKey(first);
+            int separator = key.indexOf('|');
+            this.description = first.getDescription();
+            this.category = ChargeCategory.valueOf(key.substring(0, separator));
+            this.chargeType = key.substring(separator + 1);
+            this.rate = first.getRate();
+        }
+    }
+}
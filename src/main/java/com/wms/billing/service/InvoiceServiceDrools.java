@@ -1,12 +1,12 @@
 package com.wms.billing.service;
 
 import com.wms.billing.domain.*;
+import com.wms.billing.helper.InvoiceContentHasher;
 import com.wms.billing.repository.InvoiceRepository;
 import com.wms.billing.repository.RateSheetRepository;
+import com.wms.billing.repository.UncachedRateSheetLoader;
 import lombok.RequiredArgsConstructor;
-import org.kie.api.runtime.KieContainer;
-import org.kie.api.runtime.KieSession;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
@@ -14,22 +14,29 @@ import org.springframework.web.server.ResponseStatusException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Service that generates invoices by evaluating domain facts (contract, activities, charges)
- * through a Drools KIE session. Populates invoice lines based on rule outcomes and calculates totals.
+ * through a rating engine, by default Drools. Populates invoice lines based on rule outcomes and calculates totals.
  *
  * <p>Workflow:</p>
  * <ol>
- *   <li>Load the contract by id.</li>
+ *   <li>Load the contract by id. Previews read it from the {@link RateSheetSnapshot} when that is enabled and
+ *       current, else through the second-level cache; FINAL invoices always read the database
+ *       ({@link UncachedRateSheetLoader}), as both may lag updates made on another instance.</li>
  *   <li>Resolve charges for the requested warehouse.</li>
- *   <li>Insert facts (contract, activities, charges) into the KIE session.</li>
- *   <li>Fire all rules to produce invoice lines and amounts.</li>
+ *   <li>Rate the activities with the customer's {@link com.wms.billing.rating.RatingEngine}, chosen by
+ *       {@link RatingEngineRouter} (Drools inserts the facts into a KIE session and fires all rules).</li>
  *   <li>Aggregate totals and optionally persist the invoice.</li>
  * </ol>
  *
- * <p>Rules use a global collection <code>invoiceLines</code> to collect results.</p>
+ * <p>Rules use a global collection <code>invoiceLines</code> to collect results. Lines are returned in a
+ * canonical order (category, charge type, description, rate, service date, quantity, amount) rather than agenda
+ * order, so the result does not depend on whether {@link ParallelRatingExecutor} split the activities across
+ * sessions. When {@link InvoiceLineGrouper} is enabled, lines are then grouped before hashing and saving.</p>
  *
  * @author Prasad Ganta
  */
@@ -37,14 +44,25 @@ import java.util.List;
 @RequiredArgsConstructor
 public class InvoiceServiceDrools {
 
-    @Autowired
-    private RateSheetRepository rateSheetRepository;
-
-    @Autowired
-    private InvoiceRepository invoiceRepo;
-
-    @Autowired
-    private KieContainer kieContainer;
+    // Total order over line content (scale included), so equal-valued lines are interchangeable
+    private static final Comparator<BigDecimal> DECIMAL_ORDER = Comparator.nullsFirst(
+            Comparator.<BigDecimal>naturalOrder().thenComparingInt(BigDecimal::scale));
+    private static final Comparator<InvoiceLine> CANONICAL_LINE_ORDER = Comparator
+            .comparing(InvoiceLine::getCategory, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(InvoiceLine::getChargeType, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(InvoiceLine::getDescription, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(InvoiceLine::getRate, DECIMAL_ORDER)
+            .thenComparing(InvoiceLine::getServiceDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(InvoiceLine::getQuantity, DECIMAL_ORDER)
+            .thenComparing(InvoiceLine::getAmount, DECIMAL_ORDER);
+
+    private final RateSheetRepository rateSheetRepository;
+    private final UncachedRateSheetLoader uncachedRateSheetLoader;
+    private final InvoiceRepository invoiceRepo;
+    private final InvoiceStageTimer stageTimer;
+    private final RatingEngineRouter ratingEngines;
+    private final InvoiceLineGrouper lineGrouper;
+    private final ObjectProvider<RateSheetSnapshot> rateSnapshot;
 
     /**
      * Generates an invoice from provided activities and contract configuration within a period.
@@ -63,56 +81,141 @@ public class InvoiceServiceDrools {
                                    LocalDate end,
                                    List<Activity> activities,
                                    boolean preview) {
+        return generateInvoice(rateSheetId, warehouseId, start, end, activities, preview, false);
+    }
+
+    /**
+     * As {@link #generateInvoice(Long, String, LocalDate, LocalDate, List, boolean)}, optionally keeping one line
+     * per rule firing when line grouping ({@link InvoiceLineGrouper}) is enabled.
+     *
+     * @param detail skip line grouping for this invoice
+     */
+    public Invoice generateInvoice(Long rateSheetId,
+                                   String warehouseId,
+                                   LocalDate start,
+                                   LocalDate end,
+                                   List<Activity> activities,
+                                   boolean preview,
+                                   boolean detail) {
+
+        Invoice invoice = rate(rateSheetId, warehouseId, start, end, activities, preview);
+        if (!detail) {
+            groupLines(invoice);
+        }
+
+        if (!preview) {
+            invoice.setContentHash(stageTimer.time("content_hash", () -> InvoiceContentHasher.hash(invoice)));
+            stageTimer.run("save", () -> invoiceRepo.save(invoice));
+        }
+        return invoice;
+    }
+
+    /**
+     * Rates activities into a FINAL invoice, content hash included, without saving it. Meant for callers that
+     * persist many invoices in one transaction (billing runs).
+     *
+     * @return the unsaved FINAL {@link Invoice}
+     */
+    public Invoice rateFinal(Long rateSheetId,
+                             String warehouseId,
+                             LocalDate start,
+                             LocalDate end,
+                             List<Activity> activities) {
+        Invoice invoice = rate(rateSheetId, warehouseId, start, end, activities, false);
+        groupLines(invoice);
+        invoice.setContentHash(stageTimer.time("content_hash", () -> InvoiceContentHasher.hash(invoice)));
+        return invoice;
+    }
 
-        RateSheet rateSheet = rateSheetRepository.getRateSheetByRateSheetId(rateSheetId);
+    /**
+     * Rates activities against a rate sheet that need not be persisted (e.g. a draft under evaluation). Nothing
+     * is saved and the rate sheet's warehouses and charges must already be loaded.
+     *
+     * @return unsaved {@link Invoice} with status {@code SIMULATION}
+     */
+    public Invoice simulate(RateSheet rateSheet,
+                            String warehouseId,
+                            LocalDate start,
+                            LocalDate end,
+                            List<Activity> activities) {
+        Invoice invoice = rate(rateSheet, warehouseId, start, end, activities);
+        groupLines(invoice);
+        invoice.setStatus("SIMULATION");
+        return invoice;
+    }
+
+    private Invoice rate(Long rateSheetId,
+                         String warehouseId,
+                         LocalDate start,
+                         LocalDate end,
+                         List<Activity> activities,
+                         boolean preview) {
+
+        RateSheet rateSheet = stageTimer.time("rate_sheet_load", () -> {
+            RateSheet loaded = preview
+                    ? Optional.ofNullable(rateSnapshot.getIfAvailable()).flatMap(s -> s.find(rateSheetId))
+                            .orElseGet(() -> rateSheetRepository.getRateSheetByRateSheetId(rateSheetId))
+                    : uncachedRateSheetLoader.load(rateSheetId);
+            if (loaded != null) {
+                stageTimer.customer(loaded.getCustomerId());
+            }
+            return loaded;
+        });
 
         if (rateSheet == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "rateSheetId not found: " + rateSheetId);
         }
 
+        Invoice invoice = rate(rateSheet, warehouseId, start, end, activities);
+        invoice.setStatus(preview ? "PREVIEW" : "FINAL");
+        return invoice;
+    }
+
+    private Invoice rate(RateSheet rateSheet,
+                         String warehouseId,
+                         LocalDate start,
+                         LocalDate end,
+                         List<Activity> activities) {
+
         // Ensure lazy associations are initialized before Drools traverses them
         List<Warehouse> warehouses = rateSheet.getWarehouses();
-        if (warehouses != null) {
-            warehouses.size(); // initialize warehouses
-            warehouses.forEach(w -> {
-                if (w.getCharges() != null) {
-                    w.getCharges().size(); // initialize charges
-                }
-            });
-        }
+        stageTimer.run("lazy_init", () -> {
+            if (warehouses != null) {
+                warehouses.size(); // initialize warehouses
+                warehouses.forEach(w -> {
+                    if (w.getCharges() != null) {
+                        w.getCharges().size(); // initialize charges
+                    }
+                });
+            }
+        });
 
         Invoice invoice = new Invoice();
         invoice.setCustomerId(rateSheet.getCustomerId());
-        invoice.setRateSheetId(rateSheetId);
+        invoice.setRateSheetId(rateSheet.getRateSheetId());
         invoice.setWarehouseId(warehouseId);
         invoice.setPeriodStart(start);
         invoice.setPeriodEnd(end);
-        invoice.setStatus(preview ? "PREVIEW" : "FINAL");
-
-        // Prepare Drools session
-        KieSession kieSession = kieContainer.newKieSession("billingKS");
-        List<InvoiceLine> invoiceLines = new ArrayList<>();
-        kieSession.setGlobal("invoiceLines", invoiceLines);
 
-        // Insert only the aggregate root and activities. Rules will traverse nested collections.
-        kieSession.insert(rateSheet);
-        kieSession.insert(warehouses);
-        activities.forEach(kieSession::insert);
-        kieSession.fireAllRules();
-        kieSession.dispose();
+        List<InvoiceLine> invoiceLines =
+                new ArrayList<>(ratingEngines.rate(rateSheet, warehouseId, start, end, activities));
+        // Engine output order (e.g. Drools agenda order across sessions) is not stable; canonical order is
+        stageTimer.run("order_lines", () -> invoiceLines.sort(CANONICAL_LINE_ORDER));
 
         invoice.setInvoiceLines(invoiceLines);
-        BigDecimal total = invoiceLines.stream()
+        BigDecimal total = stageTimer.time("total", () -> invoiceLines.stream()
                 .map(InvoiceLine::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+                .reduce(BigDecimal.ZERO, BigDecimal::add));
         invoice.setTotalAmount(total);
-
-        if (!preview) {
-            invoiceRepo.save(invoice);
-        }
         return invoice;
     }
 
+    private void groupLines(Invoice invoice) {
+        if (lineGrouper.isEnabled()) {
+            List<InvoiceLine> lines = invoice.getInvoiceLines();
+            invoice.setInvoiceLines(stageTimer.time("group_lines", () -> lineGrouper.group(lines)));
+        }
+    }
 
     /**
      * Resolves the list of charges applicable to a given warehouse under the provided contract.
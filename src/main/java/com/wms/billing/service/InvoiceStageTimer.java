@@ -0,0 +1,108 @@
+package com.wms.billing.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the stages of the invoice pipeline (rate sheet load, Drools session, Jasper fill/export, ...).
+ *
+ * <p>Each stage is recorded in the {@code billing.invoice.stage} timer, with a percentile histogram, tagged
+ * {@code stage}, {@code endpoint} (the matched request mapping, or {@code job:<type>}) and {@code tier}. It is
+ * also added to the current {@link StageTimings}, which feeds the {@code Server-Timing} header.</p>
+ *
+ * <p>Tiers come from {@code billing.metrics.customer-tiers}, a map of customer id to tier name. Customers not
+ * listed get {@code billing.metrics.default-tier}. Customer ids themselves are never used as tags, so the
+ * series count stays bounded.</p>
+ */
+@Component
+public class InvoiceStageTimer {
+
+    /** A stage body; {@code E} lets callers keep their own checked exception. */
+    @FunctionalInterface
+    public interface Stage<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /** A stage body without a result. */
+    @FunctionalInterface
+    public interface VoidStage<E extends Exception> {
+        void run() throws E;
+    }
+
+    private static final String UNKNOWN = "unknown";
+
+    private final MeterRegistry registry;
+    private final Map<String, String> customerTiers;
+    private final String defaultTier;
+
+    public InvoiceStageTimer(MeterRegistry registry,
+                             @Value("#{${billing.metrics.customer-tiers:{:}}}") Map<String, String> customerTiers,
+                             @Value("${billing.metrics.default-tier:standard}") String defaultTier) {
+        this.registry = registry;
+        this.customerTiers = customerTiers;
+        this.defaultTier = defaultTier;
+    }
+
+    public <T, E extends Exception> T time(String stage, Stage<T, E> body) throws E {
+        long started = System.nanoTime();
+        try {
+            return body.run();
+        } finally {
+            record(stage, System.nanoTime() - started);
+        }
+    }
+
+    public <E extends Exception> void run(String stage, VoidStage<E> body) throws E {
+        long started = System.nanoTime();
+        try {
+            body.run();
+        } finally {
+            record(stage, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Attribute the rest of the current request to a customer's tier. Call it as soon as the customer is known,
+     * ideally inside the stage that loads it, so that stage is already tagged.
+     */
+    public void customer(String customerId) {
+        StageTimings timings = StageTimings.current();
+        if (timings != null) {
+            timings.setTier(tierOf(customerId));
+        }
+    }
+
+    private String tierOf(String customerId) {
+        if (customerId == null) {
+            return UNKNOWN;
+        }
+        return customerTiers.getOrDefault(customerId, defaultTier);
+    }
+
+    private void record(String stage, long nanos) {
+        StageTimings timings = StageTimings.current();
+        String endpoint = "none";
+        String tier = UNKNOWN;
+        if (timings != null) {
+            timings.add(stage, nanos);
+            endpoint = timings.getEndpoint() != null ? timings.getEndpoint() : UNKNOWN;
+            tier = timings.getTier() != null ? timings.getTier() : UNKNOWN;
+        }
+        Timer.builder("billing.invoice.stage")
+                .description("Duration of invoice pipeline stages")
+                .tag("stage", stage)
+                .tag("endpoint", endpoint)
+                .tag("tier", tier)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -2,17 +2,25 @@ package com.wms.billing.service;
 
 import com.wms.billing.domain.Invoice;
 import com.wms.billing.domain.InvoiceTemplate;
+import com.wms.billing.repository.InvoiceLineJdbcRepository;
 import net.sf.jasperreports.engine.*;
 import net.sf.jasperreports.engine.data.JRBeanCollectionDataSource;
+import net.sf.jasperreports.engine.fill.JRSwapFileVirtualizer;
 import net.sf.jasperreports.engine.util.JRLoader;
+import net.sf.jasperreports.engine.util.JRSwapFile;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Spring service that renders {@link Invoice} instances to PDF using JasperReports.
@@ -62,7 +70,13 @@ import java.util.Map;
  *
  * <p>Performance note:</p>
  * <ul>
- *   <li>Compiling .jrxml templates at runtime is convenient but expensive. Consider pre-compiling templates to .jasper or adding a caching layer if this method is invoked frequently.</li>
+ *   <li>Compiling .jrxml templates at runtime is convenient but expensive, so loaded reports are kept per file
+ *       path until the file's modification time or size changes. {@link StartupWarmup} loads the active
+ *       templates before the instance reports ready.</li>
+ *   <li>Large invoices (more lines than {@code billing.pdf.large-invoice.line-threshold}) are filled with a
+ *       {@link JRSwapFileVirtualizer}, so filled pages are swapped to disk instead of accumulating in the heap.</li>
+ *   <li>Persisted invoices are rendered from a paged JDBC cursor over {@code invoice_line}
+ *       (see {@link #writeInvoicePdf(Invoice, JasperReport, OutputStream)}), never from the eager line collection.</li>
  * </ul>
  *
  * @author Prasad Ganta
@@ -72,14 +86,57 @@ import java.util.Map;
 public class JasperInvoiceGenerator {
 
     private final InvoiceTemplateService templateService;
+    private final InvoiceLineJdbcRepository invoiceLineRepository;
+    private final InvoiceStageTimer stageTimer;
+    private final InvoiceLineGrouper lineGrouper;
+
+    private final int largeInvoiceLineThreshold;
+    private final int linePageSize;
+    private final int virtualizerMaxPages;
+    private final String swapDirectory;
+    private final int swapBlockSize;
+    private final int swapMinGrowCount;
+
+    // Absolute template path -> loaded report; a JasperReport can be filled by many threads at once
+    private final ConcurrentMap<String, LoadedReport> loadedReports = new ConcurrentHashMap<>();
+
+    private record LoadedReport(long lastModified, long length, JasperReport report) {
+    }
 
     /**
      * Create a new generator with the required template lookup service.
      *
      * @param templateService service used to resolve a customer's active invoice template
+     * @param invoiceLineRepository paged line access for persisted invoices
+     * @param stageTimer records template, compile, fill and export stage durations
+     * @param lineGrouper groups the lines of in-memory invoices before fill
+     * @param largeInvoiceLineThreshold line count above which the swap-file virtualizer is used
+     * @param linePageSize number of lines fetched per page when rendering persisted invoices
+     * @param virtualizerMaxPages filled pages kept in memory before swapping to disk
+     * @param swapDirectory directory for virtualizer swap files
+     * @param swapBlockSize swap file block size in bytes
+     * @param swapMinGrowCount minimum number of blocks the swap file grows by
      */
-    public JasperInvoiceGenerator(InvoiceTemplateService templateService) {
+    public JasperInvoiceGenerator(InvoiceTemplateService templateService,
+                                  InvoiceLineJdbcRepository invoiceLineRepository,
+                                  InvoiceStageTimer stageTimer,
+                                  InvoiceLineGrouper lineGrouper,
+                                  @Value("${billing.pdf.large-invoice.line-threshold:5000}") int largeInvoiceLineThreshold,
+                                  @Value("${billing.pdf.large-invoice.page-size:1000}") int linePageSize,
+                                  @Value("${billing.pdf.virtualizer.max-pages:50}") int virtualizerMaxPages,
+                                  @Value("${billing.pdf.virtualizer.swap-dir:${java.io.tmpdir}}") String swapDirectory,
+                                  @Value("${billing.pdf.virtualizer.block-size:4096}") int swapBlockSize,
+                                  @Value("${billing.pdf.virtualizer.min-grow-count:100}") int swapMinGrowCount) {
         this.templateService = templateService;
+        this.invoiceLineRepository = invoiceLineRepository;
+        this.stageTimer = stageTimer;
+        this.lineGrouper = lineGrouper;
+        this.largeInvoiceLineThreshold = largeInvoiceLineThreshold;
+        this.linePageSize = linePageSize;
+        this.virtualizerMaxPages = virtualizerMaxPages;
+        this.swapDirectory = swapDirectory;
+        this.swapBlockSize = swapBlockSize;
+        this.swapMinGrowCount = swapMinGrowCount;
     }
 
     /**
@@ -99,7 +156,61 @@ public class JasperInvoiceGenerator {
      * @throws ResponseStatusException with status 400 if the template path is missing, the file is not found, or the file type is unsupported
      */
     public byte[] generateInvoicePdf(Invoice invoice) throws Exception {
-        InvoiceTemplate template = templateService.getCustomerTemplate(invoice.getCustomerId());
+        return generateInvoicePdf(invoice, loadCustomerReport(invoice.getCustomerId()));
+    }
+
+    /**
+     * Render an in-memory invoice with an already loaded report. When line grouping is enabled, lines are grouped
+     * first (on a copy), so an invoice rated with {@code detail} still renders one line per charge.
+     *
+     * @param invoice the fully computed invoice to render
+     * @param jasperReport report resolved via {@link #loadCustomerReport(String)} or {@link #loadReport(InvoiceTemplate)}
+     * @return a byte array containing the generated PDF
+     * @throws JRException if filling or export fails
+     */
+    public byte[] generateInvoicePdf(Invoice invoice, JasperReport jasperReport) throws JRException {
+        List<?> lines = (invoice.getInvoiceLines() == null) ? List.of() : lineGrouper.group(invoice.getInvoiceLines());
+        JRBeanCollectionDataSource ds = new JRBeanCollectionDataSource(lines);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fillAndExport(jasperReport, buildParameters(invoice), ds, lines.size(), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Render a persisted invoice straight to {@code out}.
+     *
+     * <p>Lines are streamed from {@code invoice_line} in pages of {@code billing.pdf.large-invoice.page-size},
+     * so the eager {@link Invoice#getInvoiceLines()} collection is never loaded. The swap-file virtualizer
+     * is enabled when the stored line count exceeds the large-invoice threshold.</p>
+     *
+     * @param header invoice header as returned by {@link InvoiceLineJdbcRepository#findHeader(Long)}
+     * @param jasperReport report resolved up front via {@link #loadCustomerReport(String)}
+     * @param out destination stream; not closed by this method
+     * @throws JRException if filling or export fails
+     */
+    public void writeInvoicePdf(Invoice header, JasperReport jasperReport, OutputStream out) throws JRException {
+        long lineCount = invoiceLineRepository.countLines(header.getId());
+        JRDataSource ds = new InvoiceLineDataSource(invoiceLineRepository.iterateLines(header.getId(), linePageSize));
+        fillAndExport(jasperReport, buildParameters(header), ds, lineCount, out);
+    }
+
+    /**
+     * Resolve the customer's template and load (or compile) it as a {@link JasperReport}.
+     *
+     * @throws ResponseStatusException with status 400 if the template path is missing, the file is not found, or the file type is unsupported
+     */
+    public JasperReport loadCustomerReport(String customerId) throws JRException {
+        return loadReport(stageTimer.time("template_resolve", () -> templateService.getCustomerTemplate(customerId)));
+    }
+
+    /**
+     * Load (or compile) an already resolved template as a {@link JasperReport}. The result is reused until the
+     * template file changes.
+     *
+     * @throws ResponseStatusException with status 400 if the template path is missing, the file is not found, or the file type is unsupported
+     */
+    public JasperReport loadReport(InvoiceTemplate template) throws JRException {
         String path = template.getFilePath();
         if (path == null || path.isBlank()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Template file path is not configured.");
@@ -110,16 +221,25 @@ public class JasperInvoiceGenerator {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Template file not found: " + path);
         }
 
-        JasperReport jasperReport;
         String lower = path.toLowerCase();
-        if (lower.endsWith(".jrxml")) {
-            jasperReport = JasperCompileManager.compileReport(f.getAbsolutePath());
-        } else if (lower.endsWith(".jasper")) {
-            jasperReport = (JasperReport) JRLoader.loadObject(f);
-        } else {
+        if (!lower.endsWith(".jrxml") && !lower.endsWith(".jasper")) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported template file type: " + path);
         }
+        String key = f.getAbsolutePath();
+        long lastModified = f.lastModified();
+        long length = f.length();
+        LoadedReport loaded = loadedReports.get(key);
+        if (loaded != null && loaded.lastModified() == lastModified && loaded.length() == length) {
+            return loaded.report();
+        }
+        JasperReport report = lower.endsWith(".jrxml")
+                ? stageTimer.time("jasper_compile", () -> JasperCompileManager.compileReport(key))
+                : stageTimer.time("jasper_load", () -> (JasperReport) JRLoader.loadObject(f));
+        loadedReports.put(key, new LoadedReport(lastModified, length, report));
+        return report;
+    }
 
+    private Map<String, Object> buildParameters(Invoice invoice) {
         Map<String, Object> params = new HashMap<>();
         // Note: CUSTOMER_NAME currently uses customerId as provided by Invoice.
         // If a customer name is available in your domain, map it here instead.
@@ -127,11 +247,30 @@ public class JasperInvoiceGenerator {
         params.put("PERIOD_START", invoice.getPeriodStart().toString());
         params.put("PERIOD_END", invoice.getPeriodEnd().toString());
         params.put("TOTAL_AMOUNT", invoice.getTotalAmount());
+        return params;
+    }
 
-        List<?> lines = (invoice.getInvoiceLines() == null) ? List.of() : invoice.getInvoiceLines();
-        JRBeanCollectionDataSource ds = new JRBeanCollectionDataSource(lines);
-        JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, params, ds);
+    private void fillAndExport(JasperReport jasperReport,
+                               Map<String, Object> params,
+                               JRDataSource ds,
+                               long lineCount,
+                               OutputStream out) throws JRException {
+        if (lineCount <= largeInvoiceLineThreshold) {
+            JasperPrint jasperPrint = stageTimer.time("jasper_fill", () -> JasperFillManager.fillReport(jasperReport, params, ds));
+            stageTimer.run("jasper_export", () -> JasperExportManager.exportReportToPdfStream(jasperPrint, out));
+            return;
+        }
 
-        return JasperExportManager.exportReportToPdf(jasperPrint);
+        JRSwapFile swapFile = new JRSwapFile(swapDirectory, swapBlockSize, swapMinGrowCount);
+        JRSwapFileVirtualizer virtualizer = new JRSwapFileVirtualizer(virtualizerMaxPages, swapFile, true);
+        try {
+            params.put(JRParameter.REPORT_VIRTUALIZER, virtualizer);
+            JasperPrint jasperPrint = stageTimer.time("jasper_fill", () -> JasperFillManager.fillReport(jasperReport, params, ds));
+            // No more pages will be added; let the export read swapped pages back without re-virtualizing
+            virtualizer.setReadOnly(true);
+            stageTimer.run("jasper_export", () -> JasperExportManager.exportReportToPdfStream(jasperPrint, out));
+        } finally {
+            virtualizer.cleanup();
+        }
     }
-}
\ No newline at end of file
+}
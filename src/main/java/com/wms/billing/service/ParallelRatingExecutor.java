@@ -0,0 +1,98 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Function;
+
+/**
+ * Splits the activities of one very large invoice into contiguous chunks and rates them on a dedicated
+ * fork-join pool. Enabled with {@code billing.rating.parallel.enabled=true}.
+ *
+ * <p>Requests with at least {@code billing.rating.parallel.threshold} activities are cut into chunks of
+ * {@code billing.rating.parallel.chunk-size}. Results come back in chunk order whatever order the chunks finish
+ * in; {@link InvoiceServiceDrools} then puts the lines in canonical order, so an invoice is the same whether it
+ * was rated in one session or many.</p>
+ *
+ * <p>The pool has {@code billing.rating.parallel.parallelism} workers (0 = available processors) and is separate
+ * from the common pool, so large invoices do not compete with parallel streams elsewhere in the JVM.</p>
+ */
+@Slf4j
+@Component
+public class ParallelRatingExecutor {
+
+    private final boolean enabled;
+    private final int threshold;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    public ParallelRatingExecutor(@Value("${billing.rating.parallel.enabled:false}") boolean enabled,
+                                  @Value("${billing.rating.parallel.threshold:50000}") int threshold,
+                                  @Value("${billing.rating.parallel.chunk-size:20000}") int chunkSize,
+                                  @Value("${billing.rating.parallel.parallelism:0}") int parallelism) {
+        if (enabled && chunkSize <= 0) {
+            throw new IllegalArgumentException("billing.rating.parallel.chunk-size must be positive");
+        }
+        this.enabled = enabled;
+        this.threshold = Math.max(threshold, chunkSize + 1);
+        this.chunkSize = chunkSize;
+        this.pool = enabled ? newPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors())
+                : null;
+        if (enabled) {
+            log.info("Parallel rating for invoices of {}+ activities: chunks of {}, {} workers",
+                    this.threshold, chunkSize, pool.getParallelism());
+        }
+    }
+
+    /** Whether an invoice with {@code activityCount} activities should be rated in chunks. */
+    public boolean shouldSplit(int activityCount) {
+        return enabled && activityCount >= threshold;
+    }
+
+    /**
+     * Apply {@code rater} to consecutive chunks of {@code activities} in parallel.
+     *
+     * @return one result per chunk, in chunk order
+     */
+    public <T> List<T> mapChunks(List<Activity> activities, Function<List<Activity>, T> rater) {
+        List<ForkJoinTask<T>> tasks = new ArrayList<>();
+        for (int from = 0; from < activities.size(); from += chunkSize) {
+            List<Activity> chunk = activities.subList(from, Math.min(from + chunkSize, activities.size()));
+            tasks.add(pool.submit(() -> rater.apply(chunk)));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (ForkJoinTask<T> task : tasks) {
+                results.add(task.join());
+            }
+        } catch (RuntimeException e) {
+            tasks.forEach(task -> task.cancel(false));
+            throw e;
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private static ForkJoinPool newPool(int parallelism) {
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("invoice-rating-" + t.getPoolIndex());
+            return t;
+        };
+        return new ForkJoinPool(parallelism, factory, null, false);
+    }
+}
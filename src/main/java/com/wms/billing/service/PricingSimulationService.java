@@ -0,0 +1,283 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.domain.InvoiceLine;
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.dto.ChargeCategory;
+import com.wms.billing.dto.RateSheetDTO;
+import com.wms.billing.dto.SimulationRequest;
+import com.wms.billing.dto.SimulationResultDTO;
+import com.wms.billing.exception.JobQueueFullException;
+import com.wms.billing.helper.EntityMapper;
+import com.wms.billing.repository.RateSheetRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What-if pricing: rates one activity set against several candidate rate sheets (saved or draft) in parallel,
+ * persisting nothing.
+ *
+ * <p>The activity set is parsed and aggregated once, to one activity per (category, type) with the summed
+ * quantity, and every candidate is rated from that aggregate. Like incremental billing, this relies on the rules
+ * charging rate × quantity. Each candidate gets its own copy of the aggregate because the rules write the
+ * computed amount back onto the activity facts.</p>
+ *
+ * <p>Candidates run on a pool of {@code billing.simulation.concurrency} threads with a bounded queue; a full
+ * queue answers 429 like the invoice job queues. A simulation that does not finish within
+ * {@code billing.simulation.timeout} answers 503.</p>
+ */
+@Slf4j
+@Service
+public class PricingSimulationService {
+
+    private final InvoiceServiceDrools invoiceService;
+    private final RateSheetRepository rateSheetRepository;
+    private final ObjectProvider<BillingActivitySource> activitySource;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int maxCandidates;
+    private final Duration timeout;
+    private final ThreadPoolExecutor executor;
+
+    public PricingSimulationService(InvoiceServiceDrools invoiceService,
+                                    RateSheetRepository rateSheetRepository,
+                                    ObjectProvider<BillingActivitySource> activitySource,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${billing.simulation.concurrency:4}") int concurrency,
+                                    @Value("${billing.simulation.queue-capacity:100}") int queueCapacity,
+                                    @Value("${billing.simulation.max-candidates:20}") int maxCandidates,
+                                    @Value("${billing.simulation.timeout:30s}") Duration timeout) {
+        this.invoiceService = invoiceService;
+        this.rateSheetRepository = rateSheetRepository;
+        this.activitySource = activitySource;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.maxCandidates = maxCandidates;
+        this.timeout = timeout;
+
+        AtomicInteger seq = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "pricing-simulation-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), factory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public SimulationResultDTO simulate(SimulationRequest request) {
+        List<Activity> activities = loadActivities(request);
+        List<RateSheet> candidates = loadCandidates(request);
+        List<String> labels = labels(request);
+
+        // Shared preprocessing, done once for all candidates
+        List<Activity> aggregate = aggregate(request.getWarehouseId(), activities);
+
+        List<Future<Invoice>> futures = new ArrayList<>(candidates.size());
+        try {
+            for (RateSheet candidate : candidates) {
+                futures.add(executor.submit(() -> rate(candidate, request, aggregate)));
+            }
+        } catch (RejectedExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new JobQueueFullException("Simulation queue is full", 1);
+        }
+
+        List<SimulationResultDTO.Candidate> results = new ArrayList<>(candidates.size());
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Invoice invoice = futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                results.add(toCandidate(labels.get(i), candidates.get(i).getRateSheetId(), invoice, aggregate));
+            }
+        } catch (TimeoutException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Simulation did not finish within " + timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Simulation interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
+
+        return SimulationResultDTO.builder()
+                .warehouseId(request.getWarehouseId())
+                .periodStart(request.getPeriodStart())
+                .periodEnd(request.getPeriodEnd())
+                .activityCount(activities.size())
+                .aggregatedActivityCount(aggregate.size())
+                .candidates(results)
+                .build();
+    }
+
+    private Invoice rate(RateSheet candidate, SimulationRequest request, List<Activity> aggregate) {
+        StageTimings.bind(new StageTimings("simulation"));
+        try {
+            List<Activity> facts = new ArrayList<>(aggregate.size());
+            for (Activity a : aggregate) {
+                Activity copy = new Activity();
+                copy.setWarehouseId(a.getWarehouseId());
+                copy.setCategory(a.getCategory());
+                copy.setType(a.getType());
+                copy.setQuantity(a.getQuantity());
+                facts.add(copy);
+            }
+            return invoiceService.simulate(candidate, request.getWarehouseId(),
+                    request.getPeriodStart(), request.getPeriodEnd(), facts);
+        } finally {
+            StageTimings.unbind();
+        }
+    }
+
+    private List<Activity> loadActivities(SimulationRequest request) {
+        boolean inline = request.getActivities() != null && !request.getActivities().isEmpty();
+        boolean ledger = request.getLedgerCustomerId() != null && !request.getLedgerCustomerId().isBlank();
+        if (inline == ledger) {
+            throw new IllegalArgumentException("Provide either activities or ledgerCustomerId");
+        }
+        if (inline) {
+            return EntityMapper.toActivities(request.getWarehouseId(), request.getActivities());
+        }
+
+        LocalDate start = request.getPeriodStart();
+        LocalDate end = request.getPeriodEnd();
+        if (start == null || end == null || end.isBefore(start)) {
+            throw new IllegalArgumentException("A ledger simulation needs periodStart <= periodEnd");
+        }
+        BillingActivitySource source = activitySource.getIfAvailable();
+        if (source == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "The activity ledger is not enabled");
+        }
+        return source.findActivities(request.getLedgerCustomerId(), request.getWarehouseId(), start, end);
+    }
+
+    private List<RateSheet> loadCandidates(SimulationRequest request) {
+        List<Long> ids = request.getRateSheetIds() != null ? request.getRateSheetIds() : List.of();
+        List<RateSheetDTO> drafts = request.getRateSheets() != null ? request.getRateSheets() : List.of();
+        int count = ids.size() + drafts.size();
+        if (count == 0) {
+            throw new IllegalArgumentException("At least one rateSheetId or draft rate sheet is required");
+        }
+        if (count > maxCandidates) {
+            throw new IllegalArgumentException("At most " + maxCandidates + " candidate rate sheets per simulation");
+        }
+
+        List<RateSheet> candidates = new ArrayList<>(count);
+        // Saved sheets are fully loaded here so worker threads never touch a lazy collection
+        readOnlyTransaction.executeWithoutResult(status -> {
+            for (Long id : ids) {
+                RateSheet rateSheet = rateSheetRepository.getRateSheetByRateSheetId(id);
+                if (rateSheet == null) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "rateSheetId not found: " + id);
+                }
+                if (rateSheet.getWarehouses() != null) {
+                    rateSheet.getWarehouses().forEach(w -> w.getCharges().size());
+                }
+                candidates.add(rateSheet);
+            }
+        });
+        for (RateSheetDTO draft : drafts) {
+            if (draft.getWarehouses() == null) {
+                throw new IllegalArgumentException("Draft rate sheet '" + draft.getName() + "' has no warehouses");
+            }
+            candidates.add(EntityMapper.toEntity(draft));
+        }
+        return candidates;
+    }
+
+    private static List<String> labels(SimulationRequest request) {
+        List<String> labels = new ArrayList<>();
+        if (request.getRateSheetIds() != null) {
+            request.getRateSheetIds().forEach(id -> labels.add("rateSheet:" + id));
+        }
+        if (request.getRateSheets() != null) {
+            int n = 0;
+            for (RateSheetDTO draft : request.getRateSheets()) {
+                n++;
+                labels.add(draft.getName() != null ? draft.getName() : "draft-" + n);
+            }
+        }
+        return labels;
+    }
+
+    /** One activity per (category, type), quantities summed, in first-seen order. */
+    private static List<Activity> aggregate(String warehouseId, List<Activity> activities) {
+        Map<String, Activity> merged = new LinkedHashMap<>();
+        for (Activity a : activities) {
+            if (a.getCategory() == null || a.getType() == null || a.getQuantity() == null) {
+                continue;
+            }
+            Activity sum = merged.computeIfAbsent(a.getCategory() + "|" + a.getType(), k -> {
+                Activity s = new Activity();
+                s.setWarehouseId(warehouseId);
+                s.setCategory(a.getCategory());
+                s.setType(a.getType());
+                s.setQuantity(BigDecimal.ZERO);
+                return s;
+            });
+            sum.setQuantity(sum.getQuantity().add(a.getQuantity()));
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private static SimulationResultDTO.Candidate toCandidate(String label, Long rateSheetId, Invoice invoice,
+                                                             List<Activity> aggregate) {
+        Map<ChargeCategory, BigDecimal> byCategory = new EnumMap<>(ChargeCategory.class);
+        Set<String> priced = new HashSet<>();
+        for (InvoiceLine line : invoice.getInvoiceLines()) {
+            if (line.getCategory() != null) {
+                byCategory.merge(line.getCategory(), line.getAmount(), BigDecimal::add);
+                priced.add(line.getCategory() + "|" + line.getChargeType());
+            }
+        }
+        List<String> unpriced = aggregate.stream()
+                .map(a -> a.getCategory() + "|" + a.getType())
+                .filter(key -> !priced.contains(key))
+                .toList();
+
+        return SimulationResultDTO.Candidate.builder()
+                .label(label)
+                .rateSheetId(rateSheetId)
+                .totalAmount(invoice.getTotalAmount())
+                .byCategory(byCategory)
+                .unpriced(unpriced)
+                .lines(invoice.getInvoiceLines())
+                .build();
+    }
+}
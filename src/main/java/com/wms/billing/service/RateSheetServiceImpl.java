@@ -9,6 +9,7 @@ import com.wms.billing.repository.RateSheetRepository;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -21,6 +22,7 @@ import java.util.stream.Collectors;
 public class RateSheetServiceImpl implements RateSheetService {
 
     private final RateSheetRepository rateSheetRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     @Transactional
@@ -77,6 +79,10 @@ public class RateSheetServiceImpl implements RateSheetService {
     @Override
     @Transactional
     public RateSheet updateRateSheet(Long rateSheetId, RateSheet rateSheetRequest) {
+        // Bumped first: locks the row, so a concurrent update of the same rate sheet waits for this one
+        if (rateSheetRepository.bumpRevision(rateSheetId) == 0) {
+            throw new RateSheetNotFoundException("RateSheet not found: " + rateSheetId);
+        }
         RateSheet existing = rateSheetRepository.findById(rateSheetId)
                 .orElseThrow(() -> new RateSheetNotFoundException("RateSheet not found: " + rateSheetId));
 
@@ -144,9 +150,10 @@ public class RateSheetServiceImpl implements RateSheetService {
 
         }
 
-        return rateSheetRepository.save(existing);
-
-
+        RateSheet saved = rateSheetRepository.save(existing);
+        // Listeners act after commit, so derived results are not rebuilt from the old rows
+        eventPublisher.publishEvent(new RateSheetUpdatedEvent(rateSheetId));
+        return saved;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,219 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.exception.FileStorageException;
+import com.wms.billing.repository.RateSheetRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local snapshot of every rate sheet, so a freshly started instance prices its first previews without loading
+ * rate sheets from the database. Enabled with {@code billing.rate-snapshot.enabled=true}.
+ *
+ * <p>Rate sheets are flattened with their warehouses and charges into one versioned binary file
+ * ({@code billing.rate-snapshot.file}, format in {@link RateSnapshotFile}). On startup the file is memory-mapped
+ * and indexed, and {@link InvoiceServiceDrools} serves previews from it right away: each lookup decodes a
+ * detached rate sheet from the mapped record. FINAL invoices never read the snapshot.</p>
+ *
+ * <p>The snapshot is reconciled in the background, first right after startup and then every
+ * {@code billing.rate-snapshot.reconcile-interval}: the {@code revision} stamp of every rate sheet is read from
+ * the database, rate sheets whose revision differs (or that are new) are reloaded, deleted ones are dropped, and
+ * the file is rewritten. Until a stale entry has been found it is served as written, so an update made on another
+ * instance is picked up at the next reconcile. An update on this instance stops its entry from being served as
+ * soon as the update commits.</p>
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "billing.rate-snapshot.enabled", havingValue = "true")
+public class RateSheetSnapshot {
+
+    /** A mapped snapshot file and its index. Immutable; replaced as a whole. */
+    private record Image(ByteBuffer buffer, Map<Long, RateSnapshotFile.Stamp> stamps) {
+
+        static final Image EMPTY = new Image(ByteBuffer.allocate(0), Map.of());
+
+        Image without(Set<Long> rateSheetIds) {
+            Map<Long, RateSnapshotFile.Stamp> kept = new HashMap<>(stamps);
+            kept.keySet().removeAll(rateSheetIds);
+            return new Image(buffer, kept);
+        }
+    }
+
+    private final RateSheetRepository rateSheetRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Path file;
+
+    private volatile Image image = Image.EMPTY;
+    // rateSheetId -> sequence number of its latest local update not yet reloaded by a reconcile
+    private final ConcurrentMap<Long, Long> updatedSince = new ConcurrentHashMap<>();
+    private final AtomicLong updateSequence = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public RateSheetSnapshot(RateSheetRepository rateSheetRepository,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry registry,
+                             @Value("${billing.rate-snapshot.file:${java.io.tmpdir}/wms-billing/rate-snapshot.bin}") String file) {
+        this.rateSheetRepository = rateSheetRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.file = Paths.get(file);
+
+        this.hits = Counter.builder("billing.rate-snapshot.lookups").tag("result", "hit")
+                .description("Rate sheet lookups served from the rate snapshot")
+                .register(registry);
+        this.misses = Counter.builder("billing.rate-snapshot.lookups").tag("result", "miss")
+                .description("Rate sheet lookups left to the database")
+                .register(registry);
+        Gauge.builder("billing.rate-snapshot.rate-sheets", this, s -> s.image.stamps().size())
+                .register(registry);
+    }
+
+    @PostConstruct
+    void open() {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            throw new FileStorageException("Could not create rate snapshot directory for " + file, e);
+        }
+        if (!Files.isRegularFile(file)) {
+            log.info("No rate snapshot at {}; it is built by the first reconcile", file);
+            return;
+        }
+        try {
+            image = map();
+            log.info("Rate snapshot opened at {}: {} rate sheet(s)", file, image.stamps().size());
+        } catch (IOException | RuntimeException e) {
+            // Unreadable or from another format version: serve from the database until the reconcile rewrites it
+            log.warn("Ignoring rate snapshot at {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * The rate sheet as of the snapshot, detached, with its warehouses and charges loaded.
+     *
+     * @return empty if the snapshot does not hold it or it was updated on this instance since the last reconcile
+     */
+    public Optional<RateSheet> find(Long rateSheetId) {
+        Image current = image;
+        RateSnapshotFile.Stamp stamp = current.stamps().get(rateSheetId);
+        if (stamp == null || updatedSince.containsKey(rateSheetId)) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(RateSnapshotFile.decode(current.buffer(), stamp));
+    }
+
+    /** Stop serving a rate sheet once its update has committed, until a reconcile reloads it. */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRateSheetUpdated(RateSheetUpdatedEvent event) {
+        updatedSince.put(event.rateSheetId(), updateSequence.incrementAndGet());
+    }
+
+    /**
+     * Bring the snapshot in line with the database: reload rate sheets whose revision differs, drop deleted ones
+     * and rewrite the file if anything changed.
+     */
+    @Scheduled(initialDelayString = "${billing.rate-snapshot.reconcile-initial-delay:0}",
+            fixedDelayString = "${billing.rate-snapshot.reconcile-interval:PT5M}")
+    public synchronized void reconcile() {
+        long started = System.nanoTime();
+        // Updates committed after this point may not be visible to the reads below, so they stay invalidated
+        long sequence = updateSequence.get();
+        Set<Long> updated = new HashSet<>(updatedSince.keySet());
+
+        Map<Long, Long> revisions = new HashMap<>();
+        for (Object[] row : rateSheetRepository.findRevisions()) {
+            revisions.put((Long) row[0], row[1] == null ? 0L : (Long) row[1]);
+        }
+        Image current = image;
+        Set<Long> stale = new HashSet<>(updated);
+        current.stamps().forEach((id, stamp) -> {
+            if (!Long.valueOf(stamp.revision()).equals(revisions.get(id))) {
+                stale.add(id);
+            }
+        });
+        Set<Long> missing = new HashSet<>(revisions.keySet());
+        missing.removeAll(current.stamps().keySet());
+        if (stale.isEmpty() && missing.isEmpty()) {
+            log.debug("Rate snapshot is current ({} rate sheets)", revisions.size());
+            return;
+        }
+        // Stop serving stale entries now rather than after the reload
+        image = current.without(stale);
+
+        Set<Long> reload = new HashSet<>(missing);
+        stale.stream().filter(revisions::containsKey).forEach(reload::add);
+        Map<Long, byte[]> reloaded = transactionTemplate.execute(status -> load(reload));
+
+        // Records ordered by id, so an unchanged database always produces the same file
+        Map<Long, byte[]> records = new TreeMap<>(reloaded);
+        current.stamps().forEach((id, stamp) -> {
+            if (revisions.containsKey(id) && !stale.contains(id)) {
+                records.put(id, RateSnapshotFile.copy(current.buffer(), stamp));
+            }
+        });
+        try {
+            RateSnapshotFile.write(file, new ArrayList<>(records.values()));
+            image = map();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not rewrite rate snapshot at {}; stale entries stay unserved", file, e);
+            return;
+        }
+        updated.forEach(id -> updatedSince.computeIfPresent(id, (k, seq) -> seq <= sequence ? null : seq));
+        long dropped = current.stamps().keySet().stream().filter(id -> !revisions.containsKey(id)).count();
+        log.info("Rate snapshot reconciled: {} reloaded, {} dropped, {} rate sheets in {} ms",
+                reloaded.size(), dropped, records.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private Map<Long, byte[]> load(Set<Long> rateSheetIds) {
+        Map<Long, byte[]> records = new HashMap<>();
+        // Encoding walks the lazy warehouses and charges, so it runs inside the transaction
+        for (RateSheet rateSheet : rateSheetRepository.findAllById(rateSheetIds)) {
+            long revision = rateSheet.getRevision() == null ? 0L : rateSheet.getRevision();
+            records.put(rateSheet.getRateSheetId(), RateSnapshotFile.encode(rateSheet, revision));
+        }
+        return records;
+    }
+
+    private Image map() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed and after the file is replaced
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Image(buffer, RateSnapshotFile.index(buffer));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.wms.billing.service;
+
+/**
+ * Published by {@link RateSheetService#updateRateSheet} once a rate sheet's pricing may have changed.
+ * Listeners that hold results derived from the rate sheet use it to drop them.
+ *
+ * @param rateSheetId the updated rate sheet
+ */
+public record RateSheetUpdatedEvent(Long rateSheetId) {
+}
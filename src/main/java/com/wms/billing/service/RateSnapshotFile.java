@@ -0,0 +1,271 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.domain.Warehouse;
+import com.wms.billing.domain.WarehouseCharges;
+import com.wms.billing.dto.AccessorialType;
+import com.wms.billing.dto.ChargeCategory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * File format of the {@link RateSheetSnapshot}: every rate sheet flattened with its warehouses and charges.
+ *
+ * <pre>
+ * int    magic ("WRSS")
+ * int    format version
+ * int    record count
+ * then per record:
+ * int    payload length
+ * int    CRC32 of the payload
+ * long   rateSheetId
+ * long   revision
+ * string customerId, name
+ * short  warehouse count, then per warehouse:
+ *   string warehouseId
+ *   short  charge count, then per charge:
+ *     byte   charge category (ordinal)
+ *     byte   accessorial type (ordinal, -1 if none)
+ *     string type, unit
+ *     byte   rate scale
+ *     byte   rate unscaled length (-1 if no rate), two's-complement bytes
+ * </pre>
+ *
+ * <p>A string is an unsigned short length ({@code 0xFFFF} for null) followed by UTF-8 bytes. A file with another
+ * magic or version, or with a record failing its CRC, is rejected as a whole; the snapshot is then rebuilt from
+ * the database.</p>
+ */
+final class RateSnapshotFile {
+
+    static final int MAGIC = 0x57525353;
+    static final int FORMAT_VERSION = 1;
+
+    private static final int FILE_HEADER_BYTES = 3 * Integer.BYTES;
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int NULL_LENGTH = 0xFFFF;
+
+    // Persisted by ordinal: bump FORMAT_VERSION if either enum is reordered
+    private static final ChargeCategory[] CATEGORIES = ChargeCategory.values();
+    private static final AccessorialType[] ACCESSORIAL_TYPES = AccessorialType.values();
+
+    /** Where a rate sheet's record sits in a mapped file, and the revision it was written at. */
+    record Stamp(long rateSheetId, long revision, int offset, int length) {
+    }
+
+    private RateSnapshotFile() {
+    }
+
+    /**
+     * Index the records of a mapped snapshot.
+     *
+     * @throws IllegalStateException if the file is not a snapshot of this format version or is corrupt
+     */
+    static Map<Long, Stamp> index(ByteBuffer buffer) {
+        if (buffer.limit() < FILE_HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException("not a rate snapshot");
+        }
+        if (buffer.getInt(Integer.BYTES) != FORMAT_VERSION) {
+            throw new IllegalStateException("unsupported rate snapshot version " + buffer.getInt(Integer.BYTES));
+        }
+        int count = buffer.getInt(2 * Integer.BYTES);
+        Map<Long, Stamp> stamps = new HashMap<>(Math.max(16, count * 2));
+        int position = FILE_HEADER_BYTES;
+        for (int i = 0; i < count; i++) {
+            if (position + RECORD_HEADER_BYTES > buffer.limit()) {
+                throw new IllegalStateException("truncated rate snapshot");
+            }
+            int length = buffer.getInt(position);
+            int payload = position + RECORD_HEADER_BYTES;
+            if (length < 2 * Long.BYTES || payload + length > buffer.limit()) {
+                throw new IllegalStateException("corrupt rate snapshot record at byte " + position);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(payload, length));
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                throw new IllegalStateException("rate snapshot record at byte " + position + " fails its CRC");
+            }
+            long rateSheetId = buffer.getLong(payload);
+            stamps.put(rateSheetId, new Stamp(rateSheetId, buffer.getLong(payload + Long.BYTES), position,
+                    RECORD_HEADER_BYTES + length));
+            position = payload + length;
+        }
+        return stamps;
+    }
+
+    /** Rebuild a detached rate sheet, with its warehouses and charges, from its record. */
+    static RateSheet decode(ByteBuffer buffer, Stamp stamp) {
+        ByteBuffer in = buffer.slice(stamp.offset() + RECORD_HEADER_BYTES, stamp.length() - RECORD_HEADER_BYTES);
+        RateSheet rateSheet = new RateSheet();
+        rateSheet.setRateSheetId(in.getLong());
+        rateSheet.setRevision(in.getLong());
+        rateSheet.setCustomerId(readString(in));
+        rateSheet.setName(readString(in));
+        int warehouseCount = Short.toUnsignedInt(in.getShort());
+        List<Warehouse> warehouses = new ArrayList<>(warehouseCount);
+        for (int w = 0; w < warehouseCount; w++) {
+            Warehouse warehouse = new Warehouse();
+            warehouse.setWarehouseId(readString(in));
+            warehouse.setRateSheet(rateSheet);
+            int chargeCount = Short.toUnsignedInt(in.getShort());
+            List<WarehouseCharges> charges = new ArrayList<>(chargeCount);
+            for (int c = 0; c < chargeCount; c++) {
+                WarehouseCharges charge = new WarehouseCharges();
+                charge.setCategory(CATEGORIES[in.get()]);
+                byte accessorial = in.get();
+                charge.setAccessorialType(accessorial < 0 ? null : ACCESSORIAL_TYPES[accessorial]);
+                charge.setType(readString(in));
+                charge.setUnit(readString(in));
+                int scale = in.get();
+                int unscaledLength = in.get();
+                if (unscaledLength >= 0) {
+                    byte[] unscaled = new byte[unscaledLength];
+                    in.get(unscaled);
+                    charge.setRate(new BigDecimal(new BigInteger(unscaled), scale));
+                }
+                charge.setWarehouse(warehouse);
+                charges.add(charge);
+            }
+            warehouse.setCharges(charges);
+            warehouses.add(warehouse);
+        }
+        rateSheet.setWarehouses(warehouses);
+        return rateSheet;
+    }
+
+    /**
+     * Encode a rate sheet, record header included. Its warehouses and charges must be loaded.
+     *
+     * @throws IllegalArgumentException if a value does not fit the format
+     */
+    static byte[] encode(RateSheet rateSheet, long revision) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0);   // length and CRC, filled in below
+            out.writeInt(0);
+            out.writeLong(rateSheet.getRateSheetId());
+            out.writeLong(revision);
+            writeString(out, rateSheet.getCustomerId());
+            writeString(out, rateSheet.getName());
+            List<Warehouse> warehouses = rateSheet.getWarehouses() == null ? List.of() : rateSheet.getWarehouses();
+            writeCount(out, warehouses.size());
+            for (Warehouse warehouse : warehouses) {
+                writeString(out, warehouse.getWarehouseId());
+                List<WarehouseCharges> charges = warehouse.getCharges() == null ? List.of() : warehouse.getCharges();
+                writeCount(out, charges.size());
+                for (WarehouseCharges charge : charges) {
+                    out.writeByte(charge.getCategory().ordinal());
+                    out.writeByte(charge.getAccessorialType() == null ? -1 : charge.getAccessorialType().ordinal());
+                    writeString(out, charge.getType());
+                    writeString(out, charge.getUnit());
+                    writeRate(out, charge.getRate());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);   // not thrown by an in-memory stream
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int payload = record.capacity() - RECORD_HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, payload);
+        record.putInt(0, payload);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return record.array();
+    }
+
+    /** The raw record behind a stamp, to carry it into a rewritten file unchanged. */
+    static byte[] copy(ByteBuffer buffer, Stamp stamp) {
+        byte[] record = new byte[stamp.length()];
+        buffer.get(stamp.offset(), record);
+        return record;
+    }
+
+    /**
+     * Write a complete snapshot next to {@code file} and move it into place, so readers and a crash mid-write
+     * only ever see a whole file.
+     */
+    static void write(Path file, List<byte[]> records) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES)
+                    .putInt(MAGIC).putInt(FORMAT_VERSION).putInt(records.size()).flip();
+            writeFully(channel, header);
+            for (byte[] record : records) {
+                writeFully(channel, ByteBuffer.wrap(record));
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeRate(DataOutputStream out, BigDecimal rate) throws IOException {
+        if (rate == null) {
+            out.writeByte(0);
+            out.writeByte(-1);
+            return;
+        }
+        if (rate.scale() < Byte.MIN_VALUE || rate.scale() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("rate scale out of range: " + rate);
+        }
+        byte[] unscaled = rate.unscaledValue().toByteArray();
+        if (unscaled.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("rate too large: " + rate);
+        }
+        out.writeByte(rate.scale());
+        out.writeByte(unscaled.length);
+        out.write(unscaled);
+    }
+
+    private static void writeCount(DataOutputStream out, int count) throws IOException {
+        if (count > 0xFFFF) {
+            throw new IllegalArgumentException("too many entries for a rate snapshot record: " + count);
+        }
+        out.writeShort(count);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_LENGTH) {
+            throw new IllegalArgumentException("value too long for a rate snapshot: " + value.substring(0, 32));
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = Short.toUnsignedInt(in.getShort());
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,354 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.InvoiceLine;
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.domain.Warehouse;
+import com.wms.billing.domain.WarehouseCharges;
+import com.wms.billing.rating.RatingEngine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Chooses the {@link RatingEngine} for each invoice and optionally runs a second engine in shadow.
+ *
+ * <p>The primary engine is {@code billing.rating.engine.customers[customerId]} if set, else
+ * {@code billing.rating.engine.default} ({@code drools}). If a non-Drools primary rejects a rate sheet or
+ * overflows ({@link IllegalArgumentException}, {@link ArithmeticException}), the invoice is rated by Drools instead
+ * and {@code billing.rating.engine.fallbacks{engine}} is incremented.</p>
+ *
+ * <p>With {@code billing.rating.shadow.engine} set, a {@code billing.rating.shadow.sample-rate} fraction of
+ * invoices is also rated by the shadow engine on a small pool of its own, after the primary has returned, from
+ * detached copies of the rate sheet and activities. The shadow's result is never used. Both results are reduced
+ * to per (category, charge type, rate, service date) sums of quantity and amount, plus the total, so engines that
+ * emit lines at different granularity compare equal when they agree.
+ * Outcomes are counted in {@code billing.rating.shadow.comparisons{primary,shadow,outcome}} (match, mismatch,
+ * error, dropped when the shadow queue is full), and the last {@code billing.rating.shadow.max-discrepancies}
+ * mismatches are kept for {@code /actuator/ratingshadow}.</p>
+ *
+ * <p>Every run is timed in {@code billing.rating.engine{engine,role}}, so primary and shadow latency can be
+ * compared per engine.</p>
+ */
+@Slf4j
+@Component
+public class RatingEngineRouter {
+
+    /** One disagreement between the primary and the shadow engine. */
+    public record Discrepancy(Instant at, String customerId, Long rateSheetId, String warehouseId,
+                              String primary, String shadow, BigDecimal primaryTotal, BigDecimal shadowTotal,
+                              List<String> differences) {
+    }
+
+    private static final int MAX_DIFFERENCES = 10;
+
+    private final Map<String, RatingEngine> engines;
+    private final String defaultEngine;
+    private final Map<String, String> customerEngines;
+    private final int maxDiscrepancies;
+    private final MeterRegistry registry;
+    private final ThreadPoolExecutor shadowExecutor;
+    private final Deque<Discrepancy> discrepancies = new ArrayDeque<>();
+
+    private final String shadowEngine;
+    private final double sampleRate;
+
+    public RatingEngineRouter(List<RatingEngine> engines,
+                              MeterRegistry registry,
+                              @Value("${billing.rating.engine.default:drools}") String defaultEngine,
+                              @Value("#{${billing.rating.engine.customers:{:}}}") Map<String, String> customerEngines,
+                              @Value("${billing.rating.shadow.engine:}") String shadowEngine,
+                              @Value("${billing.rating.shadow.sample-rate:0.0}") double sampleRate,
+                              @Value("${billing.rating.shadow.concurrency:1}") int shadowConcurrency,
+                              @Value("${billing.rating.shadow.queue-capacity:20}") int shadowQueueCapacity,
+                              @Value("${billing.rating.shadow.max-discrepancies:100}") int maxDiscrepancies) {
+        this.engines = engines.stream().collect(Collectors.toMap(RatingEngine::name, Function.identity()));
+        if (!this.engines.containsKey(DroolsRatingEngine.NAME)) {
+            throw new IllegalStateException("The " + DroolsRatingEngine.NAME + " rating engine is required");
+        }
+        this.defaultEngine = requireEngine(defaultEngine, "billing.rating.engine.default");
+        customerEngines.forEach((customer, engine) -> requireEngine(engine, "billing.rating.engine.customers"));
+        this.customerEngines = Map.copyOf(customerEngines);
+        this.registry = registry;
+        this.maxDiscrepancies = maxDiscrepancies;
+        if (sampleRate < 0.0 || sampleRate > 1.0) {
+            throw new IllegalArgumentException("billing.rating.shadow.sample-rate must be within [0, 1]: " + sampleRate);
+        }
+        this.shadowEngine = shadowEngine == null || shadowEngine.isBlank()
+                ? null : requireEngine(shadowEngine, "billing.rating.shadow.engine");
+        this.sampleRate = sampleRate;
+
+        AtomicInteger seq = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "rating-shadow-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        this.shadowExecutor = new ThreadPoolExecutor(shadowConcurrency, shadowConcurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(shadowQueueCapacity), factory, new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("billing.rating.shadow.queued", shadowExecutor, e -> e.getQueue().size()).register(registry);
+    }
+
+    /**
+     * Rate with the customer's primary engine and, if sampled, hand a copy of the inputs to the shadow engine.
+     *
+     * @return the primary engine's lines
+     */
+    public List<InvoiceLine> rate(RateSheet rateSheet,
+                                  String warehouseId,
+                                  LocalDate start,
+                                  LocalDate end,
+                                  List<Activity> activities) {
+        RatingEngine primary = engines.get(customerEngines.getOrDefault(rateSheet.getCustomerId(), defaultEngine));
+        RatingEngine shadow = sampleShadow(primary);
+        // Copied before the primary runs: Drools sets amounts on the activities it prices
+        List<Activity> shadowActivities = shadow != null ? copy(activities) : null;
+        // The shadow runs on another thread after this request's session is gone, so it must not touch the
+        // entity or its lazy collections
+        RateSheet shadowRateSheet = shadow != null ? detach(rateSheet) : null;
+
+        List<InvoiceLine> lines;
+        try {
+            lines = timed(primary, "primary", () -> primary.rate(rateSheet, warehouseId, start, end, activities));
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            if (primary.name().equals(DroolsRatingEngine.NAME)) {
+                throw e;
+            }
+            log.warn("Rating engine {} cannot rate rate sheet {} ({}); falling back to {}",
+                    primary.name(), rateSheet.getRateSheetId(), e.getMessage(), DroolsRatingEngine.NAME);
+            Counter.builder("billing.rating.engine.fallbacks").tag("engine", primary.name()).register(registry)
+                    .increment();
+            RatingEngine drools = engines.get(DroolsRatingEngine.NAME);
+            lines = timed(drools, "primary", () -> drools.rate(rateSheet, warehouseId, start, end, activities));
+        }
+
+        if (shadow != null) {
+            // The caller sorts and groups the primary's list in place; compare against a snapshot
+            List<InvoiceLine> primaryLines = List.copyOf(lines);
+            try {
+                shadowExecutor.execute(() -> runShadow(primary, shadow, shadowRateSheet, warehouseId, start, end,
+                        shadowActivities, primaryLines));
+            } catch (RejectedExecutionException e) {
+                countComparison(primary, shadow, "dropped");
+            }
+        }
+        return lines;
+    }
+
+    public String getShadowEngine() {
+        return shadowEngine;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public List<String> engineNames() {
+        return new ArrayList<>(new TreeSet<>(engines.keySet()));
+    }
+
+    /** Most recent discrepancies, newest first. */
+    public List<Discrepancy> discrepancies() {
+        synchronized (discrepancies) {
+            return new ArrayList<>(discrepancies);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shadowExecutor.shutdownNow();
+    }
+
+    private RatingEngine sampleShadow(RatingEngine primary) {
+        String name = shadowEngine;
+        double rate = sampleRate;
+        if (name == null || name.equals(primary.name()) || rate <= 0.0
+                || (rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            return null;
+        }
+        return engines.get(name);
+    }
+
+    private void runShadow(RatingEngine primary, RatingEngine shadow, RateSheet rateSheet, String warehouseId,
+                           LocalDate start, LocalDate end, List<Activity> activities, List<InvoiceLine> primaryLines) {
+        List<InvoiceLine> shadowLines;
+        try {
+            shadowLines = timed(shadow, "shadow", () -> shadow.rate(rateSheet, warehouseId, start, end, activities));
+        } catch (RuntimeException e) {
+            log.debug("Shadow rating engine {} failed for rate sheet {}", shadow.name(), rateSheet.getRateSheetId(), e);
+            countComparison(primary, shadow, "error");
+            return;
+        }
+
+        Map<String, BigDecimal[]> expected = summarize(primaryLines);
+        Map<String, BigDecimal[]> actual = summarize(shadowLines);
+        BigDecimal primaryTotal = total(primaryLines);
+        BigDecimal shadowTotal = total(shadowLines);
+        List<String> differences = new ArrayList<>();
+        if (primaryTotal.compareTo(shadowTotal) != 0) {
+            differences.add("total: " + primaryTotal.toPlainString() + " vs " + shadowTotal.toPlainString());
+        }
+        TreeSet<String> keys = new TreeSet<>(expected.keySet());
+        keys.addAll(actual.keySet());
+        for (String key : keys) {
+            String difference = compare(key, expected.get(key), actual.get(key));
+            if (difference != null && differences.size() < MAX_DIFFERENCES) {
+                differences.add(difference);
+            }
+        }
+
+        if (differences.isEmpty()) {
+            countComparison(primary, shadow, "match");
+            return;
+        }
+        countComparison(primary, shadow, "mismatch");
+        log.warn("Rating engines {} and {} disagree on rate sheet {} warehouse {}: {}", primary.name(), shadow.name(),
+                rateSheet.getRateSheetId(), warehouseId, differences);
+        Discrepancy discrepancy = new Discrepancy(Instant.now(), rateSheet.getCustomerId(),
+                rateSheet.getRateSheetId(), warehouseId, primary.name(), shadow.name(), primaryTotal, shadowTotal,
+                List.copyOf(differences));
+        synchronized (discrepancies) {
+            discrepancies.addFirst(discrepancy);
+            while (discrepancies.size() > maxDiscrepancies) {
+                discrepancies.removeLast();
+            }
+        }
+    }
+
+    private <T> T timed(RatingEngine engine, String role, Supplier<T> body) {
+        Timer timer = Timer.builder("billing.rating.engine")
+                .description("Duration of rating by engine")
+                .tag("engine", engine.name())
+                .tag("role", role)
+                .publishPercentileHistogram()
+                .register(registry);
+        return timer.record(body);
+    }
+
+    private void countComparison(RatingEngine primary, RatingEngine shadow, String outcome) {
+        Counter.builder("billing.rating.shadow.comparisons")
+                .tag("primary", primary.name())
+                .tag("shadow", shadow.name())
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    private String requireEngine(String name, String property) {
+        if (!engines.containsKey(name)) {
+            throw new IllegalArgumentException(property + " names unknown rating engine '" + name
+                    + "'; available: " + engineNames());
+        }
+        return name;
+    }
+
+    /** (category|chargeType|rate|serviceDate) -> {quantity, amount}. */
+    private static Map<String, BigDecimal[]> summarize(List<InvoiceLine> lines) {
+        Map<String, BigDecimal[]> sums = new HashMap<>();
+        for (InvoiceLine line : lines) {
+            String key = line.getCategory() + "|" + line.getChargeType() + "|"
+                    + (line.getRate() != null ? line.getRate().stripTrailingZeros().toPlainString() : "") + "|"
+                    + Objects.toString(line.getServiceDate(), "");
+            BigDecimal[] sum = sums.computeIfAbsent(key, k -> new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO});
+            sum[0] = sum[0].add(Objects.requireNonNullElse(line.getQuantity(), BigDecimal.ZERO));
+            sum[1] = sum[1].add(Objects.requireNonNullElse(line.getAmount(), BigDecimal.ZERO));
+        }
+        return new TreeMap<>(sums);
+    }
+
+    private static BigDecimal total(List<InvoiceLine> lines) {
+        return lines.stream()
+                .map(InvoiceLine::getAmount)
+                .filter(Objects::nonNull)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private static String compare(String key, BigDecimal[] expected, BigDecimal[] actual) {
+        if (expected == null) {
+            return key + ": only in shadow";
+        }
+        if (actual == null) {
+            return key + ": only in primary";
+        }
+        if (expected[0].compareTo(actual[0]) != 0 || expected[1].compareTo(actual[1]) != 0) {
+            return key + ": quantity " + expected[0].toPlainString() + " vs " + actual[0].toPlainString()
+                    + ", amount " + expected[1].toPlainString() + " vs " + actual[1].toPlainString();
+        }
+        return null;
+    }
+
+    /** A copy of the rate sheet with its warehouses and charges, sharing nothing with the persistence context. */
+    private static RateSheet detach(RateSheet rateSheet) {
+        RateSheet copy = new RateSheet();
+        copy.setRateSheetId(rateSheet.getRateSheetId());
+        copy.setCustomerId(rateSheet.getCustomerId());
+        copy.setName(rateSheet.getName());
+        copy.setRevision(rateSheet.getRevision());
+        List<Warehouse> warehouses = new ArrayList<>();
+        for (Warehouse w : Objects.requireNonNullElse(rateSheet.getWarehouses(), List.<Warehouse>of())) {
+            Warehouse wc = new Warehouse();
+            wc.setId(w.getId());
+            wc.setWarehouseId(w.getWarehouseId());
+            wc.setRateSheet(copy);
+            List<WarehouseCharges> charges = new ArrayList<>();
+            for (WarehouseCharges c : Objects.requireNonNullElse(w.getCharges(), List.<WarehouseCharges>of())) {
+                charges.add(WarehouseCharges.builder()
+                        .id(c.getId())
+                        .category(c.getCategory())
+                        .type(c.getType())
+                        .rate(c.getRate())
+                        .unit(c.getUnit())
+                        .accessorialType(c.getAccessorialType())
+                        .warehouse(wc)
+                        .build());
+            }
+            wc.setCharges(charges);
+            warehouses.add(wc);
+        }
+        copy.setWarehouses(warehouses);
+        return copy;
+    }
+
+    private static List<Activity> copy(List<Activity> activities) {
+        List<Activity> copies = new ArrayList<>(activities.size());
+        for (Activity a : activities) {
+            Activity c = new Activity();
+            c.setActivityId(a.getActivityId());
+            c.setType(a.getType());
+            c.setQuantity(a.getQuantity());
+            c.setWarehouseId(a.getWarehouseId());
+            c.setActivityDate(a.getActivityDate());
+            c.setCategory(a.getCategory());
+            copies.add(c);
+        }
+        return copies;
+    }
+}
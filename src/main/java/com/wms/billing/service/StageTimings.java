@@ -0,0 +1,83 @@
+package com.wms.billing.service;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Per-request accumulator of invoice pipeline stage durations, used to build the {@code Server-Timing}
+ * response header and to tag stage metrics with the request's endpoint and customer tier.
+ *
+ * <p>An instance is bound to the handling thread for the duration of a request (and re-bound on the async
+ * thread that writes streamed bodies). Code that runs without a bound instance still records metrics
+ * through {@link InvoiceStageTimer}, tagged {@code endpoint=none}.</p>
+ */
+public final class StageTimings {
+
+    public static final String REQUEST_ATTRIBUTE = StageTimings.class.getName();
+
+    private static final ThreadLocal<StageTimings> CURRENT = new ThreadLocal<>();
+
+    private final long startedNanos = System.nanoTime();
+    // Stage name -> accumulated nanos, in first-seen order
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+    private volatile String endpoint;
+    private volatile String tier;
+
+    public StageTimings(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public static StageTimings current() {
+        return CURRENT.get();
+    }
+
+    public static void bind(StageTimings timings) {
+        CURRENT.set(timings);
+    }
+
+    public static void unbind() {
+        CURRENT.remove();
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getTier() {
+        return tier;
+    }
+
+    public void setTier(String tier) {
+        this.tier = tier;
+    }
+
+    void add(String stage, long nanos) {
+        synchronized (stages) {
+            stages.merge(stage, nanos, Long::sum);
+        }
+    }
+
+    /**
+     * Format the stages recorded so far as a {@code Server-Timing} value, e.g.
+     * {@code rate_sheet_load;dur=4.1, fire_rules;dur=37.9, app;dur=52.0}. The trailing {@code app} entry is the
+     * time since the request started.
+     */
+    public String toServerTiming() {
+        StringJoiner header = new StringJoiner(", ");
+        synchronized (stages) {
+            stages.forEach((stage, nanos) -> header.add(entry(stage, nanos)));
+        }
+        header.add(entry("app", System.nanoTime() - startedNanos));
+        return header.toString();
+    }
+
+    private static String entry(String name, long nanos) {
+        return name + ";dur=" + String.format(Locale.ROOT, "%.1f", nanos / 1_000_000d);
+    }
+}
@@ -0,0 +1,331 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.domain.InvoiceTemplate;
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.domain.Warehouse;
+import com.wms.billing.domain.WarehouseCharges;
+import com.wms.billing.dto.AccessorialType;
+import com.wms.billing.dto.ChargeCategory;
+import com.wms.billing.repository.InvoiceRepository;
+import com.wms.billing.repository.InvoiceTemplateRepository;
+import com.wms.billing.repository.RateSheetRepository;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jasperreports.engine.JasperReport;
+import org.kie.api.runtime.KieContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Warms a new instance up before it takes traffic, so the first requests after a deploy or scale-out do not pay
+ * for a cold JIT, rule base, templates and caches.
+ *
+ * <p>Runs on {@link ApplicationReadyEvent}, before Spring Boot marks the application
+ * {@link ReadinessState#ACCEPTING_TRAFFIC}; the readiness probe ({@code /actuator/health/readiness}) reports
+ * {@code OUT_OF_SERVICE} until it is done. Steps, in order:</p>
+ * <ol>
+ *   <li>{@code kie_base}: build the {@code billingKB} rule base and a {@code billingKS} session.</li>
+ *   <li>{@code rating}: rate {@code billing.warmup.rating.iterations} synthetic invoices of
+ *       {@code billing.warmup.rating.activities} activities through {@link InvoiceServiceDrools#simulate}, against a
+ *       synthetic rate sheet. Nothing is saved.</li>
+ *   <li>{@code templates}: load (compile) every active invoice template and render the last synthetic invoice
+ *       with it.</li>
+ *   <li>{@code rate_sheets}: load the {@code billing.warmup.rate-sheets.count} rate sheets with the most invoices
+ *       in the last {@code billing.warmup.rate-sheets.lookback-days} days, with their warehouses and charges, into
+ *       the second-level cache.</li>
+ * </ol>
+ *
+ * <p>The whole warm-up gets {@code billing.warmup.budget}. The budget is checked between units of work (one
+ * invoice, template or rate sheet), so it is overrun by at most one unit; steps left when it runs out are skipped.
+ * A failing step is recorded and the next one runs. The outcome is logged and served at
+ * {@code /actuator/warmup}.</p>
+ */
+@Slf4j
+@Service
+public class StartupWarmup {
+
+    public enum Status { DISABLED, PENDING, RUNNING, COMPLETED, BUDGET_EXHAUSTED }
+
+    /** Outcome of one step: {@code DONE}, {@code PARTIAL} (budget ran out), {@code SKIPPED} or {@code FAILED}. */
+    public record Step(String name, String outcome, int items, long millis, List<String> errors) {
+    }
+
+    private static final String WAREHOUSE_ID = "WARMUP";
+    private static final int MAX_ERRORS_PER_STEP = 10;
+
+    private final KieContainer kieContainer;
+    private final InvoiceServiceDrools invoiceService;
+    private final JasperInvoiceGenerator jasperGenerator;
+    private final InvoiceTemplateRepository templateRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final RateSheetRepository rateSheetRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final boolean enabled;
+    private final Duration budget;
+    private final int ratingIterations;
+    private final int ratingActivities;
+    private final int hotRateSheets;
+    private final int lookbackDays;
+
+    private final List<Step> steps = new CopyOnWriteArrayList<>();
+    private volatile Status status;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+
+    public StartupWarmup(KieContainer kieContainer,
+                         InvoiceServiceDrools invoiceService,
+                         JasperInvoiceGenerator jasperGenerator,
+                         InvoiceTemplateRepository templateRepository,
+                         InvoiceRepository invoiceRepository,
+                         RateSheetRepository rateSheetRepository,
+                         PlatformTransactionManager transactionManager,
+                         ApplicationEventPublisher eventPublisher,
+                         @Value("${billing.warmup.enabled:true}") boolean enabled,
+                         @Value("${billing.warmup.budget:30s}") Duration budget,
+                         @Value("${billing.warmup.rating.iterations:20}") int ratingIterations,
+                         @Value("${billing.warmup.rating.activities:500}") int ratingActivities,
+                         @Value("${billing.warmup.rate-sheets.count:20}") int hotRateSheets,
+                         @Value("${billing.warmup.rate-sheets.lookback-days:31}") int lookbackDays) {
+        this.kieContainer = kieContainer;
+        this.invoiceService = invoiceService;
+        this.jasperGenerator = jasperGenerator;
+        this.templateRepository = templateRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.rateSheetRepository = rateSheetRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.budget = budget;
+        this.ratingIterations = ratingIterations;
+        this.ratingActivities = ratingActivities;
+        this.hotRateSheets = hotRateSheets;
+        this.lookbackDays = lookbackDays;
+        this.status = enabled ? Status.PENDING : Status.DISABLED;
+    }
+
+    // First ready listener, so nothing else started on ready (e.g. the load test driver) hits a cold instance
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        status = Status.RUNNING;
+        startedAt = Instant.now();
+        long deadline = System.nanoTime() + budget.toNanos();
+        AtomicReference<Invoice> sample = new AtomicReference<>();
+        StageTimings.bind(new StageTimings("warmup"));
+        try {
+            step("kie_base", deadline, progress -> {
+                kieContainer.getKieBase("billingKB");
+                kieContainer.newKieSession("billingKS").dispose();
+                progress.done();
+            });
+            step("rating", deadline, progress -> rateSynthetic(progress, sample));
+            step("templates", deadline, progress -> loadTemplates(progress, sample.get()));
+            step("rate_sheets", deadline, this::loadHotRateSheets);
+        } finally {
+            StageTimings.unbind();
+            finishedAt = Instant.now();
+            boolean exhausted = steps.stream().anyMatch(s -> s.outcome().equals("PARTIAL") || s.outcome().equals("SKIPPED"));
+            status = exhausted ? Status.BUDGET_EXHAUSTED : Status.COMPLETED;
+            log.info("Warm-up {} in {} ms: {}", status, Duration.between(startedAt, finishedAt).toMillis(), steps);
+            AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+        }
+    }
+
+    /** What was warmed, for {@code /actuator/warmup}. */
+    public Map<String, Object> report() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", status);
+        body.put("budget", budget.toString());
+        body.put("startedAt", startedAt);
+        body.put("finishedAt", finishedAt);
+        if (startedAt != null && finishedAt != null) {
+            body.put("durationMs", Duration.between(startedAt, finishedAt).toMillis());
+        }
+        body.put("steps", List.copyOf(steps));
+        return body;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    @FunctionalInterface
+    private interface StepBody {
+        void run(Progress progress) throws Exception;
+    }
+
+    private static final class Progress {
+        private final long deadline;
+        private final List<String> errors = new ArrayList<>();
+        private int items;
+        private boolean truncated;
+
+        Progress(long deadline) {
+            this.deadline = deadline;
+        }
+
+        boolean hasTime() {
+            if (System.nanoTime() - deadline >= 0) {
+                truncated = true;
+            }
+            return !truncated;
+        }
+
+        void done() {
+            items++;
+        }
+
+        void error(String item, Exception e) {
+            if (errors.size() < MAX_ERRORS_PER_STEP) {
+                errors.add(item + ": " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+            }
+        }
+    }
+
+    private void step(String name, long deadline, StepBody body) {
+        long started = System.nanoTime();
+        Progress progress = new Progress(deadline);
+        String outcome;
+        if (!progress.hasTime()) {
+            outcome = "SKIPPED";
+        } else {
+            try {
+                body.run(progress);
+                outcome = progress.truncated ? "PARTIAL" : "DONE";
+            } catch (Exception e) {
+                log.warn("Warm-up step {} failed", name, e);
+                progress.error(name, e);
+                outcome = "FAILED";
+            }
+        }
+        steps.add(new Step(name, outcome, progress.items,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), List.copyOf(progress.errors)));
+    }
+
+    private void rateSynthetic(Progress progress, AtomicReference<Invoice> sample) {
+        RateSheet rateSheet = syntheticRateSheet();
+        LocalDate start = LocalDate.now().withDayOfMonth(1);
+        LocalDate end = start.plusMonths(1).minusDays(1);
+        for (int i = 0; i < ratingIterations && progress.hasTime(); i++) {
+            // Fresh activities each time: Drools sets their amounts
+            sample.set(invoiceService.simulate(rateSheet, WAREHOUSE_ID, start, end, syntheticActivities(start, end)));
+            progress.done();
+        }
+    }
+
+    private void loadTemplates(Progress progress, Invoice sample) {
+        for (InvoiceTemplate template : templateRepository.findByIsActiveTrue()) {
+            if (!progress.hasTime()) {
+                return;
+            }
+            try {
+                JasperReport report = jasperGenerator.loadReport(template);
+                if (sample != null) {
+                    jasperGenerator.generateInvoicePdf(sample, report);
+                }
+                progress.done();
+            } catch (Exception e) {
+                progress.error(template.getName() + " (" + template.getFilePath() + ")", e);
+            }
+        }
+    }
+
+    private void loadHotRateSheets(Progress progress) {
+        if (hotRateSheets <= 0) {
+            return;
+        }
+        List<Long> ids = invoiceRepository.findBusiestRateSheetIds(
+                LocalDate.now().minusDays(lookbackDays), PageRequest.of(0, hotRateSheets));
+        for (Long id : ids) {
+            if (!progress.hasTime()) {
+                return;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                RateSheet rateSheet = rateSheetRepository.getRateSheetByRateSheetId(id);
+                if (rateSheet != null && rateSheet.getWarehouses() != null) {
+                    rateSheet.getWarehouses().forEach(w -> w.getCharges().size());
+                }
+            });
+            progress.done();
+        }
+    }
+
+    /** One warehouse with a charge for each pair the rules price, plus an accessorial charge. */
+    private static RateSheet syntheticRateSheet() {
+        RateSheet rateSheet = new RateSheet();
+        rateSheet.setCustomerId(WAREHOUSE_ID);
+        rateSheet.setName(WAREHOUSE_ID);
+        Warehouse warehouse = new Warehouse();
+        warehouse.setWarehouseId(WAREHOUSE_ID);
+        warehouse.setRateSheet(rateSheet);
+        List<WarehouseCharges> charges = new ArrayList<>();
+        charges.add(charge(warehouse, ChargeCategory.STORAGE, "PER_PALLET_PER_DAY", null, "0.45"));
+        charges.add(charge(warehouse, ChargeCategory.INBOUND, "PER_PALLET_PER_DAY", null, "1.10"));
+        charges.add(charge(warehouse, ChargeCategory.INBOUND, "PER_SHIPMENT", null, "25.00"));
+        charges.add(charge(warehouse, ChargeCategory.ACCESSORIAL, null, AccessorialType.values()[0], "3.75"));
+        warehouse.setCharges(charges);
+        rateSheet.setWarehouses(new ArrayList<>(List.of(warehouse)));
+        return rateSheet;
+    }
+
+    private static WarehouseCharges charge(Warehouse warehouse, ChargeCategory category, String type,
+                                           AccessorialType accessorialType, String rate) {
+        WarehouseCharges charge = new WarehouseCharges();
+        charge.setCategory(category);
+        charge.setType(type);
+        charge.setAccessorialType(accessorialType);
+        charge.setRate(new BigDecimal(rate));
+        charge.setUnit("EA");
+        charge.setWarehouse(warehouse);
+        return charge;
+    }
+
+    /** Activities cycling through priced and unpriced (category, type) pairs over the period. */
+    private List<Activity> syntheticActivities(LocalDate start, LocalDate end) {
+        ChargeCategory[] categories = {ChargeCategory.STORAGE, ChargeCategory.INBOUND, ChargeCategory.INBOUND,
+                ChargeCategory.OUTBOUND};
+        String[] types = {"PER_PALLET_PER_DAY", "PER_PALLET_PER_DAY", "PER_SHIPMENT", "PER_ORDER"};
+        int days = (int) (end.toEpochDay() - start.toEpochDay()) + 1;
+        List<Activity> activities = new ArrayList<>(ratingActivities);
+        for (int i = 0; i < ratingActivities; i++) {
+            Activity activity = new Activity();
+            activity.setWarehouseId(WAREHOUSE_ID);
+            activity.setCategory(categories[i % categories.length]);
+            activity.setType(types[i % types.length]);
+            activity.setQuantity(BigDecimal.valueOf(1 + i % 40));
+            activity.setActivityDate(start.plusDays(i % days));
+            activities.add(activity);
+        }
+        return activities;
+    }
+}
@@ -0,0 +1,97 @@
+package com.wms.billing.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wms.billing.exception.GlobalExceptionHandler;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of API requests handled concurrently to what the JDBC pool can serve.
+ *
+ * <p>With virtual threads the servlet container no longer bounds concurrency, so a burst would otherwise
+ * park thousands of threads on {@code getConnection()} and time out inside Hikari. This filter queues requests
+ * fairly on a semaphore sized from the pool instead, and answers 503 with {@code Retry-After} when a permit
+ * cannot be obtained within the configured wait.</p>
+ *
+ * <p>The permit is released when the servlet call returns. Streaming bodies that keep writing afterwards
+ * (PDF/export downloads) are not counted for the remainder of the transfer.</p>
+ */
+@Slf4j
+public class JdbcConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final Semaphore permits;
+    private final Duration maxWait;
+    private final ObjectMapper objectMapper;
+
+    public JdbcConcurrencyLimitFilter(int limit, Duration maxWait, ObjectMapper objectMapper) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Concurrency limit must be greater than 0");
+        }
+        this.permits = new Semaphore(limit, true);
+        this.maxWait = maxWait;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+
+        if (!acquired) {
+            log.debug("Concurrency limit reached; rejecting {} {}", request.getMethod(), request.getRequestURI());
+            reject(request, response);
+            return;
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    public int queueLength() {
+        return permits.getQueueLength();
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, maxWait.toSeconds())));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        GlobalExceptionHandler.ErrorResponse body = new GlobalExceptionHandler.ErrorResponse(
+                Instant.now(),
+                status.value(),
+                status.getReasonPhrase(),
+                "Too many concurrent requests; retry later",
+                request.getRequestURI(),
+                List.of("Database concurrency limit reached")
+        );
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+}
@@ -0,0 +1,88 @@
+package com.wms.billing.web;
+
+import com.wms.billing.service.StageTimings;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Adds a {@code Server-Timing} header with the invoice pipeline stage breakdown to {@code /api/*} responses,
+ * next to {@code X-Correlation-Id}.
+ *
+ * <p>A {@link StageTimings} is bound for the request. Headers cannot change once the body starts, so the header
+ * is written when the body is first requested from the response. It covers every stage that finished before
+ * the first byte: for streamed exports and PDF downloads that is everything up to the start of the stream.</p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 5)
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    public static final String HEADER_NAME = "Server-Timing";
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(request.getContextPath() + "/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        StageTimings timings = new StageTimings(null);
+        request.setAttribute(StageTimings.REQUEST_ATTRIBUTE, timings);
+        response.addHeader("Access-Control-Expose-Headers", HEADER_NAME);
+
+        StageTimings.bind(timings);
+        try {
+            filterChain.doFilter(request, new ServerTimingResponse(response, timings));
+        } finally {
+            StageTimings.unbind();
+        }
+    }
+
+    private static final class ServerTimingResponse extends HttpServletResponseWrapper {
+
+        private final StageTimings timings;
+        private boolean written;
+
+        ServerTimingResponse(HttpServletResponse response, StageTimings timings) {
+            super(response);
+            this.timings = timings;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writeHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writeHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeHeader();
+            super.flushBuffer();
+        }
+
+        private void writeHeader() {
+            if (!written && !isCommitted()) {
+                setHeader(HEADER_NAME, timings.toServerTiming());
+            }
+            written = true;
+        }
+    }
+}
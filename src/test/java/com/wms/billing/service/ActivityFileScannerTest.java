@@ -0,0 +1,152 @@
+package com.wms.billing.service;
+
+import com.wms.billing.dto.ChargeCategory;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ActivityFileScannerTest {
+
+    // warehouseId,category,type,quantity,activityDate
+    private static final ActivityFileScanner.Columns COLUMNS = new ActivityFileScanner.Columns(5, 0, 1, 2, 3, 4);
+    private static final ActivityFileScanner.Filter JULY_WH001 = new ActivityFileScanner.Filter(
+            "WH001".getBytes(StandardCharsets.UTF_8), 20240701, 20240731);
+
+    private static final String BODY = """
+            WH001,STORAGE,PER_PALLET_PER_DAY,2,2024-07-01
+            WH001,STORAGE,PER_PALLET_PER_DAY,1.5,2024-07-02\r
+            WH002,STORAGE,PER_PALLET_PER_DAY,7,2024-07-02
+            WH001,INBOUND,PER_SHIPMENT,1,2024-06-30
+            WH001,INBOUND,PER_SHIPMENT,3.0001,2024-07-31
+
+            WH001,ACCESSORIAL,LABELING,-0.25,2024-07-15
+            WH001,ACCESSORIAL,NOT_A_SERVICE,1,2024-07-15
+            WH001,UNKNOWN,PER_SHIPMENT,1,2024-07-15
+            WH001,INBOUND,PER_SHIPMENT,1.23456,2024-07-15
+            WH001,INBOUND,PER_SHIPMENT,1,2024-7-15
+            WH001,INBOUND,,1,2024-07-15
+            WH001,INBOUND,PER_SHIPMENT,1
+            WH001,"INBOUND",PER_SHIPMENT,1,2024-07-15
+            WH001,INBOUND,PER_SHIPMENT,2,2024-07-16""";
+
+    @Test
+    void aggregatesKeptRowsPerWarehouseCategoryAndType() {
+        ActivityFileScanner scanner = scanWhole(BODY, 100);
+
+        assertThat(sums(scanner)).containsOnly(
+                Map.entry("WH001|STORAGE|PER_PALLET_PER_DAY", 35_000L),
+                Map.entry("WH001|INBOUND|PER_SHIPMENT", 50_001L),
+                Map.entry("WH001|ACCESSORIAL|LABELING", -2_500L));
+        assertThat(scanner.rows()).isEqualTo(14);   // the blank line is not a row
+        assertThat(scanner.skipped()).isEqualTo(2);   // other warehouse, date before the period
+        assertThat(scanner.rejected()).isEqualTo(7);
+        assertThat(scanner.errors()).hasSize(7);
+        for (int slot = 0; slot < scanner.slots(); slot++) {
+            if (scanner.category(slot) == ChargeCategory.INBOUND) {
+                assertThat(scanner.rowCount(slot)).isEqualTo(2);
+            }
+        }
+    }
+
+    @Test
+    void errorMessagesAreCapped() {
+        ActivityFileScanner scanner = scanWhole(BODY, 3);
+
+        assertThat(scanner.rejected()).isEqualTo(7);
+        assertThat(scanner.errors()).hasSize(3);
+        assertThat(scanner.errors().get(0)).startsWith("byte ").contains("AccessorialType");
+    }
+
+    @Test
+    void regionsCutAnywhereSeeEveryLineOnce() {
+        ActivityFileScanner whole = scanWhole(BODY, 0);
+        ByteBuffer buffer = buffer(BODY);
+        int length = buffer.limit();
+
+        for (int cut = 0; cut <= length; cut++) {
+            ActivityFileScanner first = new ActivityFileScanner(COLUMNS, JULY_WH001, 0);
+            ActivityFileScanner second = new ActivityFileScanner(COLUMNS, JULY_WH001, 0);
+            first.scan(buffer, 0, 0, cut, true, true);
+            second.scan(buffer, 0, cut, length, cut == 0, true);
+
+            Map<String, Long> merged = new HashMap<>(sums(first));
+            sums(second).forEach((key, sum) -> merged.merge(key, sum, Long::sum));
+            assertThat(merged).as("cut at byte %d", cut).isEqualTo(sums(whole));
+            assertThat(first.rows() + second.rows()).as("cut at byte %d", cut).isEqualTo(whole.rows());
+            assertThat(first.rejected() + second.rejected()).as("cut at byte %d", cut).isEqualTo(whole.rejected());
+        }
+    }
+
+    @Test
+    void regionNotEndingAtEofRejectsAnOverlongLine() {
+        ActivityFileScanner scanner = new ActivityFileScanner(COLUMNS, JULY_WH001, 10);
+        scanner.scan(buffer("WH001,STORAGE,PER_PALLET_PER_DAY,2,2024-07-01"), 0, 0, 10, true, false);
+
+        assertThat(scanner.rows()).isZero();
+        assertThat(scanner.rejected()).isEqualTo(1);
+        assertThat(scanner.errors().get(0)).contains("line longer than");
+    }
+
+    @Test
+    void parsesQuantitiesToFourDecimals() {
+        assertThat(quantity("12")).isEqualTo(120_000L);
+        assertThat(quantity("+1.5")).isEqualTo(15_000L);
+        assertThat(quantity("-0.0001")).isEqualTo(-1L);
+        assertThat(quantity(".5")).isEqualTo(5_000L);
+        assertThat(quantity("7.")).isEqualTo(70_000L);
+        assertThat(quantity("922337203685477")).isEqualTo(9_223_372_036_854_770_000L);
+
+        assertThat(quantity("")).isEqualTo(Long.MIN_VALUE);
+        assertThat(quantity("-")).isEqualTo(Long.MIN_VALUE);
+        assertThat(quantity(".")).isEqualTo(Long.MIN_VALUE);
+        assertThat(quantity("1.23456")).isEqualTo(Long.MIN_VALUE);
+        assertThat(quantity("1.2.3")).isEqualTo(Long.MIN_VALUE);
+        assertThat(quantity("1e3")).isEqualTo(Long.MIN_VALUE);
+        assertThat(quantity("922337203685478")).isEqualTo(Long.MIN_VALUE);
+    }
+
+    @Test
+    void parsesIsoDates() {
+        assertThat(date("2024-07-01")).isEqualTo(20240701);
+        assertThat(date("1999-12-31")).isEqualTo(19991231);
+
+        assertThat(date("2024-7-01")).isEqualTo(-1);
+        assertThat(date("2024/07/01")).isEqualTo(-1);
+        assertThat(date("2024-13-01")).isEqualTo(-1);
+        assertThat(date("2024-07-00")).isEqualTo(-1);
+        assertThat(date("2024-07-0x")).isEqualTo(-1);
+    }
+
+    private static ActivityFileScanner scanWhole(String body, int maxErrors) {
+        ByteBuffer buffer = buffer(body);
+        ActivityFileScanner scanner = new ActivityFileScanner(COLUMNS, JULY_WH001, maxErrors);
+        scanner.scan(buffer, 0, 0, buffer.limit(), true, true);
+        return scanner;
+    }
+
+    private static Map<String, Long> sums(ActivityFileScanner scanner) {
+        Map<String, Long> sums = new HashMap<>();
+        for (int slot = 0; slot < scanner.slots(); slot++) {
+            sums.put(scanner.warehouse(slot) + "|" + scanner.category(slot) + "|" + scanner.type(slot),
+                    scanner.quantity(slot));
+        }
+        return sums;
+    }
+
+    private static long quantity(String value) {
+        return ActivityFileScanner.parseQuantity(buffer(value), 0, value.length());
+    }
+
+    private static int date(String value) {
+        return ActivityFileScanner.parseDate(buffer(value), 0, value.length());
+    }
+
+    private static ByteBuffer buffer(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
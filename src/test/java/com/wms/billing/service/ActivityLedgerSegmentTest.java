@@ -0,0 +1,169 @@
+package com.wms.billing.service;
+
+import com.wms.billing.dto.ChargeCategory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ActivityLedgerSegmentTest {
+
+    private static final int CAPACITY = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsSurviveReopen() throws IOException {
+        Path path = dir.resolve("segment-0");
+        List<ActivityLedgerSegment.Entry> written = entries(3);
+        List<Integer> offsets = new ArrayList<>();
+        ActivityLedgerSegment segment = ActivityLedgerSegment.open(0, path, CAPACITY, (offset, entry) -> { });
+        for (ActivityLedgerSegment.Entry entry : written) {
+            offsets.add(segment.append(encode(entry)));
+        }
+        assertThat(segment.read(offsets.get(1))).isEqualTo(written.get(1));
+        segment.force();
+        segment.close();
+
+        List<ActivityLedgerSegment.Entry> recovered = new ArrayList<>();
+        List<Integer> recoveredOffsets = new ArrayList<>();
+        ActivityLedgerSegment reopened = ActivityLedgerSegment.open(0, path, CAPACITY, (offset, entry) -> {
+            recoveredOffsets.add(offset);
+            recovered.add(entry);
+        });
+
+        assertThat(recovered).containsExactlyElementsOf(written);
+        assertThat(recoveredOffsets).containsExactlyElementsOf(offsets);
+        assertThat(reopened.records()).isEqualTo(3);
+        assertThat(reopened.size()).isEqualTo(segment.size());
+        reopened.close();
+    }
+
+    @Test
+    void recordWithBadCrcEndsRecoveryAndIsZeroed() throws IOException {
+        Path path = dir.resolve("segment-0");
+        int third = writeThree(path);
+        // Flip one payload byte of the last record, as a crash mid-append would leave it
+        flipByte(path, third + ActivityLedgerSegment.HEADER_BYTES + 2);
+
+        assertRecoveredUpTo(path, third);
+    }
+
+    @Test
+    void tornLengthBeyondCapacityEndsRecovery() throws IOException {
+        Path path = dir.resolve("segment-0");
+        int third = writeThree(path);
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(third);
+            file.writeInt(CAPACITY);
+        }
+
+        assertRecoveredUpTo(path, third);
+    }
+
+    @Test
+    void appendsAfterRecoveryStartFromTheCleanBoundary() throws IOException {
+        Path path = dir.resolve("segment-0");
+        int third = writeThree(path);
+        flipByte(path, third + ActivityLedgerSegment.HEADER_BYTES);
+
+        ActivityLedgerSegment segment = ActivityLedgerSegment.open(0, path, CAPACITY, (offset, entry) -> { });
+        ActivityLedgerSegment.Entry replacement = entry(9);
+        assertThat(segment.append(encode(replacement))).isEqualTo(third);
+        segment.force();
+        segment.close();
+
+        List<ActivityLedgerSegment.Entry> recovered = new ArrayList<>();
+        ActivityLedgerSegment.open(0, path, CAPACITY, (offset, entry) -> recovered.add(entry)).close();
+        assertThat(recovered).containsExactly(entry(0), entry(1), replacement);
+    }
+
+    @Test
+    void appendReturnsMinusOneWhenFull() throws IOException {
+        byte[] record = encode(entry(0));
+        ActivityLedgerSegment segment = ActivityLedgerSegment.open(0, dir.resolve("segment-0"),
+                2 * record.length + Integer.BYTES, (offset, entry) -> { });
+
+        assertThat(segment.append(record)).isZero();
+        assertThat(segment.append(record)).isEqualTo(record.length);
+        assertThat(segment.append(record)).isEqualTo(-1);
+        assertThat(segment.records()).isEqualTo(2);
+        segment.close();
+    }
+
+    @Test
+    void encodeRejectsMissingFields() {
+        assertThatThrownBy(() -> ActivityLedgerSegment.encode("C1", " ", LocalDate.of(2024, 7, 1),
+                ChargeCategory.STORAGE, "PER_PALLET_PER_DAY", BigDecimal.ONE, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ActivityLedgerSegment.encode("C1", "WH001", LocalDate.of(2024, 7, 1),
+                ChargeCategory.STORAGE, "PER_PALLET_PER_DAY", null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /** @return the offset of the third record */
+    private int writeThree(Path path) throws IOException {
+        ActivityLedgerSegment segment = ActivityLedgerSegment.open(0, path, CAPACITY, (offset, entry) -> { });
+        int third = -1;
+        for (ActivityLedgerSegment.Entry entry : entries(3)) {
+            third = segment.append(encode(entry));
+        }
+        segment.force();
+        segment.close();
+        return third;
+    }
+
+    private static void assertRecoveredUpTo(Path path, int end) throws IOException {
+        List<ActivityLedgerSegment.Entry> recovered = new ArrayList<>();
+        ActivityLedgerSegment segment = ActivityLedgerSegment.open(0, path, CAPACITY,
+                (offset, entry) -> recovered.add(entry));
+        assertThat(recovered).containsExactly(entry(0), entry(1));
+        assertThat(segment.records()).isEqualTo(2);
+        assertThat(segment.size()).isEqualTo(end);
+        segment.close();
+
+        byte[] bytes = Files.readAllBytes(path);
+        for (int i = end; i < bytes.length; i++) {
+            assertThat(bytes[i]).as("byte %d of the torn tail", i).isZero();
+        }
+    }
+
+    private static void flipByte(Path path, int position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+    }
+
+    private static List<ActivityLedgerSegment.Entry> entries(int count) {
+        List<ActivityLedgerSegment.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(entry(i));
+        }
+        return entries;
+    }
+
+    private static ActivityLedgerSegment.Entry entry(int i) {
+        return new ActivityLedgerSegment.Entry("CUST00" + i, "WH001", LocalDate.of(2024, 7, 1).plusDays(i),
+                ChargeCategory.INBOUND, "PER_SHIPMENT", new BigDecimal("12.5").add(BigDecimal.valueOf(i)),
+                i % 2 == 0 ? "A" + i : null);
+    }
+
+    private static byte[] encode(ActivityLedgerSegment.Entry entry) {
+        return ActivityLedgerSegment.encode(entry.customerId(), entry.warehouseId(), entry.activityDate(),
+                entry.category(), entry.type(), entry.quantity(), entry.activityId());
+    }
+}
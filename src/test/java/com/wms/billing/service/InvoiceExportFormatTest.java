@@ -0,0 +1,52 @@
+package com.wms.billing.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InvoiceExportFormatTest {
+
+    private static final List<MediaType> JSON = List.of(MediaType.APPLICATION_JSON);
+
+    @Test
+    void exactTypeSelectsItsFormat() {
+        assertThat(InvoiceExportFormat.fromAccept("text/csv")).contains(InvoiceExportFormat.CSV);
+        assertThat(InvoiceExportFormat.fromAccept("application/x-ndjson")).contains(InvoiceExportFormat.JSON_LINES);
+        assertThat(InvoiceExportFormat.preferredOver("text/csv", JSON)).contains(InvoiceExportFormat.CSV);
+    }
+
+    @Test
+    void highestQualityWins() {
+        assertThat(InvoiceExportFormat.fromAccept("text/csv;q=0.2, application/x-ndjson;q=0.8"))
+                .contains(InvoiceExportFormat.JSON_LINES);
+    }
+
+    @Test
+    void zeroQualityIsNotAcceptable() {
+        assertThat(InvoiceExportFormat.fromAccept("text/csv;q=0")).isEmpty();
+        assertThat(InvoiceExportFormat.fromAccept("text/csv;q=0, application/x-ndjson;q=0.1"))
+                .contains(InvoiceExportFormat.JSON_LINES);
+    }
+
+    @Test
+    void wildcardsNeverSelectAnExport() {
+        assertThat(InvoiceExportFormat.fromAccept("*/*")).isEmpty();
+        assertThat(InvoiceExportFormat.fromAccept("text/*")).isEmpty();
+        assertThat(InvoiceExportFormat.fromAccept("application/*")).isEmpty();
+        assertThat(InvoiceExportFormat.fromAccept(null)).isEmpty();
+    }
+
+    @Test
+    void jsonPreferredInAMixedHeaderIsKept() {
+        assertThat(InvoiceExportFormat.preferredOver("application/json, text/csv;q=0.1", JSON)).isEmpty();
+        assertThat(InvoiceExportFormat.preferredOver("text/csv;q=0.1, application/json", JSON)).isEmpty();
+        // Equal rank: the endpoint's default representation is kept
+        assertThat(InvoiceExportFormat.preferredOver("text/csv, application/json", JSON)).isEmpty();
+        assertThat(InvoiceExportFormat.preferredOver("text/csv, application/*;q=0.5", JSON))
+                .contains(InvoiceExportFormat.CSV);
+        assertThat(InvoiceExportFormat.preferredOver("text/csv, */*;q=0.1", JSON)).contains(InvoiceExportFormat.CSV);
+    }
+}
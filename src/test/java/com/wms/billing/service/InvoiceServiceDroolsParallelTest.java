@@ -0,0 +1,129 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.Activity;
+import com.wms.billing.domain.Invoice;
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.domain.Warehouse;
+import com.wms.billing.domain.WarehouseCharges;
+import com.wms.billing.dto.ChargeCategory;
+import com.wms.billing.helper.InvoiceContentHasher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kie.api.KieServices;
+import org.kie.api.runtime.KieContainer;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * An invoice rated in parallel chunks must be identical to the same invoice rated in one session: same lines in
+ * the same order, same total, same content hash.
+ */
+class InvoiceServiceDroolsParallelTest {
+
+    private static final String WAREHOUSE = "WH001";
+    private static final LocalDate START = LocalDate.of(2024, 7, 1);
+    private static final LocalDate END = LocalDate.of(2024, 7, 31);
+
+    private final List<ParallelRatingExecutor> executors = new ArrayList<>();
+    private PrintStream stdout;
+
+    @BeforeEach
+    void silenceDebugRules() {
+        // billing_rules.drl prints every fact it sees
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setOut(stdout);
+        executors.forEach(ParallelRatingExecutor::shutdown);
+    }
+
+    @Test
+    void parallelRatingMatchesSequentialRating() {
+        KieContainer kieContainer = KieServices.Factory.get().getKieClasspathContainer();
+        InvoiceServiceDrools sequential = service(kieContainer, new ParallelRatingExecutor(false, 0, 0, 0));
+        InvoiceServiceDrools parallel = service(kieContainer, new ParallelRatingExecutor(true, 0, 97, 4));
+
+        Invoice expected = sequential.simulate(rateSheet(), WAREHOUSE, START, END, activities());
+        Invoice actual = parallel.simulate(rateSheet(), WAREHOUSE, START, END, activities());
+
+        assertThat(expected.getInvoiceLines()).isNotEmpty();
+        assertThat(actual.getInvoiceLines()).containsExactlyElementsOf(expected.getInvoiceLines());
+        assertThat(actual.getTotalAmount()).isEqualByComparingTo(expected.getTotalAmount());
+        assertThat(InvoiceContentHasher.hash(actual)).isEqualTo(InvoiceContentHasher.hash(expected));
+    }
+
+    private InvoiceServiceDrools service(KieContainer kieContainer, ParallelRatingExecutor executor) {
+        executors.add(executor);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        InvoiceStageTimer stageTimer = new InvoiceStageTimer(registry, Map.of(), "standard");
+        DroolsRatingEngine drools = new DroolsRatingEngine(kieContainer, stageTimer,
+                new DroolsRuleProfiler(registry, false, 0.0), executor);
+        RatingEngineRouter router = new RatingEngineRouter(List.of(drools), registry, DroolsRatingEngine.NAME,
+                Map.of(), "", 0.0, 1, 1, 0);
+        // simulate() takes the rate sheet directly, so no repository, loader or snapshot is needed
+        return new InvoiceServiceDrools(null, null, null, stageTimer, router,
+                new InvoiceLineGrouper(false, InvoiceLineGrouper.Bucket.NONE), null);
+    }
+
+    private static RateSheet rateSheet() {
+        RateSheet rateSheet = new RateSheet();
+        rateSheet.setRateSheetId(1L);
+        rateSheet.setCustomerId("CUST001");
+        rateSheet.setName("Parallel");
+        Warehouse warehouse = new Warehouse();
+        warehouse.setWarehouseId(WAREHOUSE);
+        warehouse.setRateSheet(rateSheet);
+        warehouse.setCharges(new ArrayList<>(List.of(
+                charge(warehouse, ChargeCategory.STORAGE, "PER_PALLET_PER_DAY", "0.75"),
+                charge(warehouse, ChargeCategory.INBOUND, "PER_PALLET_PER_DAY", "1.125"),
+                charge(warehouse, ChargeCategory.INBOUND, "PER_SHIPMENT", "12.50"))));
+        rateSheet.setWarehouses(new ArrayList<>(List.of(warehouse)));
+        return rateSheet;
+    }
+
+    private static WarehouseCharges charge(Warehouse warehouse, ChargeCategory category, String type, String rate) {
+        WarehouseCharges charge = new WarehouseCharges();
+        charge.setCategory(category);
+        charge.setType(type);
+        charge.setRate(new BigDecimal(rate));
+        charge.setUnit("EA");
+        charge.setWarehouse(warehouse);
+        return charge;
+    }
+
+    /** 500 activities over the three billable charges and every day of the period, with repeated quantities. */
+    private static List<Activity> activities() {
+        String[][] billable = {
+                {"STORAGE", "PER_PALLET_PER_DAY"},
+                {"INBOUND", "PER_PALLET_PER_DAY"},
+                {"INBOUND", "PER_SHIPMENT"},
+        };
+        Random random = new Random(7);
+        List<Activity> activities = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Activity activity = new Activity();
+            activity.setActivityId("A" + i);
+            activity.setWarehouseId(WAREHOUSE);
+            activity.setActivityDate(START.plusDays(i % 31));
+            activity.setCategory(ChargeCategory.valueOf(billable[i % 3][0]));
+            activity.setType(billable[i % 3][1]);
+            activity.setQuantity(BigDecimal.valueOf(1 + random.nextInt(20), random.nextInt(3)));
+            activities.add(activity);
+        }
+        return activities;
+    }
+}
@@ -0,0 +1,153 @@
+package com.wms.billing.service;
+
+import com.wms.billing.domain.RateSheet;
+import com.wms.billing.domain.Warehouse;
+import com.wms.billing.domain.WarehouseCharges;
+import com.wms.billing.dto.AccessorialType;
+import com.wms.billing.dto.ChargeCategory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RateSnapshotFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rateSheetsRoundTrip() throws IOException {
+        Path file = dir.resolve("rate-snapshot.bin");
+        RateSnapshotFile.write(file, List.of(
+                RateSnapshotFile.encode(rateSheet(1L, "First"), 3L),
+                RateSnapshotFile.encode(rateSheet(2L, null), 0L)));
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        Map<Long, RateSnapshotFile.Stamp> stamps = RateSnapshotFile.index(buffer);
+
+        assertThat(stamps).containsOnlyKeys(1L, 2L);
+        assertThat(stamps.get(1L).revision()).isEqualTo(3L);
+        RateSheet decoded = RateSnapshotFile.decode(buffer, stamps.get(1L));
+        assertThat(decoded.getRateSheetId()).isEqualTo(1L);
+        assertThat(decoded.getRevision()).isEqualTo(3L);
+        assertThat(decoded.getCustomerId()).isEqualTo("CUST1");
+        assertThat(decoded.getName()).isEqualTo("First");
+        assertThat(decoded.getWarehouses()).hasSize(2);
+
+        Warehouse warehouse = decoded.getWarehouses().get(1);
+        assertThat(warehouse.getWarehouseId()).isEqualTo("WH002");
+        assertThat(warehouse.getRateSheet()).isSameAs(decoded);
+        assertThat(warehouse.getCharges()).hasSize(3);
+        WarehouseCharges accessorial = warehouse.getCharges().get(1);
+        assertThat(accessorial.getCategory()).isEqualTo(ChargeCategory.ACCESSORIAL);
+        assertThat(accessorial.getAccessorialType()).isEqualTo(AccessorialType.PALLETIZATION);
+        assertThat(accessorial.getRate()).isEqualTo(new BigDecimal("-0.1250"));   // scale and sign kept
+        assertThat(accessorial.getWarehouse()).isSameAs(warehouse);
+        assertThat(warehouse.getCharges().get(2).getRate()).isNull();
+
+        assertThat(RateSnapshotFile.decode(buffer, stamps.get(2L)).getName()).isNull();
+    }
+
+    @Test
+    void copiedRecordsAreUnchanged() throws IOException {
+        Path file = dir.resolve("rate-snapshot.bin");
+        byte[] record = RateSnapshotFile.encode(rateSheet(1L, "First"), 3L);
+        RateSnapshotFile.write(file, List.of(record));
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        assertThat(RateSnapshotFile.copy(buffer, RateSnapshotFile.index(buffer).get(1L))).isEqualTo(record);
+    }
+
+    @Test
+    void truncatedFileIsRejected() throws IOException {
+        byte[] bytes = snapshot();
+        ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 5));
+
+        assertThatThrownBy(() -> RateSnapshotFile.index(truncated))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void corruptRecordFailsItsCrc() throws IOException {
+        byte[] bytes = snapshot();
+        bytes[bytes.length - 1] ^= 0x01;
+
+        assertThatThrownBy(() -> RateSnapshotFile.index(ByteBuffer.wrap(bytes)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("CRC");
+    }
+
+    @Test
+    void otherMagicOrVersionIsRejected() throws IOException {
+        byte[] bytes = snapshot();
+        ByteBuffer otherVersion = ByteBuffer.wrap(bytes.clone())
+                .putInt(Integer.BYTES, RateSnapshotFile.FORMAT_VERSION + 1);
+        ByteBuffer otherMagic = ByteBuffer.wrap(bytes.clone()).putInt(0, 0);
+
+        assertThatThrownBy(() -> RateSnapshotFile.index(otherVersion))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("version");
+        assertThatThrownBy(() -> RateSnapshotFile.index(otherMagic))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> RateSnapshotFile.index(ByteBuffer.allocate(4)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void rewriteReplacesTheFile() throws IOException {
+        Path file = dir.resolve("rate-snapshot.bin");
+        RateSnapshotFile.write(file, List.of(RateSnapshotFile.encode(rateSheet(1L, "First"), 1L)));
+        RateSnapshotFile.write(file, List.of());
+
+        assertThat(RateSnapshotFile.index(ByteBuffer.wrap(Files.readAllBytes(file)))).isEmpty();
+        assertThat(file.resolveSibling(file.getFileName() + ".tmp")).doesNotExist();
+    }
+
+    private byte[] snapshot() throws IOException {
+        Path file = dir.resolve("rate-snapshot.bin");
+        RateSnapshotFile.write(file, List.of(RateSnapshotFile.encode(rateSheet(1L, "First"), 1L)));
+        return Files.readAllBytes(file);
+    }
+
+    private static RateSheet rateSheet(Long id, String name) {
+        RateSheet rateSheet = new RateSheet();
+        rateSheet.setRateSheetId(id);
+        rateSheet.setCustomerId("CUST" + id);
+        rateSheet.setName(name);
+        List<Warehouse> warehouses = new ArrayList<>();
+        for (String warehouseId : List.of("WH001", "WH002")) {
+            Warehouse warehouse = new Warehouse();
+            warehouse.setWarehouseId(warehouseId);
+            warehouse.setCharges(new ArrayList<>(List.of(
+                    charge(ChargeCategory.STORAGE, null, "PER_PALLET_PER_DAY", new BigDecimal("0.75")),
+                    charge(ChargeCategory.ACCESSORIAL, AccessorialType.PALLETIZATION, "FLAT",
+                            new BigDecimal("-0.1250")),
+                    charge(ChargeCategory.INBOUND, null, "PER_SHIPMENT", null))));
+            warehouses.add(warehouse);
+        }
+        rateSheet.setWarehouses(warehouses);
+        return rateSheet;
+    }
+
+    private static WarehouseCharges charge(ChargeCategory category, AccessorialType accessorialType, String type,
+                                           BigDecimal rate) {
+        WarehouseCharges charge = new WarehouseCharges();
+        charge.setCategory(category);
+        charge.setAccessorialType(accessorialType);
+        charge.setType(type);
+        charge.setUnit("EA");
+        charge.setRate(rate);
+        return charge;
+    }
+}